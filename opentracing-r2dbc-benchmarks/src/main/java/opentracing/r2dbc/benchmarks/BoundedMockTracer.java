@@ -0,0 +1,27 @@
+package opentracing.r2dbc.benchmarks;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+
+/**
+ * {@link MockTracer} which drops its finished spans every {@code capacity} spans, so that long
+ * benchmark iterations measure the tracer rather than an ever growing list.
+ */
+public class BoundedMockTracer extends MockTracer {
+
+  private final int capacity;
+  private int finished;
+
+  public BoundedMockTracer(int capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  protected void onSpanFinished(MockSpan mockSpan) {
+    // called while holding the tracer lock
+    if (++finished >= capacity) {
+      finished = 0;
+      reset();
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package opentracing.r2dbc.benchmarks;
+
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopTracerFactory;
+import io.r2dbc.h2.CloseableConnectionFactory;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.proxy.ProxyConnectionFactory;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import opentracing.r2dbc.common.LatencyHistogram;
+import opentracing.r2dbc.common.OpenTracingExecutorListener;
+import opentracing.r2dbc.common.TracingConfiguration;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test running the {@link QueryMix query mixes} through a real {@link ProxyConnectionFactory} over an
+ * r2dbc-pool of in-memory H2 connections, alternately without and with the {@link OpenTracingExecutorListener}
+ * for several iterations, at several concurrency levels. Every unit of work is scheduled on
+ * {@link Schedulers#parallel()}, so the listener runs under regular Reactor scheduling rather than in a tight loop.
+ * <p>
+ * Reports throughput, latency percentiles and the bytes allocated per unit of work (summed over all live
+ * threads with {@code com.sun.management.ThreadMXBean}), and exits with status 1 when the median throughput of
+ * the traced runs of any mix and concurrency drops by more than the budget compared to the median of its baseline
+ * runs. Which of the two runs first alternates between iterations, so drift of the machine hits both alike:
+ * <pre>
+ * java -cp target/benchmarks.jar -De2e.concurrency=1,8,64 -De2e.budget=0.3 \
+ *     opentracing.r2dbc.benchmarks.EndToEndBenchmark
+ * </pre>
+ * Settings: {@code e2e.mixes}, {@code e2e.concurrency}, {@code e2e.iterations}, {@code e2e.warmupSeconds},
+ * {@code e2e.durationSeconds}, {@code e2e.budget} and {@code e2e.tracer} ({@code noop}, {@code mock} or
+ * {@code recording}).
+ */
+public final class EndToEndBenchmark {
+
+  private static final int TRACER_CAPACITY = 4096;
+  private static final double[] PERCENTILES = {50, 99, 99.9};
+
+  private EndToEndBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    List<QueryMix> mixes = new ArrayList<>();
+    for (String mix : System.getProperty("e2e.mixes", "single,batch,transaction,large_result").split(",")) {
+      mixes.add(QueryMix.valueOf(mix.trim().toUpperCase(Locale.ROOT)));
+    }
+    List<Integer> concurrencyLevels = new ArrayList<>();
+    for (String concurrency : System.getProperty("e2e.concurrency", "1,8,64").split(",")) {
+      concurrencyLevels.add(Integer.parseInt(concurrency.trim()));
+    }
+    Duration warmup = Duration.ofSeconds(Long.getLong("e2e.warmupSeconds", 5));
+    int iterations = Math.max(1, Integer.getInteger("e2e.iterations", 5));
+    Duration duration = Duration.ofSeconds(Long.getLong("e2e.durationSeconds", 5));
+    double budget = Double.parseDouble(System.getProperty("e2e.budget", "0.3"));
+    String tracer = System.getProperty("e2e.tracer", "recording");
+
+    CloseableConnectionFactory h2 = H2ConnectionFactory.inMemory("e2e");
+    Mono.usingWhen(h2.create(), QueryMix::createSchema, Connection::close).block();
+
+    System.out.printf("%-12s %11s %-8s %10s %10s %10s %10s %12s %8s%n",
+        "mix", "concurrency", "listener", "qps", "p50 us", "p99 us", "p99.9 us", "bytes/op", "errors");
+    List<String> overBudget = new ArrayList<>();
+    try {
+      for (QueryMix mix : mixes) {
+        for (int concurrency : concurrencyLevels) {
+          double[] baselineQps = new double[iterations];
+          double[] tracedQps = new double[iterations];
+          for (int i = 0; i < iterations; i++) {
+            // only the first iteration warms up
+            Duration iterationWarmup = i == 0 ? warmup : Duration.ZERO;
+            Run baseline;
+            Run traced;
+            if (i % 2 == 0) {
+              baseline = measure(h2, null, mix, concurrency, iterationWarmup, duration);
+              traced = measure(h2, createListener(tracer), mix, concurrency, iterationWarmup, duration);
+            } else {
+              traced = measure(h2, createListener(tracer), mix, concurrency, iterationWarmup, duration);
+              baseline = measure(h2, null, mix, concurrency, iterationWarmup, duration);
+            }
+            baseline.print();
+            traced.print();
+            baselineQps[i] = baseline.qps();
+            tracedQps[i] = traced.qps();
+          }
+          double overhead = 1 - median(tracedQps) / median(baselineQps);
+          System.out.printf(Locale.ROOT, "%-12s %11d median qps off %.0f, on %.0f, overhead %.1f%%%n",
+              mix, concurrency, median(baselineQps), median(tracedQps), overhead * 100);
+          if (overhead > budget) {
+            overBudget.add(String.format(Locale.ROOT, "%s at concurrency %d: median throughput %.1f%% lower", mix,
+                concurrency, overhead * 100));
+          }
+        }
+      }
+    } finally {
+      h2.close();
+    }
+    if (!overBudget.isEmpty()) {
+      System.out.printf("Overhead budget of %.1f%% exceeded:%n", budget * 100);
+      overBudget.forEach(line -> System.out.println("  " + line));
+      System.exit(1);
+    }
+  }
+
+  private static double median(double[] values) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    int middle = sorted.length / 2;
+    return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+  }
+
+  private static OpenTracingExecutorListener createListener(String tracer) {
+    TracingConfiguration tracingConfiguration = TracingConfiguration.TracingConfigurationBuilder
+        .aTracingConfiguration()
+        .withTraceEnabled(true)
+        .build();
+    return new OpenTracingExecutorListener(createTracer(tracer), tracingConfiguration);
+  }
+
+  private static Tracer createTracer(String tracer) {
+    switch (tracer) {
+      case "noop":
+        return NoopTracerFactory.create();
+      case "mock":
+        return new BoundedMockTracer(TRACER_CAPACITY);
+      case "recording":
+        return new RecordingTracer(TRACER_CAPACITY);
+      default:
+        throw new IllegalArgumentException("Unknown tracer: " + tracer);
+    }
+  }
+
+  private static Run measure(ConnectionFactory h2, OpenTracingExecutorListener listener, QueryMix mix,
+                             int concurrency, Duration warmup, Duration duration) {
+    ConnectionPool pool = new ConnectionPool(ConnectionPoolConfiguration.builder(h2)
+        .initialSize(concurrency)
+        .maxSize(concurrency)
+        .build());
+    try {
+      ProxyConnectionFactory.Builder builder = ProxyConnectionFactory.builder(pool);
+      if (listener != null) {
+        builder.listener(listener);
+      }
+      ConnectionFactory connectionFactory = builder.build();
+      if (!warmup.isZero()) {
+        run(new Run(mix, concurrency, listener != null), connectionFactory, warmup);
+      }
+      return run(new Run(mix, concurrency, listener != null), connectionFactory, duration);
+    } finally {
+      pool.dispose();
+    }
+  }
+
+  private static Run run(Run run, ConnectionFactory connectionFactory, Duration duration) {
+    long deadline = System.nanoTime() + duration.toNanos();
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    Flux.range(0, run.concurrency)
+        .flatMap(worker -> unitOfWork(run, connectionFactory)
+            .subscribeOn(Schedulers.parallel())
+            .repeat(() -> System.nanoTime() < deadline), run.concurrency)
+        .blockLast();
+    run.elapsedNanos = System.nanoTime() - start;
+    long allocatedAfter = allocatedBytes();
+    run.allocatedBytes = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+    return run;
+  }
+
+  private static Mono<Void> unitOfWork(Run run, ConnectionFactory connectionFactory) {
+    return Mono.defer(() -> {
+      long start = System.nanoTime();
+      return Mono.usingWhen(connectionFactory.create(), run.mix::execute, Connection::close)
+          .doOnSuccess(ignored -> run.latency.record(System.nanoTime() - start))
+          .onErrorResume(e -> {
+            run.errors.increment();
+            return Mono.empty();
+          });
+    });
+  }
+
+  /**
+   * Bytes allocated so far by all live threads, or -1 when the JVM does not support it. Threads which
+   * ended during a run are not accounted for.
+   */
+  private static long allocatedBytes() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+    if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    long total = 0;
+    for (long bytes : allocationBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+      if (bytes > 0) {
+        total += bytes;
+      }
+    }
+    return total;
+  }
+
+  private static final class Run {
+
+    final QueryMix mix;
+    final int concurrency;
+    final boolean traced;
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LongAdder errors = new LongAdder();
+    long elapsedNanos;
+    long allocatedBytes;
+
+    Run(QueryMix mix, int concurrency, boolean traced) {
+      this.mix = mix;
+      this.concurrency = concurrency;
+      this.traced = traced;
+    }
+
+    double qps() {
+      return latency.count() * 1e9 / elapsedNanos;
+    }
+
+    void print() {
+      long count = latency.count();
+      System.out.printf(Locale.ROOT, "%-12s %11d %-8s %10.0f %10d %10d %10d %12s %8d%n",
+          mix, concurrency, traced ? "on" : "off", qps(),
+          TimeUnit.NANOSECONDS.toMicros(latency.valueAtPercentile(PERCENTILES[0])),
+          TimeUnit.NANOSECONDS.toMicros(latency.valueAtPercentile(PERCENTILES[1])),
+          TimeUnit.NANOSECONDS.toMicros(latency.valueAtPercentile(PERCENTILES[2])),
+          allocatedBytes < 0 || count == 0 ? "n/a" : String.valueOf(allocatedBytes / count),
+          errors.sum());
+    }
+  }
+}
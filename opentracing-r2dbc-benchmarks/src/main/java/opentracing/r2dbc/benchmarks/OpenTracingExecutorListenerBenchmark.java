@@ -0,0 +1,150 @@
+package opentracing.r2dbc.benchmarks;
+
+import io.r2dbc.proxy.core.ConnectionInfo;
+import io.r2dbc.proxy.core.ExecutionType;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.core.ValueStore;
+import io.r2dbc.proxy.test.MockConnectionInfo;
+import io.r2dbc.proxy.test.MockMethodExecutionInfo;
+import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import opentracing.r2dbc.common.OpenTracingExecutorListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the {@link OpenTracingExecutorListener} callbacks. Run with
+ * {@code java -jar target/benchmarks.jar -prof gc} to also get the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenTracingExecutorListenerBenchmark {
+
+  @State(Scope.Thread)
+  public static class ConnectionState {
+
+    public MockMethodExecutionInfo methodExecutionInfo;
+
+    @Setup
+    public void setUp() {
+      methodExecutionInfo = MockMethodExecutionInfo.builder()
+          .connectionInfo(connectionInfo())
+          .executeDuration(Duration.ofMillis(2))
+          .threadName("reactor-tcp-nio-1")
+          .threadId(42)
+          .build();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class QueryState {
+
+    public MockQueryExecutionInfo queryExecutionInfo;
+
+    @Setup
+    public void setUp() {
+      queryExecutionInfo = MockQueryExecutionInfo.builder()
+          .connectionInfo(connectionInfo())
+          .queryInfo(new QueryInfo("SELECT id, name, email FROM users WHERE id = $1"))
+          .type(ExecutionType.STATEMENT)
+          .bindingsSize(1)
+          .executeDuration(Duration.ofMillis(2))
+          .currentResultCount(1)
+          .threadName("reactor-tcp-nio-1")
+          .threadId(42)
+          .isSuccess(true)
+          .build();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class BatchState {
+
+    @Param({"10", "1000"})
+    public int batchSize;
+
+    public MockQueryExecutionInfo queryExecutionInfo;
+
+    @Setup
+    public void setUp() {
+      List<QueryInfo> queries = new ArrayList<>(batchSize);
+      for (int i = 0; i < batchSize; i++) {
+        queries.add(new QueryInfo("INSERT INTO events (id, type, payload) VALUES (" + i + ", 'login', 'payload-" + i + "')"));
+      }
+      queryExecutionInfo = MockQueryExecutionInfo.builder()
+          .connectionInfo(connectionInfo())
+          .queries(queries)
+          .type(ExecutionType.BATCH)
+          .batchSize(batchSize)
+          .executeDuration(Duration.ofMillis(20))
+          .threadName("reactor-tcp-nio-1")
+          .threadId(42)
+          .isSuccess(true)
+          .build();
+    }
+  }
+
+  private static ConnectionInfo connectionInfo() {
+    return MockConnectionInfo.builder()
+        .connectionId("1")
+        .valueStore(ValueStore.create())
+        .build();
+  }
+
+  @Benchmark
+  public MockQueryExecutionInfo query(TracerState tracerState, QueryState queryState) {
+    MockQueryExecutionInfo queryExecutionInfo = queryState.queryExecutionInfo;
+    tracerState.listener.beforeQuery(queryExecutionInfo);
+    tracerState.listener.afterQuery(queryExecutionInfo);
+    return queryExecutionInfo;
+  }
+
+  @Benchmark
+  public MockQueryExecutionInfo batchQuery(TracerState tracerState, BatchState batchState) {
+    MockQueryExecutionInfo queryExecutionInfo = batchState.queryExecutionInfo;
+    tracerState.listener.beforeQuery(queryExecutionInfo);
+    tracerState.listener.afterQuery(queryExecutionInfo);
+    return queryExecutionInfo;
+  }
+
+  @Benchmark
+  public MockMethodExecutionInfo transactionCommit(TracerState tracerState, ConnectionState connectionState) {
+    MockMethodExecutionInfo methodExecutionInfo = connectionState.methodExecutionInfo;
+    tracerState.listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+    tracerState.listener.afterCommitTransactionOnConnection(methodExecutionInfo);
+    return methodExecutionInfo;
+  }
+
+  @Benchmark
+  public MockMethodExecutionInfo transactionRollback(TracerState tracerState, ConnectionState connectionState) {
+    MockMethodExecutionInfo methodExecutionInfo = connectionState.methodExecutionInfo;
+    tracerState.listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+    tracerState.listener.afterRollbackTransactionOnConnection(methodExecutionInfo);
+    return methodExecutionInfo;
+  }
+
+  @Benchmark
+  public MockMethodExecutionInfo connection(TracerState tracerState, ConnectionState connectionState) {
+    MockMethodExecutionInfo methodExecutionInfo = connectionState.methodExecutionInfo;
+    tracerState.listener.beforeCreateOnConnectionFactory(methodExecutionInfo);
+    tracerState.listener.afterCreateOnConnectionFactory(methodExecutionInfo);
+    tracerState.listener.afterCloseOnConnection(methodExecutionInfo);
+    return methodExecutionInfo;
+  }
+}
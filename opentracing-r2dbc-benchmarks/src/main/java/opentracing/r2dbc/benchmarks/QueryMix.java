@@ -0,0 +1,89 @@
+package opentracing.r2dbc.benchmarks;
+
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Result;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Unit of work of the {@link EndToEndBenchmark} against the {@code users} table.
+ */
+public enum QueryMix {
+
+  /** A primary key lookup. */
+  SINGLE {
+    @Override
+    Mono<Void> execute(Connection connection) {
+      return selectById(connection);
+    }
+  },
+
+  /** A batch of {@value #BATCH_SIZE} updates. */
+  BATCH {
+    @Override
+    Mono<Void> execute(Connection connection) {
+      Batch batch = connection.createBatch();
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        int id = randomId();
+        batch.add("UPDATE users SET name = 'user-" + id + "' WHERE id = " + id);
+      }
+      return Flux.from(batch.execute()).flatMap(Result::getRowsUpdated).then();
+    }
+  },
+
+  /** A lookup and an update within a transaction. */
+  TRANSACTION {
+    @Override
+    Mono<Void> execute(Connection connection) {
+      return Mono.from(connection.beginTransaction())
+          .then(selectById(connection))
+          .then(Flux.from(connection.createStatement("UPDATE users SET email = $1 WHERE id = $2")
+              .bind(0, "user@example.org")
+              .bind(1, randomId())
+              .execute())
+              .flatMap(Result::getRowsUpdated)
+              .then())
+          .then(Mono.from(connection.commitTransaction()));
+    }
+  },
+
+  /** A scan mapping all {@value #ROWS} rows. */
+  LARGE_RESULT {
+    @Override
+    Mono<Void> execute(Connection connection) {
+      return Flux.from(connection.createStatement("SELECT id, name, email FROM users").execute())
+          .flatMap(result -> result.map((row, metadata) -> row.get("email", String.class)))
+          .then();
+    }
+  };
+
+  static final int ROWS = 1000;
+  static final int BATCH_SIZE = 10;
+
+  abstract Mono<Void> execute(Connection connection);
+
+  static Mono<Void> createSchema(Connection connection) {
+    Batch batch = connection.createBatch()
+        .add("DROP TABLE IF EXISTS users")
+        .add("CREATE TABLE users (id INT PRIMARY KEY, name VARCHAR(64), email VARCHAR(128))");
+    for (int id = 0; id < ROWS; id++) {
+      batch.add("INSERT INTO users VALUES (" + id + ", 'user-" + id + "', 'user-" + id + "@example.org')");
+    }
+    return Flux.from(batch.execute()).flatMap(Result::getRowsUpdated).then();
+  }
+
+  private static Mono<Void> selectById(Connection connection) {
+    return Flux.from(connection.createStatement("SELECT id, name, email FROM users WHERE id = $1")
+        .bind(0, randomId())
+        .execute())
+        .flatMap(result -> result.map((row, metadata) -> row.get("name", String.class)))
+        .then();
+  }
+
+  private static int randomId() {
+    return ThreadLocalRandom.current().nextInt(ROWS);
+  }
+}
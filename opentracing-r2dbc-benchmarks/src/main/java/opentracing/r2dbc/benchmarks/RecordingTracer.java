@@ -0,0 +1,28 @@
+package opentracing.r2dbc.benchmarks;
+
+import io.opentracing.mock.MockSpan;
+
+import java.util.Map;
+
+/**
+ * Tracer which copies the tags of every finished span into a fixed size ring, the way a reporter
+ * would snapshot a span before handing it to its sender.
+ */
+public class RecordingTracer extends BoundedMockTracer {
+
+  private final Object[] recorded;
+  private int next;
+
+  public RecordingTracer(int capacity) {
+    super(capacity);
+    this.recorded = new Object[capacity];
+  }
+
+  @Override
+  protected void onSpanFinished(MockSpan mockSpan) {
+    Map<String, Object> tags = mockSpan.tags();
+    recorded[next] = tags;
+    next = (next + 1) % recorded.length;
+    super.onSpanFinished(mockSpan);
+  }
+}
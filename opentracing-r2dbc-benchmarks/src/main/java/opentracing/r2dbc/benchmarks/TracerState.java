@@ -0,0 +1,47 @@
+package opentracing.r2dbc.benchmarks;
+
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopTracerFactory;
+import opentracing.r2dbc.common.OpenTracingExecutorListener;
+import opentracing.r2dbc.common.TracingConfiguration;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+public class TracerState {
+
+  private static final int TRACER_CAPACITY = 4096;
+
+  @Param({"noop", "mock", "recording"})
+  public String tracer;
+
+  @Param({"0", "1"})
+  public long slowQueryThresholdMs;
+
+  public OpenTracingExecutorListener listener;
+
+  @Setup
+  public void setUp() {
+    TracingConfiguration tracingConfiguration = TracingConfiguration.TracingConfigurationBuilder
+        .aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSlowQueryThresholdMs(slowQueryThresholdMs)
+        .build();
+    listener = new OpenTracingExecutorListener(createTracer(), tracingConfiguration);
+  }
+
+  private Tracer createTracer() {
+    switch (tracer) {
+      case "noop":
+        return NoopTracerFactory.create();
+      case "mock":
+        return new BoundedMockTracer(TRACER_CAPACITY);
+      case "recording":
+        return new RecordingTracer(TRACER_CAPACITY);
+      default:
+        throw new IllegalArgumentException("Unknown tracer: " + tracer);
+    }
+  }
+}
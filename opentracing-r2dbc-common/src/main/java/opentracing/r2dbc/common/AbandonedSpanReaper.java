@@ -0,0 +1,323 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+
+import java.io.Closeable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static opentracing.r2dbc.common.TagConstants.TAG_ABANDONED;
+import static opentracing.r2dbc.common.TagConstants.TAG_ABANDONED_REASON;
+
+/**
+ * Finishes the spans of connections, transactions and queries which are still open after a maximum age,
+ * e.g. because a connection was leaked, a subscription was cancelled or a transaction was never completed,
+ * tagging them {@code abandoned}.
+ * <p>
+ * Open spans are kept in a hashed timer wheel advanced once per tick by a daemon worker; registering and
+ * completing a span only enqueue it for the worker. The object owning a span, typically the
+ * {@link io.r2dbc.proxy.core.ConnectionInfo}, is weakly referenced, so the span of a connection which was
+ * garbage collected without being closed is reaped on the next tick instead of at its maximum age. Spans
+ * registered without expiry, e.g. of connections a pool keeps open for hours, are kept in a list of their own
+ * rather than the wheel and only reaped once their owner was collected. Abandoned spans are finished through the {@link SpanFinisher} they were registered with.
+ */
+public final class AbandonedSpanReaper implements Closeable {
+
+  public enum Kind {
+    CONNECTION,
+    TRANSACTION,
+    QUERY
+  }
+
+  public static final long DEFAULT_MAX_AGE_MS = 600_000;
+  public static final long DEFAULT_TICK_MS = 1_000;
+  public static final String REASON_MAX_AGE = "maxAge";
+  public static final String REASON_COLLECTED = "collected";
+  static final int WHEEL_SIZE = 512;
+
+  private static final Kind[] KINDS = Kind.values();
+
+  private final long maxAgeNanos;
+  private final long tickNanos;
+  private final long startNanos = System.nanoTime();
+  private final Entry[] wheel = new Entry[WHEEL_SIZE];
+  // keeps the entries without expiry reachable, or their references would be collected along with their owners
+  private final Entry unexpiring = new Entry();
+  private final Queue<Entry> registered = new ConcurrentLinkedQueue<>();
+  private final Queue<Entry> completed = new ConcurrentLinkedQueue<>();
+  private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+  private final LongAdder[] open = new LongAdder[KINDS.length];
+  private final LongAdder[] abandoned = new LongAdder[KINDS.length];
+  private final LongAdder failed = new LongAdder();
+  private final Thread worker;
+  private volatile boolean running = true;
+  private long tick;
+
+  public AbandonedSpanReaper() {
+    this(DEFAULT_MAX_AGE_MS);
+  }
+
+  public AbandonedSpanReaper(long maxAgeMs) {
+    this(maxAgeMs, Math.min(DEFAULT_TICK_MS, maxAgeMs));
+  }
+
+  /**
+   * @param maxAgeMs age after which an open span is finished as abandoned
+   * @param tickMs   resolution of the maximum age and delay until spans of collected owners are reaped
+   */
+  public AbandonedSpanReaper(long maxAgeMs, long tickMs) {
+    this(maxAgeMs, tickMs, true);
+  }
+
+  AbandonedSpanReaper(long maxAgeMs, long tickMs, boolean startWorker) {
+    this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxAgeMs));
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new Entry();
+    }
+    for (int i = 0; i < KINDS.length; i++) {
+      open[i] = new LongAdder();
+      abandoned[i] = new LongAdder();
+    }
+    if (startWorker) {
+      this.worker = new Thread(this::run, "r2dbc-span-reaper");
+      this.worker.setDaemon(true);
+      this.worker.start();
+    } else {
+      this.worker = null;
+    }
+  }
+
+  public long getMaxAgeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(maxAgeNanos);
+  }
+
+  public long getOpenSpans(Kind kind) {
+    return open[kind.ordinal()].sum();
+  }
+
+  /**
+   * Spans finished by the reaper since it was created.
+   */
+  public long getAbandonedSpans(Kind kind) {
+    return abandoned[kind.ordinal()].sum();
+  }
+
+  /**
+   * Abandoned spans whose tracer threw when they were finished.
+   */
+  public long getFailedSpans() {
+    return failed.sum();
+  }
+
+  /**
+   * Stops the worker, spans still open are left to their callers.
+   */
+  @Override
+  public void close() {
+    running = false;
+    if (worker != null) {
+      LockSupport.unpark(worker);
+      try {
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  Entry register(Span span, Kind kind, Object owner) {
+    return register(span, kind, owner, true, SpanFinisher.SYNC, System.nanoTime());
+  }
+
+  Entry register(Span span, Kind kind, Object owner, long now) {
+    return register(span, kind, owner, true, SpanFinisher.SYNC, now);
+  }
+
+  Entry register(Span span, Kind kind, Object owner, boolean expires, SpanFinisher spanFinisher) {
+    return register(span, kind, owner, expires, spanFinisher, System.nanoTime());
+  }
+
+  /**
+   * Tracks the span until it is {@link #complete(Entry) completed}; returns {@code null} once the reaper
+   * was closed.
+   *
+   * @param expires whether the span is reaped at the maximum age, else only once the owner was collected
+   */
+  Entry register(Span span, Kind kind, Object owner, boolean expires, SpanFinisher spanFinisher, long now) {
+    if (!running) {
+      return null;
+    }
+    Entry entry = new Entry(span, kind, owner, owner == null ? null : collected, spanFinisher,
+        expires ? now + maxAgeNanos : Entry.NEVER);
+    open[kind.ordinal()].increment();
+    registered.offer(entry);
+    return entry;
+  }
+
+  /**
+   * Stops tracking the span; returns false when it was already finished as abandoned, in which case the
+   * caller must neither tag nor finish it.
+   */
+  boolean complete(Entry entry) {
+    if (entry == null) {
+      return true;
+    }
+    if (!Entry.STATE.compareAndSet(entry, Entry.OPEN, Entry.COMPLETED)) {
+      return false;
+    }
+    entry.span = null;
+    entry.spanFinisher = null;
+    open[entry.kind.ordinal()].decrement();
+    completed.offer(entry);
+    return true;
+  }
+
+  private void run() {
+    while (running) {
+      LockSupport.parkNanos(this, tickNanos);
+      try {
+        tick(System.nanoTime());
+      } catch (RuntimeException e) {
+        failed.increment();
+      }
+    }
+  }
+
+  /**
+   * Reaps the spans of collected owners and advances the wheel up to {@code now}.
+   */
+  synchronized void tick(long now) {
+    Entry entry;
+    while ((entry = registered.poll()) != null) {
+      if (entry.state != Entry.OPEN) {
+        continue;
+      }
+      if (entry.deadlineNanos == Entry.NEVER) {
+        unexpiring.link(entry);
+      } else {
+        schedule(entry);
+      }
+    }
+    while ((entry = completed.poll()) != null) {
+      entry.unlink();
+    }
+    Reference<?> reference;
+    while ((reference = collected.poll()) != null) {
+      entry = (Entry) reference;
+      entry.unlink();
+      reap(entry, REASON_COLLECTED);
+    }
+    long target = (now - startNanos) / tickNanos;
+    for (; tick <= target; tick++) {
+      Entry head = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+      for (entry = head.next; entry != head; ) {
+        Entry next = entry.next;
+        if (entry.state != Entry.OPEN) {
+          entry.unlink();
+        } else if (entry.rounds > 0) {
+          entry.rounds--;
+        } else {
+          entry.unlink();
+          reap(entry, REASON_MAX_AGE);
+        }
+        entry = next;
+      }
+    }
+  }
+
+  private void schedule(Entry entry) {
+    long deadlineTick = Math.max(tick, (entry.deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+    entry.rounds = (deadlineTick - tick) / WHEEL_SIZE;
+    wheel[(int) (deadlineTick & (WHEEL_SIZE - 1))].link(entry);
+  }
+
+  private void reap(Entry entry, String reason) {
+    if (!Entry.STATE.compareAndSet(entry, Entry.OPEN, Entry.REAPED)) {
+      return;
+    }
+    Span span = entry.span;
+    SpanFinisher spanFinisher = entry.spanFinisher;
+    entry.span = null;
+    entry.spanFinisher = null;
+    open[entry.kind.ordinal()].decrement();
+    abandoned[entry.kind.ordinal()].increment();
+    try {
+      TAG_ABANDONED.set(span, true);
+      TAG_ABANDONED_REASON.set(span, reason);
+      spanFinisher.finish(span, null, 0);
+    } catch (RuntimeException e) {
+      failed.increment();
+    }
+  }
+
+  /**
+   * An open span, linked into a bucket of the wheel or the list without expiry by the worker only.
+   */
+  static final class Entry extends WeakReference<Object> {
+
+    static final int OPEN = 0;
+    static final int COMPLETED = 1;
+    static final int REAPED = 2;
+    static final long NEVER = Long.MIN_VALUE;
+    static final AtomicIntegerFieldUpdater<Entry> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+    final Kind kind;
+    final long deadlineNanos;
+    volatile int state;
+    Span span;
+    SpanFinisher spanFinisher;
+    long rounds;
+    Entry previous;
+    Entry next;
+
+    /**
+     * Head of a bucket or of the list without expiry.
+     */
+    Entry() {
+      super(null);
+      this.kind = null;
+      this.deadlineNanos = 0;
+      this.previous = this;
+      this.next = this;
+    }
+
+    Entry(Span span, Kind kind, Object owner, ReferenceQueue<Object> queue, SpanFinisher spanFinisher,
+          long deadlineNanos) {
+      super(owner, queue);
+      this.span = span;
+      this.spanFinisher = spanFinisher;
+      this.kind = kind;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    boolean isReaped() {
+      return state == REAPED;
+    }
+
+    void link(Entry entry) {
+      entry.previous = previous;
+      entry.next = this;
+      previous.next = entry;
+      previous = entry;
+    }
+
+    void unlink() {
+      if (next == null) {
+        return;
+      }
+      previous.next = next;
+      next.previous = previous;
+      previous = null;
+      next = null;
+    }
+  }
+}
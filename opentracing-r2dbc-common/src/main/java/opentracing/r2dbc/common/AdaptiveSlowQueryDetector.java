@@ -0,0 +1,153 @@
+package opentracing.r2dbc.common;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a {@link LatencyHistogram} per statement fingerprint and derives a {@link Baseline} from
+ * it once per window. A window is only closed once it holds at least {@code minSamples} queries, so
+ * rarely executed statements simply get longer windows; the very first baseline is built as soon as
+ * {@code minSamples} queries were seen. The number of tracked statements is bounded: once the limit is
+ * reached, the statements without queries in the last window are evicted, at most once per tenth of a window,
+ * and queries of statements which still do not fit are not judged.
+ */
+public class AdaptiveSlowQueryDetector {
+
+  static final int DEFAULT_MAX_STATEMENTS = 512;
+
+  private final double percentile;
+  private final double factor;
+  private final long minSamples;
+  private final long windowNanos;
+  private final int maxStatements;
+  private final ConcurrentHashMap<QueryFingerprint, StatementLatency> statements = new ConcurrentHashMap<>();
+  private final AtomicLong lastEviction = new AtomicLong(System.nanoTime());
+
+  public AdaptiveSlowQueryDetector(double percentile, double factor, long minSamples, long windowMs) {
+    this(percentile, factor, minSamples, windowMs, DEFAULT_MAX_STATEMENTS);
+  }
+
+  public AdaptiveSlowQueryDetector(double percentile, double factor, long minSamples, long windowMs,
+                                   int maxStatements) {
+    this.percentile = percentile;
+    this.factor = factor;
+    this.minSamples = Math.max(1, minSamples);
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    this.maxStatements = maxStatements;
+  }
+
+  /**
+   * Returns whether the detector was created with the given settings, so its baselines can be kept.
+   */
+  boolean hasSettings(double percentile, double factor, long minSamples, long windowMs) {
+    return this.percentile == percentile && this.factor == factor && this.minSamples == Math.max(1, minSamples)
+        && this.windowNanos == TimeUnit.MILLISECONDS.toNanos(windowMs);
+  }
+
+  /**
+   * Records the given duration and returns the baseline it was judged against, or {@code null}
+   * while the statement has no baseline yet.
+   */
+  public Baseline observe(QueryFingerprint fingerprint, long durationNanos) {
+    return observe(fingerprint, durationNanos, System.nanoTime());
+  }
+
+  Baseline observe(QueryFingerprint fingerprint, long durationNanos, long now) {
+    if (fingerprint == null) {
+      return null;
+    }
+    StatementLatency statement = statements.get(fingerprint);
+    if (statement == null) {
+      if (statements.size() >= maxStatements && !evictIdle(now)) {
+        return null;
+      }
+      statement = statements.computeIfAbsent(fingerprint, fp -> new StatementLatency(now));
+    }
+    Baseline baseline = statement.baseline;
+    statement.record(durationNanos, now);
+    return baseline;
+  }
+
+  /**
+   * Evicts the statements idle for a window and returns whether there is room for another one.
+   */
+  private boolean evictIdle(long now) {
+    long last = lastEviction.get();
+    if (now - last >= windowNanos / 10 && lastEviction.compareAndSet(last, now)) {
+      statements.values().removeIf(statement -> now - statement.lastSeen >= windowNanos);
+    }
+    return statements.size() < maxStatements;
+  }
+
+  private final class StatementLatency {
+
+    private final AtomicLong windowStart;
+    private volatile LatencyHistogram current = new LatencyHistogram();
+    private volatile Baseline baseline;
+    private volatile long lastSeen;
+
+    private StatementLatency(long now) {
+      this.windowStart = new AtomicLong(now);
+      this.lastSeen = now;
+    }
+
+    private void record(long durationNanos, long now) {
+      lastSeen = now;
+      LatencyHistogram histogram = current;
+      histogram.record(durationNanos);
+      long start = windowStart.get();
+      if (histogram.count() >= minSamples
+          && (baseline == null || now - start >= windowNanos)
+          && windowStart.compareAndSet(start, now)) {
+        current = new LatencyHistogram();
+        baseline = new Baseline(histogram, percentile, factor);
+      }
+    }
+  }
+
+  /**
+   * Latency distribution of one closed window of a statement.
+   */
+  public static final class Baseline {
+
+    private final long[] cumulative;
+    private final long total;
+    private final long thresholdNanos;
+
+    Baseline(LatencyHistogram histogram, double percentile, double factor) {
+      long[] snapshot = histogram.snapshot();
+      int last = snapshot.length - 1;
+      while (last > 0 && snapshot[last] == 0) {
+        last--;
+      }
+      this.cumulative = new long[last + 1];
+      long sum = 0;
+      for (int i = 0; i <= last; i++) {
+        sum += snapshot[i];
+        cumulative[i] = sum;
+      }
+      this.total = sum;
+      this.thresholdNanos = (long) (histogram.valueAtPercentile(percentile) * factor);
+    }
+
+    public long getThresholdNanos() {
+      return thresholdNanos;
+    }
+
+    public boolean isSlow(long durationNanos) {
+      return durationNanos > thresholdNanos;
+    }
+
+    /**
+     * Returns the percentage of the window's queries which ran at most as long as the given duration.
+     */
+    public double percentileOf(long durationNanos) {
+      if (total == 0) {
+        return 0;
+      }
+      int index = LatencyHistogram.bucketIndex(TimeUnit.NANOSECONDS.toMicros(Math.max(0, durationNanos)));
+      return index >= cumulative.length ? 100.0 : cumulative[index] * 100.0 / total;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package opentracing.r2dbc.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Case insensitive trie over ASCII patterns with a dense transition table. Used anchored for prefix
+ * and suffix rules and, once failure links are built, as an Aho-Corasick automaton for substring
+ * rules, so that any number of patterns is matched in a single pass over the statement.
+ */
+final class AsciiTrie {
+
+  private static final int ALPHABET = 128;
+  private static final int NONE = -1;
+
+  private final List<int[]> transitions = new ArrayList<>();
+  private final int[][] table;
+  private final boolean[] terminal;
+
+  AsciiTrie(Collection<String> patterns, boolean reversed) {
+    newState();
+    List<Boolean> terminals = new ArrayList<>();
+    terminals.add(false);
+    for (String pattern : patterns) {
+      int state = 0;
+      int length = pattern.length();
+      for (int i = 0; i < length; i++) {
+        int c = lower(pattern.charAt(reversed ? length - 1 - i : i));
+        int next = transitions.get(state)[c];
+        if (next == NONE) {
+          next = newState();
+          terminals.add(false);
+          transitions.get(state)[c] = next;
+        }
+        state = next;
+      }
+      terminals.set(state, true);
+    }
+    terminal = new boolean[terminals.size()];
+    for (int i = 0; i < terminal.length; i++) {
+      terminal[i] = terminals.get(i);
+    }
+    table = transitions.toArray(new int[0][]);
+  }
+
+  static boolean isAscii(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      if (pattern.charAt(i) >= ALPHABET) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean matchesPrefix(String text) {
+    int state = 0;
+    int length = text.length();
+    int i = 0;
+    while (i < length && Character.isWhitespace(text.charAt(i))) {
+      i++;
+    }
+    for (; i < length; i++) {
+      if (terminal[state]) {
+        return true;
+      }
+      char c = text.charAt(i);
+      if (c >= ALPHABET || (state = table[state][lower(c)]) == NONE) {
+        return false;
+      }
+    }
+    return terminal[state];
+  }
+
+  boolean matchesSuffix(String text) {
+    int state = 0;
+    int i = text.length() - 1;
+    while (i >= 0 && (Character.isWhitespace(text.charAt(i)) || text.charAt(i) == ';')) {
+      i--;
+    }
+    for (; i >= 0; i--) {
+      if (terminal[state]) {
+        return true;
+      }
+      char c = text.charAt(i);
+      if (c >= ALPHABET || (state = table[state][lower(c)]) == NONE) {
+        return false;
+      }
+    }
+    return terminal[state];
+  }
+
+  AsciiTrie buildFailureLinks() {
+    int[] failure = new int[table.length];
+    Queue<Integer> queue = new ArrayDeque<>();
+    int[] root = table[0];
+    for (int c = 0; c < ALPHABET; c++) {
+      if (root[c] == NONE) {
+        root[c] = 0;
+      } else {
+        failure[root[c]] = 0;
+        queue.add(root[c]);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      int[] next = table[state];
+      terminal[state] |= terminal[failure[state]];
+      for (int c = 0; c < ALPHABET; c++) {
+        if (next[c] == NONE) {
+          next[c] = table[failure[state]][c];
+        } else {
+          failure[next[c]] = table[failure[state]][c];
+          queue.add(next[c]);
+        }
+      }
+    }
+    return this;
+  }
+
+  boolean matchesAnywhere(String text) {
+    int state = 0;
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      state = c >= ALPHABET ? 0 : table[state][lower(c)];
+      if (terminal[state]) {
+        return true;
+      }
+    }
+    return terminal[0];
+  }
+
+  private int newState() {
+    int[] next = new int[ALPHABET];
+    Arrays.fill(next, NONE);
+    transitions.add(next);
+    return transitions.size() - 1;
+  }
+
+  private static int lower(char c) {
+    return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+  }
+}
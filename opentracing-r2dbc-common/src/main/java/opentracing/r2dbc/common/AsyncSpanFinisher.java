@@ -0,0 +1,218 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.opentracing.noop.NoopSpan;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves error tagging and {@link Span#finish(long) finishing} off the calling thread, typically the
+ * event loop of the driver, to a dedicated worker.
+ * <p>
+ * The calling thread only takes the finish timestamp, from the wall clock like tracers do for the start
+ * timestamp so that a span never finishes before it started, and writes the span into a preallocated slot of a
+ * lock-free bounded ring. When the ring is full the {@link OverflowPolicy} decides whether the oldest or the
+ * new span is dropped, i.e. never finished and therefore never reported, or whether the caller waits.
+ */
+public final class AsyncSpanFinisher implements SpanFinisher, Closeable {
+
+  public enum OverflowPolicy {
+    DROP_OLDEST,
+    DROP_NEW,
+    BLOCK
+  }
+
+  public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+  private final Slot[] slots;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private final OverflowPolicy overflowPolicy;
+  private final LongAdder finished = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final Thread worker;
+  private volatile boolean running = true;
+
+  public AsyncSpanFinisher() {
+    this(DEFAULT_BUFFER_SIZE, OverflowPolicy.DROP_OLDEST);
+  }
+
+  /**
+   * @param bufferSize rounded up to a power of two
+   */
+  public AsyncSpanFinisher(int bufferSize, OverflowPolicy overflowPolicy) {
+    int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+    this.slots = new Slot[capacity];
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = new Slot();
+      sequences.set(i, i);
+    }
+    this.mask = capacity - 1;
+    this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DROP_OLDEST : overflowPolicy;
+    this.worker = new Thread(this::run, "r2dbc-span-finisher");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  @Override
+  public void finish(Span span, Throwable thrown, long finishMicros) {
+    if (span instanceof NoopSpan) {
+      return;
+    }
+    long at = finishMicros > 0 ? finishMicros : TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    if (!running) {
+      finishNow(span, thrown, at);
+      return;
+    }
+    while (!offer(span, thrown, at)) {
+      LockSupport.unpark(worker);
+      switch (overflowPolicy) {
+        case DROP_NEW:
+          dropped.increment();
+          return;
+        case DROP_OLDEST:
+          poll(false);
+          break;
+        default:
+          LockSupport.parkNanos(BLOCK_PARK_NANOS);
+      }
+    }
+  }
+
+  public long getFinishedSpans() {
+    return finished.sum();
+  }
+
+  /**
+   * Spans never finished because the ring was full.
+   */
+  public long getDroppedSpans() {
+    return dropped.sum();
+  }
+
+  /**
+   * Spans whose tracer threw when they were finished.
+   */
+  public long getFailedSpans() {
+    return failed.sum();
+  }
+
+  public long getPendingSpans() {
+    return Math.max(0, tail.get() - head.get());
+  }
+
+  public int getBufferSize() {
+    return slots.length;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Stops the worker after it finished the buffered spans; later spans are finished on the calling thread.
+   */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(worker);
+    try {
+      worker.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    while (poll(true)) {
+      // finish what was offered while stopping
+    }
+  }
+
+  private void run() {
+    while (running) {
+      if (!poll(true)) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      }
+    }
+    while (poll(true)) {
+      // drain
+    }
+  }
+
+  private boolean offer(Span span, Throwable thrown, long finishMicros) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) position & mask;
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          Slot slot = slots[index];
+          slot.span = span;
+          slot.thrown = thrown;
+          slot.finishMicros = finishMicros;
+          sequences.lazySet(index, position + 1);
+          return true;
+        }
+      } else if (difference < 0) {
+        return false;
+      }
+      position = tail.get();
+    }
+  }
+
+  /**
+   * Takes the oldest span, finishing or dropping it; returns false when the ring is empty.
+   */
+  private boolean poll(boolean finish) {
+    long position = head.get();
+    while (true) {
+      int index = (int) position & mask;
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          Slot slot = slots[index];
+          Span span = slot.span;
+          Throwable thrown = slot.thrown;
+          long finishMicros = slot.finishMicros;
+          slot.span = null;
+          slot.thrown = null;
+          sequences.lazySet(index, position + slots.length);
+          if (finish) {
+            finishNow(span, thrown, finishMicros);
+          } else {
+            dropped.increment();
+          }
+          return true;
+        }
+      } else if (difference < 0) {
+        return false;
+      }
+      position = head.get();
+    }
+  }
+
+  private void finishNow(Span span, Throwable thrown, long finishMicros) {
+    try {
+      SYNC.finish(span, thrown, finishMicros);
+      finished.increment();
+    } catch (RuntimeException e) {
+      failed.increment();
+    }
+  }
+
+  private static final class Slot {
+    Span span;
+    Throwable thrown;
+    long finishMicros;
+  }
+}
@@ -0,0 +1,76 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.QueryInfo;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Compact {@code db.statement} of a batch: identical statements collapse into one entry with a
+ * repeat count, and the entries are capped by count and by total UTF-8 bytes, with a marker telling
+ * how many distinct statements were left out. A statement longer than the cap alone is cut on a
+ * code point boundary.
+ */
+final class BatchStatement {
+
+  private static final String SEPARATOR = ", ";
+  private static final String TRUNCATED = "...";
+
+  private final String statement;
+  private final int distinctStatements;
+
+  private BatchStatement(String statement, int distinctStatements) {
+    this.statement = statement;
+    this.distinctStatements = distinctStatements;
+  }
+
+  String getStatement() {
+    return statement;
+  }
+
+  int getDistinctStatements() {
+    return distinctStatements;
+  }
+
+  static BatchStatement of(List<QueryInfo> queryInfos, Function<String, String> statementFunction,
+                           int maxStatements, int maxLength) {
+    Map<String, int[]> counts = new LinkedHashMap<>();
+    for (QueryInfo queryInfo : queryInfos) {
+      counts.computeIfAbsent(statementFunction.apply(queryInfo.getQuery()), statement -> new int[1])[0]++;
+    }
+
+    StringBuilder builder = new StringBuilder();
+    int bytes = 0;
+    int appended = 0;
+    for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+      String statement = entry.getKey();
+      int count = entry.getValue()[0];
+      String repeat = count > 1 ? " /* x" + count + " */" : "";
+      int statementBytes = BindParameterEncoder.utf8Length(statement);
+      int length = statementBytes + repeat.length() + (appended > 0 ? SEPARATOR.length() : 0);
+      if (appended == maxStatements || (appended > 0 && bytes + length > maxLength)) {
+        break;
+      }
+      if (appended > 0) {
+        builder.append(SEPARATOR);
+      }
+      if (statementBytes > maxLength) {
+        int end = BindParameterEncoder.utf8Prefix(statement, maxLength);
+        builder.append(statement, 0, end).append(TRUNCATED);
+        length += BindParameterEncoder.utf8Length(statement.substring(0, end)) + TRUNCATED.length() - statementBytes;
+      } else {
+        builder.append(statement);
+      }
+      builder.append(repeat);
+      bytes += length;
+      appended++;
+    }
+    int truncated = counts.size() - appended;
+    if (truncated > 0) {
+      builder.append(SEPARATOR).append("/* ").append(truncated).append(" more statements */");
+    }
+    return new BatchStatement(builder.toString(), counts.size());
+  }
+}
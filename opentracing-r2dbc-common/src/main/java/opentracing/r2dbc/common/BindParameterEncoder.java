@@ -0,0 +1,195 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.Binding;
+import io.r2dbc.proxy.core.Bindings;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.spi.Blob;
+import io.r2dbc.spi.Clob;
+
+import java.nio.ByteBuffer;
+import java.time.temporal.Temporal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Renders the bind values of sampled queries, e.g. {@code (0=42, 1='foo'), (0=43, 1='bar')}.
+ * Only numbers, booleans, character sequences, temporals, UUIDs and enums are rendered, strings
+ * are cut after {@code maxValueLength} bytes of UTF-8; binary values, LOBs and any other type only
+ * show their type, so nothing is ever materialized. The whole rendering stops once it takes
+ * {@code maxLength} bytes of UTF-8, as span size limits of tracers and collectors are in bytes.
+ * Characters are never split.
+ * <p>
+ * Parameters are selected by index or name: denied parameters are always masked, and when an
+ * allow list is given only those parameters are rendered.
+ */
+public final class BindParameterEncoder {
+
+  static final String MASKED = "***";
+  private static final String TRUNCATED = "...";
+
+  private final int maxValueLength;
+  private final int maxLength;
+  private final Set<String> allow;
+  private final Set<String> deny;
+  private final BindParameterMasker masker;
+
+  public BindParameterEncoder(int maxValueLength, int maxLength, Collection<String> allow, Collection<String> deny,
+                              BindParameterMasker masker) {
+    this.maxValueLength = maxValueLength;
+    this.maxLength = maxLength;
+    this.allow = allow == null ? Collections.emptySet() : new HashSet<>(allow);
+    this.deny = deny == null ? Collections.emptySet() : new HashSet<>(deny);
+    this.masker = masker == null ? BindParameterMasker.NONE : masker;
+  }
+
+  /**
+   * Returns the rendered bindings of the given queries, or {@code null} if nothing was bound.
+   */
+  public String encode(List<QueryInfo> queryInfos) {
+    StringBuilder builder = null;
+    for (QueryInfo queryInfo : queryInfos) {
+      for (Bindings bindings : queryInfo.getBindingsList()) {
+        if (bindings.getIndexBindings().isEmpty() && bindings.getNamedBindings().isEmpty()) {
+          continue;
+        }
+        if (builder == null) {
+          builder = new StringBuilder();
+        }
+        int start = builder.length();
+        builder.append(start == 0 ? "(" : ", (");
+        boolean first = append(builder, bindings.getIndexBindings(), true);
+        if (append(builder, bindings.getNamedBindings(), first)) {
+          builder.setLength(start);
+          continue;
+        }
+        builder.append(')');
+        if (isFull(builder)) {
+          builder.setLength(utf8Prefix(builder, maxLength));
+          return builder.append(TRUNCATED).toString();
+        }
+      }
+    }
+    return builder == null || builder.length() == 0 ? null : builder.toString();
+  }
+
+  private boolean append(StringBuilder builder, Collection<Binding> bindings, boolean first) {
+    for (Binding binding : bindings) {
+      if (isFull(builder)) {
+        break;
+      }
+      Object key = binding.getKey();
+      String name = String.valueOf(key);
+      if (!allow.isEmpty() && !allow.contains(name)) {
+        continue;
+      }
+      if (!first) {
+        builder.append(", ");
+      }
+      first = false;
+      builder.append(name).append('=');
+      if (deny.contains(name)) {
+        builder.append(MASKED);
+      } else {
+        Object value = binding.getBoundValue().isNull() ? null : binding.getBoundValue().getValue();
+        appendValue(builder, masker.mask(key, value));
+      }
+    }
+    return first;
+  }
+
+  private void appendValue(StringBuilder builder, Object value) {
+    if (value == null) {
+      builder.append("NULL");
+    } else if (value instanceof Number || value instanceof Boolean) {
+      builder.append(value);
+    } else if (value instanceof CharSequence) {
+      CharSequence text = (CharSequence) value;
+      builder.append('\'');
+      int end = utf8Prefix(text, maxValueLength);
+      if (end < text.length()) {
+        builder.append(text, 0, end).append(TRUNCATED);
+      } else {
+        builder.append(text);
+      }
+      builder.append('\'');
+    } else if (value instanceof Temporal || value instanceof UUID || value instanceof Enum) {
+      builder.append('\'').append(value).append('\'');
+    } else if (value instanceof byte[]) {
+      builder.append("<byte[").append(((byte[]) value).length).append("]>");
+    } else if (value instanceof ByteBuffer) {
+      builder.append("<ByteBuffer[").append(((ByteBuffer) value).remaining()).append("]>");
+    } else if (value instanceof Blob) {
+      builder.append("<Blob>");
+    } else if (value instanceof Clob) {
+      builder.append("<Clob>");
+    } else {
+      builder.append('<').append(value.getClass().getSimpleName()).append('>');
+    }
+  }
+
+  /**
+   * Whether the given text takes at least {@code maxLength} bytes of UTF-8.
+   */
+  private boolean isFull(CharSequence text) {
+    if (text.length() >= maxLength) {
+      return true;
+    }
+    // a char takes at most 3 bytes, a surrogate pair 4
+    return text.length() * 3 >= maxLength && utf8Prefix(text, maxLength - 1) < text.length();
+  }
+
+  /**
+   * Returns the number of bytes the given text takes in UTF-8.
+   */
+  static int utf8Length(CharSequence text) {
+    int bytes = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        bytes++;
+      } else if (c < 0x800) {
+        bytes += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+        bytes += 4;
+        i++;
+      } else {
+        bytes += 3;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the number of leading chars of the given text which take at most {@code maxBytes} bytes of UTF-8.
+   */
+  static int utf8Prefix(CharSequence text, int maxBytes) {
+    int bytes = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      int length;
+      if (c < 0x80) {
+        length = 1;
+      } else if (c < 0x800) {
+        length = 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+        if (bytes + 4 > maxBytes) {
+          return i;
+        }
+        bytes += 4;
+        i++;
+        continue;
+      } else {
+        length = 3;
+      }
+      if (bytes + length > maxBytes) {
+        return i;
+      }
+      bytes += length;
+    }
+    return text.length();
+  }
+}
@@ -0,0 +1,16 @@
+package opentracing.r2dbc.common;
+
+/**
+ * Hook to replace a bind value before it is captured, e.g. to hide personal data.
+ */
+public interface BindParameterMasker {
+
+  BindParameterMasker NONE = (key, value) -> value;
+
+  /**
+   * @param key the parameter index ({@link Integer}) or name ({@link String})
+   * @param value the bound value, {@code null} for SQL NULL
+   * @return the value to capture instead
+   */
+  Object mask(Object key, Object value);
+}
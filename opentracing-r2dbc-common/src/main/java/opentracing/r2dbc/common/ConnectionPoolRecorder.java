@@ -0,0 +1,89 @@
+package opentracing.r2dbc.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Acquire latency of every r2dbc-pool {@code ConnectionPool} seen by the listener. Pools are
+ * passed around as plain objects so this class can be used without r2dbc-pool on the classpath.
+ */
+public class ConnectionPoolRecorder {
+
+  static final boolean POOL_PRESENT = isPoolPresent();
+
+  private final List<PoolAcquireMetrics> pools = new CopyOnWriteArrayList<>();
+  private final List<Consumer<PoolAcquireMetrics>> listeners = new CopyOnWriteArrayList<>();
+
+  public void recordAcquire(Object connectionPool, long durationNanos) {
+    poolAcquireMetrics(connectionPool).getAcquireHistogram().record(durationNanos);
+  }
+
+  public PoolAcquireMetrics poolAcquireMetrics(Object connectionPool) {
+    for (PoolAcquireMetrics pool : pools) {
+      if (pool.getConnectionPool() == connectionPool) {
+        return pool;
+      }
+    }
+    synchronized (pools) {
+      for (PoolAcquireMetrics pool : pools) {
+        if (pool.getConnectionPool() == connectionPool) {
+          return pool;
+        }
+      }
+      PoolAcquireMetrics pool = new PoolAcquireMetrics("pool-" + pools.size(), connectionPool);
+      pools.add(pool);
+      listeners.forEach(listener -> listener.accept(pool));
+      return pool;
+    }
+  }
+
+  public List<PoolAcquireMetrics> getPools() {
+    return new ArrayList<>(pools);
+  }
+
+  /**
+   * Registers a listener which is called once for every known and every future pool.
+   */
+  public void addListener(Consumer<PoolAcquireMetrics> listener) {
+    synchronized (pools) {
+      listeners.add(listener);
+      pools.forEach(listener);
+    }
+  }
+
+  private static boolean isPoolPresent() {
+    try {
+      Class.forName("io.r2dbc.pool.ConnectionPool", false, ConnectionPoolRecorder.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  public static final class PoolAcquireMetrics {
+
+    private final String name;
+    private final Object connectionPool;
+    private final LatencyHistogram acquireHistogram =
+        new LatencyHistogram(LatencyHistogram.DEFAULT_WINDOW_MS, LatencyHistogram.DEFAULT_WINDOWS);
+
+    private PoolAcquireMetrics(String name, Object connectionPool) {
+      this.name = name;
+      this.connectionPool = connectionPool;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Object getConnectionPool() {
+      return connectionPool;
+    }
+
+    public LatencyHistogram getAcquireHistogram() {
+      return acquireHistogram;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+
+/**
+ * State of an r2dbc-pool {@link ConnectionPool} right before a connection is acquired from it.
+ * r2dbc-pool is an optional dependency, this class must only be touched when
+ * {@link ConnectionPoolRecorder#POOL_PRESENT}.
+ */
+final class ConnectionPoolSnapshot {
+
+  static final String ACQUIRE_IDLE = "idle";
+  static final String ACQUIRE_CREATED = "created";
+  static final String ACQUIRE_WAITED = "waited";
+
+  final ConnectionPool pool;
+  final int idle;
+  final int allocated;
+  final int acquired;
+  final int pendingAcquire;
+  final int maxAllocated;
+
+  private ConnectionPoolSnapshot(ConnectionPool pool, PoolMetrics poolMetrics) {
+    this.pool = pool;
+    this.idle = poolMetrics.idleSize();
+    this.allocated = poolMetrics.allocatedSize();
+    this.acquired = poolMetrics.acquiredSize();
+    this.pendingAcquire = poolMetrics.pendingAcquireSize();
+    this.maxAllocated = poolMetrics.getMaxAllocatedSize();
+  }
+
+  static boolean isPool(Object connectionFactory) {
+    return connectionFactory instanceof ConnectionPool;
+  }
+
+  /**
+   * Returns the snapshot of the given connection factory, or {@code null} if it is not a pool.
+   */
+  static ConnectionPoolSnapshot of(Object connectionFactory) {
+    if (!(connectionFactory instanceof ConnectionPool)) {
+      return null;
+    }
+    ConnectionPool pool = (ConnectionPool) connectionFactory;
+    return pool.getMetrics().map(poolMetrics -> new ConnectionPoolSnapshot(pool, poolMetrics)).orElse(null);
+  }
+
+  /**
+   * How the acquire was most likely served: by an idle connection, by creating a new one, or by
+   * waiting for a connection to be released because the pool was exhausted. This is a heuristic, the
+   * snapshot is taken before the acquire and concurrent acquires may have taken the idle connections
+   * or released some in the meantime.
+   */
+  String acquireOutcome() {
+    if (idle > 0) {
+      return ACQUIRE_IDLE;
+    }
+    return allocated < maxAllocated ? ACQUIRE_CREATED : ACQUIRE_WAITED;
+  }
+}
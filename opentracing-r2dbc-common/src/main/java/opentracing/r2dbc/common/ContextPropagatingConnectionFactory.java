@@ -0,0 +1,34 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import reactor.core.publisher.Mono;
+
+/**
+ * Hands the parent span of the subscriber context over to the listener when a connection is created.
+ */
+final class ContextPropagatingConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory> {
+
+  private final ConnectionFactory delegate;
+
+  ContextPropagatingConnectionFactory(ConnectionFactory delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Mono<Connection> create() {
+    return ReactorContextTracing.propagate(Mono.from(delegate.create()));
+  }
+
+  @Override
+  public ConnectionFactoryMetadata getMetadata() {
+    return delegate.getMetadata();
+  }
+
+  @Override
+  public ConnectionFactory unwrap() {
+    return delegate;
+  }
+}
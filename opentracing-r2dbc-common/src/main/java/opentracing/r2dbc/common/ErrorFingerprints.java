@@ -0,0 +1,152 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+import io.r2dbc.spi.R2dbcException;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static opentracing.r2dbc.common.TagConstants.*;
+
+/**
+ * Groups the errors of failing executions by exception type, SQLState, vendor error code and the top
+ * stack frames, so that a burst of identical failures does not attach a full stack trace to every span.
+ * <p>
+ * Within each window the first occurrences of a fingerprint keep their full detail; later ones only get
+ * the fingerprint and its occurrence count. The number of tracked fingerprints is bounded, further ones
+ * share a single overflow entry.
+ */
+public class ErrorFingerprints {
+
+  static final int TOP_FRAMES = 3;
+  static final long OVERFLOW_FINGERPRINT = 0;
+  private static final int MAX_CAUSE_DEPTH = 8;
+
+  private final ConcurrentHashMap<Long, ErrorOccurrences> errors = new ConcurrentHashMap<>();
+  private final ErrorOccurrences overflow = new ErrorOccurrences(OVERFLOW_FINGERPRINT);
+  private final int maxFingerprints;
+  private final int fullDetailPerWindow;
+  private final long windowMs;
+
+  public ErrorFingerprints(int maxFingerprints, int fullDetailPerWindow, long windowMs) {
+    this.maxFingerprints = Math.max(1, maxFingerprints);
+    this.fullDetailPerWindow = fullDetailPerWindow;
+    this.windowMs = windowMs;
+  }
+
+  /**
+   * Tags the error and its fingerprint on the span and returns whether the throwable itself should still
+   * be logged on it.
+   */
+  public boolean tag(Span span, Throwable thrown) {
+    R2dbcException r2dbcException = r2dbcException(thrown);
+    ErrorOccurrences occurrences = occurrences(fingerprint(thrown, r2dbcException));
+    boolean fullDetail = occurrences.occur(System.currentTimeMillis(), fullDetailPerWindow, windowMs);
+    Tags.ERROR.set(span, Boolean.TRUE);
+    TAG_ERROR_FINGERPRINT.set(span, occurrences.id);
+    if (r2dbcException != null) {
+      if (r2dbcException.getSqlState() != null) {
+        TAG_ERROR_SQL_STATE.set(span, r2dbcException.getSqlState());
+      }
+      TAG_ERROR_CODE.set(span, r2dbcException.getErrorCode());
+    }
+    if (!fullDetail) {
+      TAG_ERROR_KIND.set(span, thrown.getClass().getName());
+      TAG_ERROR_OCCURRENCES.set(span, occurrences.total.sum());
+    }
+    return fullDetail;
+  }
+
+  public int size() {
+    return errors.size();
+  }
+
+  private ErrorOccurrences occurrences(long fingerprint) {
+    ErrorOccurrences occurrences = errors.get(fingerprint);
+    if (occurrences != null) {
+      return occurrences;
+    }
+    if (errors.size() >= maxFingerprints) {
+      evictIdle(System.currentTimeMillis());
+      if (errors.size() >= maxFingerprints) {
+        return overflow;
+      }
+    }
+    return errors.computeIfAbsent(fingerprint, ErrorOccurrences::new);
+  }
+
+  private void evictIdle(long now) {
+    Iterator<ErrorOccurrences> iterator = errors.values().iterator();
+    while (iterator.hasNext()) {
+      if (now - iterator.next().windowStart >= windowMs) {
+        iterator.remove();
+      }
+    }
+  }
+
+  static long fingerprint(Throwable thrown) {
+    return fingerprint(thrown, r2dbcException(thrown));
+  }
+
+  private static long fingerprint(Throwable thrown, R2dbcException r2dbcException) {
+    long hash = mix(17, thrown.getClass().getName().hashCode());
+    if (r2dbcException != null) {
+      hash = mix(hash, r2dbcException.getSqlState() == null ? 0 : r2dbcException.getSqlState().hashCode());
+      hash = mix(hash, r2dbcException.getErrorCode());
+    }
+    StackTraceElement[] stackTrace = thrown.getStackTrace();
+    for (int i = 0; i < Math.min(TOP_FRAMES, stackTrace.length); i++) {
+      hash = mix(hash, stackTrace[i].getClassName().hashCode());
+      hash = mix(hash, stackTrace[i].getMethodName().hashCode());
+      hash = mix(hash, stackTrace[i].getLineNumber());
+    }
+    return hash == OVERFLOW_FINGERPRINT ? 1 : hash;
+  }
+
+  private static long mix(long hash, int value) {
+    hash = (hash ^ value) * 0x100000001b3L;
+    return hash ^ (hash >>> 29);
+  }
+
+  private static R2dbcException r2dbcException(Throwable thrown) {
+    Throwable cause = thrown;
+    for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++, cause = cause.getCause()) {
+      if (cause instanceof R2dbcException) {
+        return (R2dbcException) cause;
+      }
+    }
+    return null;
+  }
+
+  private static final class ErrorOccurrences {
+
+    private final String id;
+    private final LongAdder total = new LongAdder();
+    private final AtomicInteger windowCount = new AtomicInteger();
+    private volatile long windowStart = System.currentTimeMillis();
+
+    private ErrorOccurrences(long fingerprint) {
+      this.id = fingerprint == OVERFLOW_FINGERPRINT ? "other" : String.format("%016x", fingerprint);
+    }
+
+    /**
+     * Counts an occurrence and returns whether it is among the first ones of the current window.
+     */
+    private boolean occur(long now, int fullDetailPerWindow, long windowMs) {
+      total.increment();
+      long start = windowStart;
+      if (now - start >= windowMs) {
+        synchronized (this) {
+          if (windowStart == start) {
+            windowCount.set(0);
+            windowStart = now;
+          }
+        }
+      }
+      return windowCount.incrementAndGet() <= fullDetailPerWindow;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * How {@link ExplainPlanCapture} asks a database for the plan of a statement. Plans returned as one text column
+ * are joined line by line, tabular plans as {@code column=value} pairs per row.
+ */
+public enum ExplainDialect {
+
+  H2("EXPLAIN "),
+  POSTGRES("EXPLAIN (FORMAT TEXT) "),
+  MYSQL("EXPLAIN ");
+
+  private final String prefix;
+
+  ExplainDialect(String prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * The dialect of a {@link io.r2dbc.spi.ConnectionFactoryMetadata#getName() driver name}, or {@code null}.
+   */
+  public static ExplainDialect of(String name) {
+    String lowerCase = name == null ? "" : name.toLowerCase(Locale.ROOT);
+    if (lowerCase.contains("h2")) {
+      return H2;
+    }
+    if (lowerCase.contains("postgres")) {
+      return POSTGRES;
+    }
+    if (lowerCase.contains("mysql") || lowerCase.contains("mariadb")) {
+      return MYSQL;
+    }
+    return null;
+  }
+
+  String explain(String statement) {
+    return prefix + statement;
+  }
+
+  String format(Row row, RowMetadata metadata) {
+    Collection<String> columns = metadata.getColumnNames();
+    if (columns.size() == 1) {
+      return String.valueOf(row.get(0));
+    }
+    StringBuilder builder = new StringBuilder();
+    int index = 0;
+    for (String column : columns) {
+      if (index > 0) {
+        builder.append(", ");
+      }
+      builder.append(column).append('=').append(row.get(index++));
+    }
+    return builder.toString();
+  }
+}
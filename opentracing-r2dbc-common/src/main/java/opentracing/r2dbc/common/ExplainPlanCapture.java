@@ -0,0 +1,300 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.Binding;
+import io.r2dbc.proxy.core.Bindings;
+import io.r2dbc.proxy.core.BoundValue;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Statement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Captures the plans of slow statements by running the EXPLAIN of the {@link ExplainDialect} on a connection of
+ * its own {@link ConnectionFactory}, never on the connection or thread of the query. Captures are subscribed on a
+ * dedicated scheduler, rate limited, and run at most once per statement fingerprint per window; the last
+ * {@code maxPlans} plans are kept.
+ * <p>
+ * The connection factory must be the original one rather than the traced proxy, which would trace the EXPLAINs as
+ * queries of the application. Its user needs no more rights than the application, as EXPLAIN runs the statement's
+ * planner with the bind values of the slow query.
+ */
+public class ExplainPlanCapture implements Closeable {
+
+  public static final long DEFAULT_WINDOW_MS = 600_000;
+  public static final double DEFAULT_PERMITS_PER_SECOND = 1;
+  public static final int DEFAULT_MAX_PLANS = 256;
+  public static final long DEFAULT_TIMEOUT_MS = 5_000;
+  static final int MAX_PLAN_LENGTH = 8192;
+  static final int PLAN_ID_BYTES = 8;
+  static final Set<String> EXPLAINABLE_OPERATIONS =
+      new HashSet<>(Arrays.asList("SELECT", "WITH", "INSERT", "UPDATE", "DELETE"));
+
+  private final Supplier<ConnectionFactory> connectionFactory;
+  private final ExplainDialect dialect;
+  private final long windowNanos;
+  private final Duration timeout;
+  private final TokenBucket rateLimiter;
+  private final Map<String, Plan> plans;
+  private final Scheduler scheduler = Schedulers.newSingle("r2dbc-explain", true);
+  private final LongAdder captured = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder rateLimited = new LongAdder();
+
+  public ExplainPlanCapture(ConnectionFactory connectionFactory) {
+    this(() -> connectionFactory, null, DEFAULT_WINDOW_MS, DEFAULT_PERMITS_PER_SECOND, DEFAULT_MAX_PLANS,
+        DEFAULT_TIMEOUT_MS);
+  }
+
+  /**
+   * @param connectionFactory resolved on the first capture, so that it may depend on the traced one
+   * @param dialect           {@code null} to detect it from the connection factory metadata
+   * @param windowMs          how long a plan is reused before the statement is explained again
+   * @param permitsPerSecond  captures started per second over all statements
+   * @param maxPlans          plans kept, the least recently captured ones are dropped
+   * @param timeoutMs         time a capture may take including acquiring the connection
+   */
+  public ExplainPlanCapture(Supplier<ConnectionFactory> connectionFactory, ExplainDialect dialect, long windowMs,
+                            double permitsPerSecond, int maxPlans, long timeoutMs) {
+    this.connectionFactory = connectionFactory;
+    this.dialect = dialect;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    this.timeout = Duration.ofMillis(timeoutMs);
+    this.rateLimiter = new TokenBucket(permitsPerSecond, 1);
+    int capacity = maxPlans > 0 ? maxPlans : DEFAULT_MAX_PLANS;
+    this.plans = new LinkedHashMap<String, Plan>(16, 0.75f, false) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * The plan of the statement, whose text may still be captured, or {@code null} when the statement cannot be
+   * explained or the rate limit was hit. Starts a capture when the statement was not explained within the window.
+   */
+  Plan capture(QueryFingerprint fingerprint, QueryInfo queryInfo) {
+    if (!EXPLAINABLE_OPERATIONS.contains(fingerprint.getOperation())) {
+      return null;
+    }
+    long now = System.nanoTime();
+    Plan plan;
+    synchronized (plans) {
+      plan = plans.get(fingerprint.getFingerprint());
+      if (plan != null && now - plan.attemptedNanos < windowNanos) {
+        return plan;
+      }
+      if (!rateLimiter.tryAcquire(now)) {
+        rateLimited.increment();
+        return plan;
+      }
+      if (plan == null) {
+        plan = new Plan(planId(fingerprint), fingerprint.getFingerprint());
+      }
+      plan.attemptedNanos = now;
+      // re-inserted so that plans are dropped in the order they were last captured
+      plans.remove(fingerprint.getFingerprint());
+      plans.put(fingerprint.getFingerprint(), plan);
+    }
+    Plan capturing = plan;
+    List<Binding> bindings = bindings(queryInfo);
+    Mono.defer(() -> explain(queryInfo.getQuery(), bindings))
+        .timeout(timeout)
+        .subscribeOn(scheduler)
+        .subscribe(text -> {
+          captured.increment();
+          capturing.complete(text, null);
+        }, e -> {
+          failed.increment();
+          capturing.complete(null, e);
+        });
+    return plan;
+  }
+
+  public Plan getPlan(String id) {
+    synchronized (plans) {
+      for (Plan plan : plans.values()) {
+        if (plan.id.equals(id)) {
+          return plan;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The kept plans, the most recently captured last.
+   */
+  public List<Plan> getPlans() {
+    synchronized (plans) {
+      return new ArrayList<>(plans.values());
+    }
+  }
+
+  public long getCapturedPlans() {
+    return captured.sum();
+  }
+
+  public long getFailedPlans() {
+    return failed.sum();
+  }
+
+  /**
+   * Captures not started because of the rate limit.
+   */
+  public long getRateLimitedPlans() {
+    return rateLimited.sum();
+  }
+
+  @Override
+  public void close() {
+    scheduler.dispose();
+  }
+
+  /**
+   * The first 64 bits of the SHA-256 of the fingerprint, which unlike its hash code do not collide in practice.
+   */
+  static String planId(QueryFingerprint fingerprint) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform implements SHA-256
+      throw new IllegalStateException(e);
+    }
+    byte[] hash = digest.digest(fingerprint.getFingerprint().getBytes(StandardCharsets.UTF_8));
+    StringBuilder id = new StringBuilder(PLAN_ID_BYTES * 2);
+    for (int i = 0; i < PLAN_ID_BYTES; i++) {
+      id.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+    }
+    return id.toString();
+  }
+
+  private Mono<String> explain(String query, List<Binding> bindings) {
+    ConnectionFactory factory = connectionFactory.get();
+    if (factory == null) {
+      return Mono.error(new IllegalStateException("No connection factory to explain statements with"));
+    }
+    ExplainDialect explainDialect = dialect != null ? dialect : ExplainDialect.of(factory.getMetadata().getName());
+    if (explainDialect == null) {
+      return Mono.error(new IllegalStateException("Unsupported database: " + factory.getMetadata().getName()));
+    }
+    return Mono.usingWhen(factory.create(), connection -> explain(connection, explainDialect, query, bindings),
+        Connection::close);
+  }
+
+  private static Mono<String> explain(Connection connection, ExplainDialect dialect, String query,
+                                      List<Binding> bindings) {
+    Statement statement = connection.createStatement(dialect.explain(query));
+    for (Binding binding : bindings) {
+      BoundValue boundValue = binding.getBoundValue();
+      Object key = binding.getKey();
+      if (key instanceof Integer) {
+        if (boundValue.isNull()) {
+          statement.bindNull((Integer) key, boundValue.getNullType());
+        } else {
+          statement.bind((Integer) key, boundValue.getValue());
+        }
+      } else if (boundValue.isNull()) {
+        statement.bindNull((String) key, boundValue.getNullType());
+      } else {
+        statement.bind((String) key, boundValue.getValue());
+      }
+    }
+    return Flux.from(statement.execute())
+        .concatMap(result -> result.map(dialect::format))
+        .collect(Collectors.joining("\n"));
+  }
+
+  /**
+   * The bindings of the first execution, copied as the proxy may reuse them.
+   */
+  private static List<Binding> bindings(QueryInfo queryInfo) {
+    List<Bindings> bindingsList = queryInfo.getBindingsList();
+    if (bindingsList.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Binding> bindings = new ArrayList<>(bindingsList.get(0).getIndexBindings());
+    bindings.addAll(bindingsList.get(0).getNamedBindings());
+    return bindings;
+  }
+
+  /**
+   * The plan of a statement fingerprint, identified by a short id which is tagged on the spans of the statement.
+   */
+  public static final class Plan {
+
+    private final String id;
+    private final String statement;
+    private volatile String plan;
+    private volatile String error;
+    private volatile long capturedAtMillis;
+    private long attemptedNanos;
+
+    Plan(String id, String statement) {
+      this.id = id;
+      this.statement = statement;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getStatement() {
+      return statement;
+    }
+
+    /**
+     * The plan text, or {@code null} while it is captured or when capturing it failed.
+     */
+    public String getPlan() {
+      return plan;
+    }
+
+    /**
+     * Why the last capture failed, or {@code null}.
+     */
+    public String getError() {
+      return error;
+    }
+
+    /**
+     * When the last capture completed, 0 while the first one runs.
+     */
+    public long getCapturedAtMillis() {
+      return capturedAtMillis;
+    }
+
+    void complete(String plan, Throwable thrown) {
+      if (plan != null) {
+        this.plan = plan.length() > MAX_PLAN_LENGTH ? plan.substring(0, MAX_PLAN_LENGTH) : plan;
+        this.error = null;
+      } else {
+        this.error = String.valueOf(thrown);
+      }
+      this.capturedAtMillis = System.currentTimeMillis();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package opentracing.r2dbc.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with HdrHistogram style log-linear buckets over microseconds: every
+ * power of two is split into {@value #SUB_BUCKETS} linear buckets, which bounds the relative error
+ * of any reported percentile to about 6%. Values up to roughly 70 minutes are tracked, larger ones
+ * are clamped into the last bucket.
+ * <p>
+ * The count and total time are kept for the whole lifetime. A rolling histogram reports its maximum and
+ * percentiles over a ring of {@code windows} buckets arrays rotated every {@code windowMs / windows}, i.e. over
+ * the last {@code windowMs}, so that they still show regressions after warm-up; recording only allocates when a
+ * slot is rotated. Expired slots are dropped when read, so idle histograms hold no buckets.
+ */
+public class LatencyHistogram {
+
+  public static final long DEFAULT_WINDOW_MS = 60_000;
+  public static final int DEFAULT_WINDOWS = 3;
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 32;
+  static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final Slot cumulative;
+  private final AtomicReferenceArray<Slot> slots;
+  private final long slotNanos;
+  private final long startNanos = System.nanoTime();
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+
+  /**
+   * A histogram of all recorded values.
+   */
+  public LatencyHistogram() {
+    this.cumulative = new Slot(0);
+    this.slots = null;
+    this.slotNanos = 0;
+  }
+
+  /**
+   * A rolling histogram whose maximum and percentiles cover the last {@code windowMs}.
+   */
+  public LatencyHistogram(long windowMs, int windows) {
+    this.cumulative = null;
+    this.slots = new AtomicReferenceArray<>(Math.max(1, windows));
+    this.slotNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMs) / slots.length());
+  }
+
+  public void record(long nanos) {
+    record(nanos, System.nanoTime());
+  }
+
+  void record(long nanos, long now) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    slot(now).record(nanos);
+    count.increment();
+    totalNanos.add(nanos);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public double totalTimeNanos() {
+    return totalNanos.sum();
+  }
+
+  public long maxNanos() {
+    return maxNanos(System.nanoTime());
+  }
+
+  long maxNanos(long now) {
+    if (cumulative != null) {
+      return cumulative.max.get();
+    }
+    long max = 0;
+    for (Slot slot : liveSlots(now)) {
+      max = Math.max(max, slot.max.get());
+    }
+    return max;
+  }
+
+  /**
+   * Returns the upper bound, in nanoseconds, of the bucket holding the given percentile
+   * ({@code 0 < percentile <= 100}), or 0 if nothing was recorded.
+   */
+  public long valueAtPercentile(double percentile) {
+    return valueAtPercentile(percentile, System.nanoTime());
+  }
+
+  long valueAtPercentile(double percentile, long now) {
+    long[] snapshot = snapshot(now);
+    long max = maxNanos(now);
+    long total = 0;
+    for (long bucket : snapshot) {
+      total += bucket;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(TimeUnit.MICROSECONDS.toNanos(bucketUpperBound(i)), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns the percentage of recorded values which are lower than or equal to the given value.
+   */
+  public double percentileOf(long nanos) {
+    long[] snapshot = snapshot(System.nanoTime());
+    int index = bucketIndex(TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos)));
+    long total = 0;
+    long below = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      total += snapshot[i];
+      if (i <= index) {
+        below += snapshot[i];
+      }
+    }
+    return total == 0 ? 0 : below * 100.0 / total;
+  }
+
+  long[] snapshot() {
+    return snapshot(System.nanoTime());
+  }
+
+  private long[] snapshot(long now) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (Slot slot : cumulative != null ? Collections.singletonList(cumulative) : liveSlots(now)) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        snapshot[i] += slot.buckets.get(i);
+      }
+    }
+    return snapshot;
+  }
+
+  private Slot slot(long now) {
+    if (cumulative != null) {
+      return cumulative;
+    }
+    long epoch = (now - startNanos) / slotNanos;
+    int index = (int) (epoch % slots.length());
+    while (true) {
+      Slot slot = slots.get(index);
+      if (slot != null && slot.epoch >= epoch) {
+        return slot;
+      }
+      Slot rotated = new Slot(epoch);
+      if (slots.compareAndSet(index, slot, rotated)) {
+        return rotated;
+      }
+    }
+  }
+
+  private List<Slot> liveSlots(long now) {
+    long epoch = (now - startNanos) / slotNanos;
+    List<Slot> live = new ArrayList<>(slots.length());
+    for (int i = 0; i < slots.length(); i++) {
+      Slot slot = slots.get(i);
+      if (slot == null) {
+        continue;
+      }
+      if (epoch - slot.epoch < slots.length()) {
+        live.add(slot);
+      } else {
+        slots.compareAndSet(i, slot, null);
+      }
+    }
+    return live;
+  }
+
+  static int bucketIndex(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long subBucket = index % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+
+  private static final class Slot {
+
+    private final long epoch;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    private Slot(long epoch) {
+      this.epoch = epoch;
+    }
+
+    void record(long nanos) {
+      buckets.incrementAndGet(bucketIndex(TimeUnit.NANOSECONDS.toMicros(nanos)));
+      long current = max.get();
+      while (nanos > current && !max.compareAndSet(current, nanos)) {
+        current = max.get();
+      }
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.opentracing.tag.AbstractTag;
+
+public class NumberTag extends AbstractTag<Number> {
+
+  public NumberTag(String key) {
+    super(key);
+  }
+
+  @Override
+  public void set(Span span, Number tagValue) {
+    span.setTag(super.key, tagValue);
+  }
+}
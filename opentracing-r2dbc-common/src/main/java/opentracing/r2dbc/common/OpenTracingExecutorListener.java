@@ -1,14 +1,21 @@
 package opentracing.r2dbc.common;
 
 import io.opentracing.Span;
+import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.noop.NoopSpan;
 import io.r2dbc.proxy.core.ConnectionInfo;
 import io.r2dbc.proxy.core.MethodExecutionInfo;
 import io.r2dbc.proxy.core.QueryExecutionInfo;
 import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.core.ValueStore;
 import io.r2dbc.proxy.listener.ProxyMethodExecutionListener;
 
-import static java.util.stream.Collectors.joining;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
 import static opentracing.r2dbc.common.TagConstants.*;
 
 public class OpenTracingExecutorListener implements ProxyMethodExecutionListener {
@@ -16,6 +23,21 @@ public class OpenTracingExecutorListener implements ProxyMethodExecutionListener
   static final String CONNECTION_SPAN_KEY = "connectionSpan";
   static final String TRANSACTION_SPAN_KEY = "transactionSpan";
   static final String QUERY_SPAN_KEY = "querySpan";
+  static final String QUERY_FINGERPRINT_KEY = "queryFingerprint";
+  static final String TAIL_SAMPLING_BUFFER_KEY = "tailSamplingBuffer";
+  static final String RESULT_STATISTICS_KEY = "resultStatistics";
+  static final String PENDING_RESULT_STATISTICS_KEY = "pendingResultStatistics";
+  static final String CONNECTION_POOL_SNAPSHOT_KEY = "connectionPoolSnapshot";
+  static final String ACQUIRE_SPAN_KEY = "acquireSpan";
+  static final String PARENT_SPAN_KEY = "parentSpan";
+  static final String TRANSACTION_STATISTICS_KEY = "transactionStatistics";
+  static final String REPEATED_QUERIES_KEY = "repeatedQueries";
+  static final String CONNECTION_REAPER_KEY = "connectionReaper";
+  static final String TRANSACTION_REAPER_KEY = "transactionReaper";
+  static final String QUERY_REAPER_KEY = "queryReaper";
+  static final String ROUTE_KEY = "route";
+  static final String SQL_COMMENT_KEY = "sqlComment";
+  static final String PER_ACQUIRE_KEY = "perAcquire";
   public static final String ANNOTATION_TRANSACTION_ROLLBACK_TO_SAVEPOINT = "Transaction rollback to savepoint";
   public static final String ANNOTATION_ROLLBACK_TO_SAVEPOINT = "Rollback to savepoint";
   public static final String ANNOTATION_TRANSACTION_ROLLBACK = "Transaction rollback";
@@ -27,47 +49,233 @@ public class OpenTracingExecutorListener implements ProxyMethodExecutionListener
   public static final String ANNOTATION_CONNECTION_CREATED = "Connection created";
   public static final String INITIAL_CONNECTION_SPAN_KEY = "initialConnectionSpan";
   public static final String SPAN_NAME_R2DBC_CONNECTION = "r2dbc:connection";
+  public static final String SPAN_NAME_R2DBC_ACQUIRE = "r2dbc:acquire";
 
   private final Tracer tracer;
-  private final TracingConfiguration tracingConfiguration;
+  private final AtomicReference<Snapshot> current;
+  private final QueryFingerprintCache fingerprintCache;
+  private final QueryMetricsRecorder metricsRecorder;
+  private final ConnectionPoolRecorder connectionPoolRecorder;
+  private final SpanFinisher spanFinisher;
+  private final ErrorFingerprints errorFingerprints;
+  private final RepeatedQueryDetector repeatedQueryDetector;
+  private final OverheadGovernor overheadGovernor;
+  private final AbandonedSpanReaper spanReaper;
+  private final StatementHeavyHitters heavyHitters;
+  private final ExplainPlanCapture explainPlanCapture;
+  private final SqlCommenter sqlCommenter;
 
   public OpenTracingExecutorListener(Tracer tracer, TracingConfiguration tracingConfiguration) {
+    this(tracer, tracingConfiguration, null);
+  }
+
+  public OpenTracingExecutorListener(Tracer tracer, TracingConfiguration tracingConfiguration,
+                                     QueryMetricsRecorder metricsRecorder) {
+    this(tracer, tracingConfiguration, metricsRecorder, null);
+  }
+
+  public OpenTracingExecutorListener(Tracer tracer, TracingConfiguration tracingConfiguration,
+                                     QueryMetricsRecorder metricsRecorder,
+                                     ConnectionPoolRecorder connectionPoolRecorder) {
     this.tracer = tracer;
-    this.tracingConfiguration = tracingConfiguration;
+    this.fingerprintCache = new QueryFingerprintCache(tracingConfiguration.getStatementCacheSize());
+    this.metricsRecorder = metricsRecorder;
+    this.connectionPoolRecorder = connectionPoolRecorder;
+    this.spanFinisher = tracingConfiguration.getSpanFinisher();
+    this.errorFingerprints = tracingConfiguration.isErrorFingerprinting() ?
+        new ErrorFingerprints(tracingConfiguration.getErrorMaxFingerprints(),
+            tracingConfiguration.getErrorFullDetailPerWindow(),
+            tracingConfiguration.getErrorWindowMs()) : null;
+    this.repeatedQueryDetector = tracingConfiguration.getRepeatedQueryThreshold() > 0 ?
+        new RepeatedQueryDetector(tracingConfiguration.getRepeatedQueryThreshold(),
+            tracingConfiguration.getRepeatedQueryMaxTraces()) : null;
+    this.overheadGovernor = tracingConfiguration.getOverheadGovernor();
+    this.spanReaper = tracingConfiguration.getAbandonedSpanReaper();
+    this.heavyHitters = tracingConfiguration.getStatementHeavyHitters();
+    this.explainPlanCapture = tracingConfiguration.getExplainPlanCapture();
+    this.sqlCommenter = tracingConfiguration.getSqlCommenter();
+    this.current = new AtomicReference<>(new Snapshot(
+        TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration(tracingConfiguration).build(), null));
+  }
+
+  /**
+   * Returns a copy of the configuration the listener currently runs with.
+   */
+  public TracingConfiguration getTracingConfiguration() {
+    return TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration(current.get().configuration).build();
+  }
+
+  /**
+   * Applies the update to a copy of the current configuration and swaps it in atomically, callbacks
+   * already running keep the snapshot they started with. Returns a copy of the new configuration.
+   * <p>
+   * Trace enablement, sampling, ignore and metrics-only rules, slow query detection, statement, bind parameter,
+   * result statistics and tail sampling settings take effect immediately. The statement cache size, span finisher,
+   * error fingerprinting, repeated query detection, overhead governor, abandoned span reaper, statement heavy
+   * hitters, plan capture and SQL commenter are fixed when the listener is created.
+   */
+  public synchronized TracingConfiguration updateTracingConfiguration(
+      UnaryOperator<TracingConfiguration.TracingConfigurationBuilder> update) {
+    Snapshot snapshot = current.get();
+    TracingConfiguration configuration = update.apply(
+        TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration(snapshot.configuration)).build();
+    current.set(new Snapshot(configuration, snapshot));
+    return getTracingConfiguration();
+  }
+
+  private TracingConfiguration configuration() {
+    return current.get().configuration;
   }
 
   @Override
   public void beforeCreateOnConnectionFactory(MethodExecutionInfo methodExecutionInfo) {
+    Object parent = ReactorContextTracing.subscribingParent();
     Span connectionSpan = SpanUtils.buildSpan(SPAN_NAME_R2DBC_CONNECTION, methodExecutionInfo,
-        tracer, tracingConfiguration);
+        ReactorContextTracing.spanContextOf(parent), tracer, configuration());
     methodExecutionInfo.getValueStore().put(INITIAL_CONNECTION_SPAN_KEY, connectionSpan);
+    track(methodExecutionInfo.getValueStore(), CONNECTION_REAPER_KEY, connectionSpan,
+        AbandonedSpanReaper.Kind.CONNECTION, null);
+    if (parent != null) {
+      methodExecutionInfo.getValueStore().put(PARENT_SPAN_KEY, parent);
+    }
+    String route = sqlCommenter != null ? ReactorContextTracing.subscribingRoute() : null;
+    if (route != null) {
+      methodExecutionInfo.getValueStore().put(ROUTE_KEY, route);
+    }
+    if (ConnectionPoolRecorder.POOL_PRESENT) {
+      beforeAcquire(methodExecutionInfo, connectionSpan);
+    }
+  }
+
+  private void beforeAcquire(MethodExecutionInfo methodExecutionInfo, Span connectionSpan) {
+    boolean traced = !(connectionSpan instanceof NoopSpan);
+    if (!traced && connectionPoolRecorder == null) {
+      return;
+    }
+    ConnectionPoolSnapshot snapshot = ConnectionPoolSnapshot.of(methodExecutionInfo.getTarget());
+    if (snapshot == null) {
+      return;
+    }
+    methodExecutionInfo.getValueStore().put(CONNECTION_POOL_SNAPSHOT_KEY, snapshot);
+    if (traced) {
+      Span acquireSpan = SpanUtils.buildChildSpan(SPAN_NAME_R2DBC_ACQUIRE, connectionSpan, tracer);
+      TAG_POOL_PENDING_ACQUIRE.set(acquireSpan, snapshot.pendingAcquire);
+      TAG_POOL_IDLE.set(acquireSpan, snapshot.idle);
+      TAG_POOL_ACQUIRED.set(acquireSpan, snapshot.acquired);
+      TAG_POOL_ALLOCATED.set(acquireSpan, snapshot.allocated);
+      TAG_POOL_MAX_ALLOCATED.set(acquireSpan, snapshot.maxAllocated);
+      methodExecutionInfo.getValueStore().put(ACQUIRE_SPAN_KEY, acquireSpan);
+    }
   }
 
   @Override
   public void afterCreateOnConnectionFactory(MethodExecutionInfo methodExecutionInfo) {
     Span connectionSpan = methodExecutionInfo.getValueStore().get(INITIAL_CONNECTION_SPAN_KEY, Span.class);
+    if (ConnectionPoolRecorder.POOL_PRESENT) {
+      afterAcquire(methodExecutionInfo, connectionSpan);
+    }
+    if (!untrack(methodExecutionInfo.getValueStore(), CONNECTION_REAPER_KEY)) {
+      return;
+    }
     Throwable thrown = methodExecutionInfo.getThrown();
     if (thrown != null) {
-      SpanUtils.onError(thrown, connectionSpan);
+      spanFinisher.finish(connectionSpan, errorDetail(connectionSpan, thrown), 0);
       return;
     }
 
     ConnectionInfo connectionInfo = methodExecutionInfo.getConnectionInfo();
     TAG_ANNOTATION.set(connectionSpan, ANNOTATION_CONNECTION_CREATED);
     connectionInfo.getValueStore().put(CONNECTION_SPAN_KEY, connectionSpan);
+    // a pool over the proxy keeps healthy connections open for longer than any maximum age
+    boolean perAcquire = isPerAcquire(methodExecutionInfo.getTarget());
+    track(connectionInfo.getValueStore(), CONNECTION_REAPER_KEY, connectionSpan,
+        AbandonedSpanReaper.Kind.CONNECTION, connectionInfo, perAcquire);
+    if (perAcquire) {
+      connectionInfo.getValueStore().put(PER_ACQUIRE_KEY, Boolean.TRUE);
+    }
+    Object parent = methodExecutionInfo.getValueStore().get(PARENT_SPAN_KEY);
+    if (parent != null) {
+      connectionInfo.getValueStore().put(PARENT_SPAN_KEY, parent);
+    }
+    Object route = methodExecutionInfo.getValueStore().get(ROUTE_KEY);
+    if (route != null) {
+      connectionInfo.getValueStore().put(ROUTE_KEY, route);
+    }
+  }
+
+  /**
+   * Whether every connection created by the connection factory is used once, i.e. the proxy wraps a pool and its
+   * connections are closed when released. Otherwise a pool may wrap the proxy and hand the connection to later
+   * requests.
+   */
+  private static boolean isPerAcquire(Object connectionFactory) {
+    return ConnectionPoolRecorder.POOL_PRESENT && ConnectionPoolSnapshot.isPool(connectionFactory);
+  }
+
+  /**
+   * The parent {@link Span} or {@link SpanContext} from the subscriber context of the statement or
+   * transaction being subscribed, else the one captured when the connection was created, else {@code null}
+   * for the active span.
+   * <p>
+   * A connection which may be reused by later requests remembers the last parent from a subscriber context
+   * instead, and the active span wins over it, as it may belong to a request which already completed.
+   */
+  private Object parent(ConnectionInfo connectionInfo) {
+    Object parent = ReactorContextTracing.subscribingParent();
+    if (connectionInfo == null) {
+      return parent;
+    }
+    ValueStore valueStore = connectionInfo.getValueStore();
+    boolean perAcquire = valueStore.get(PER_ACQUIRE_KEY) != null;
+    if (parent != null) {
+      if (!perAcquire && valueStore.get(PARENT_SPAN_KEY) != parent) {
+        valueStore.put(PARENT_SPAN_KEY, parent);
+      }
+      return parent;
+    }
+    if (!perAcquire && tracer.activeSpan() != null) {
+      return null;
+    }
+    return valueStore.get(PARENT_SPAN_KEY);
+  }
+
+  private void afterAcquire(MethodExecutionInfo methodExecutionInfo, Span connectionSpan) {
+    ConnectionPoolSnapshot snapshot =
+        methodExecutionInfo.getValueStore().get(CONNECTION_POOL_SNAPSHOT_KEY, ConnectionPoolSnapshot.class);
+    Duration executeDuration = methodExecutionInfo.getExecuteDuration();
+    if (snapshot == null || executeDuration == null) {
+      return;
+    }
+    if (connectionPoolRecorder != null) {
+      connectionPoolRecorder.recordAcquire(snapshot.pool, executeDuration.toNanos());
+    }
+    Span acquireSpan = methodExecutionInfo.getValueStore().get(ACQUIRE_SPAN_KEY, Span.class);
+    if (acquireSpan == null) {
+      return;
+    }
+    String acquireOutcome = snapshot.acquireOutcome();
+    double acquireTimeMs = executeDuration.toNanos() / 1_000_000.0;
+    TAG_POOL_ACQUIRE_ESTIMATE.set(acquireSpan, acquireOutcome);
+    TAG_POOL_ACQUIRE_ESTIMATE.set(connectionSpan, acquireOutcome);
+    TAG_POOL_ACQUIRE_TIME_MS.set(connectionSpan, acquireTimeMs);
+    TAG_POOL_PENDING_ACQUIRE.set(connectionSpan, snapshot.pendingAcquire);
+    spanFinisher.finish(acquireSpan, errorDetail(acquireSpan, methodExecutionInfo.getThrown()), 0);
   }
 
   @Override
   public void afterCloseOnConnection(MethodExecutionInfo methodExecutionInfo) {
     ConnectionInfo connectionInfo = methodExecutionInfo.getConnectionInfo();
     String connectionId = connectionInfo.getConnectionId();
+    completeResult(connectionInfo, null);
     Span connectionSpan = connectionInfo.getValueStore().get(CONNECTION_SPAN_KEY, Span.class);
-    if (connectionSpan == null) {
+    completeTailSampling(connectionInfo, connectionSpan);
+    connectionInfo.getValueStore().remove(PARENT_SPAN_KEY);
+    if (connectionSpan == null || !untrack(connectionInfo.getValueStore(), CONNECTION_REAPER_KEY)) {
       return;
     }
 
     TAG_CONNECTION_ID.set(connectionSpan, connectionId);
-    TAG_CONNECTION_CLOSE_THREAD_ID.set(connectionSpan, String.valueOf(methodExecutionInfo.getThreadId()));
+    TAG_CONNECTION_CLOSE_THREAD_ID.set(connectionSpan, ThreadIds.toString(methodExecutionInfo.getThreadId()));
     TAG_CONNECTION_CLOSE_THREAD_NAME.set(connectionSpan, methodExecutionInfo.getThreadName());
     TAG_TRANSACTION_COUNT.set(connectionSpan, connectionInfo.getTransactionCount());
     TAG_COMMIT_COUNT.set(connectionSpan, connectionInfo.getCommitCount());
@@ -75,41 +283,483 @@ public class OpenTracingExecutorListener implements ProxyMethodExecutionListener
 
     Throwable thrown = methodExecutionInfo.getThrown();
     if (thrown != null) {
-      SpanUtils.onError(thrown, connectionSpan);
+      spanFinisher.finish(connectionSpan, errorDetail(connectionSpan, thrown), 0);
     } else {
-      SpanUtils.finishSpan(connectionSpan, methodExecutionInfo, tracingConfiguration);
+      SpanUtils.finishSpan(connectionSpan, methodExecutionInfo, configuration());
     }
   }
 
   @Override
   public void beforeQuery(QueryExecutionInfo queryExecutionInfo) {
-    String queries = queryExecutionInfo.getQueries().stream()
-        .map(QueryInfo::getQuery)
-        .collect(joining(", "));
-    Span querySpan = SpanUtils.buildSpan(SPAN_NAME_R2DBC_QUERY, queries, queryExecutionInfo,
-        tracer, tracingConfiguration);
+    if (overheadGovernor == null) {
+      startQuery(queryExecutionInfo, OverheadGovernor.Tier.FULL);
+      return;
+    }
+    long start = System.nanoTime();
+    startQuery(queryExecutionInfo, overheadGovernor.getTier());
+    long end = System.nanoTime();
+    overheadGovernor.recordCost(end - start, end);
+  }
+
+  private void startQuery(QueryExecutionInfo queryExecutionInfo, OverheadGovernor.Tier tier) {
+    Snapshot snapshot = current.get();
+    TracingConfiguration tracingConfiguration = snapshot.configuration;
+    completeResult(queryExecutionInfo.getConnectionInfo(), null);
+    if (tier == OverheadGovernor.Tier.NOOP) {
+      queryExecutionInfo.getValueStore().put(QUERY_SPAN_KEY, NoopSpan.INSTANCE);
+      return;
+    }
+    boolean traceEnabled = tracingConfiguration.isTraceEnabled() && tier.compareTo(OverheadGovernor.Tier.METRICS_ONLY) < 0;
+    List<QueryInfo> queryInfos = queryExecutionInfo.getQueries();
+    if ((!traceEnabled && metricsRecorder == null && snapshot.slowQueryDetector == null && repeatedQueryDetector == null
+        && heavyHitters == null)
+        || tracingConfiguration.getIgnoreStatementMatcher().matchesAll(queryInfos, fingerprintCache)) {
+      queryExecutionInfo.getValueStore().put(QUERY_SPAN_KEY, NoopSpan.INSTANCE);
+      return;
+    }
+    QueryFingerprint fingerprint = queryInfos.isEmpty() ? null : fingerprintCache.get(queryInfos.get(0).getQuery());
+    if (fingerprint != null) {
+      queryExecutionInfo.getValueStore().put(QUERY_FINGERPRINT_KEY, fingerprint);
+    }
+    // without query metrics, metrics only statements are traced rather than not observed at all
+    if (metricsRecorder != null
+        && tracingConfiguration.getMetricsOnlyStatementMatcher().matchesAll(queryInfos, fingerprintCache)) {
+      queryExecutionInfo.getValueStore().put(QUERY_SPAN_KEY, NoopSpan.INSTANCE);
+      startResultStatistics(tracingConfiguration, queryExecutionInfo, fingerprint);
+      return;
+    }
+    // only resolved before the sampler to count repeated statements, as it may ask the tracer for the active span
+    boolean countRepeated = repeatedQueryDetector != null && fingerprint != null;
+    Object parent = countRepeated ? parent(queryExecutionInfo.getConnectionInfo()) : null;
+    int repeated = countRepeated ? countRepeated(queryExecutionInfo, fingerprint, parent) : 0;
+    if (!traceEnabled || !(isCommented(queryInfos) || tracingConfiguration.getSampler().isSampled(fingerprint))
+        || (tier == OverheadGovernor.Tier.SAMPLED && !overheadGovernor.isSampled())) {
+      queryExecutionInfo.getValueStore().put(QUERY_SPAN_KEY, NoopSpan.INSTANCE);
+      if (metricsRecorder != null || heavyHitters != null) {
+        startResultStatistics(tracingConfiguration, queryExecutionInfo, fingerprint);
+      }
+      return;
+    }
+    if (tier != OverheadGovernor.Tier.FULL) {
+      tracingConfiguration = snapshot.minimal;
+    }
+    if (!countRepeated) {
+      parent = parent(queryExecutionInfo.getConnectionInfo());
+    }
+
+    String statement;
+    BatchStatement batchStatement = null;
+    if (queryInfos.size() == 1) {
+      statement = tracingConfiguration.isNormalizeStatements() ?
+          fingerprint.getFingerprint() : SqlCommenter.strip(queryInfos.get(0).getQuery());
+    } else if (queryInfos.isEmpty()) {
+      statement = null;
+    } else {
+      batchStatement = BatchStatement.of(queryInfos, tracingConfiguration.isNormalizeStatements() ?
+              query -> fingerprintCache.get(query).getFingerprint() : query -> query,
+          tracingConfiguration.getBatchMaxStatements(), tracingConfiguration.getBatchMaxStatementLength());
+      statement = batchStatement.getStatement();
+    }
+    String operationName = tracingConfiguration.isSpanNameFromStatement() && fingerprint != null ?
+        fingerprint.getSpanName() : SPAN_NAME_R2DBC_QUERY;
+    Span querySpan = SpanUtils.buildSpan(operationName, statement, fingerprint, queryExecutionInfo,
+        ReactorContextTracing.spanContextOf(parent), tracer, tracingConfiguration);
+    if (batchStatement != null) {
+      TAG_BATCH_DISTINCT_STATEMENTS.set(querySpan, batchStatement.getDistinctStatements());
+    }
+    if (repeatedQueryDetector != null && repeated > repeatedQueryDetector.getThreshold()) {
+      TAG_REPEATED_QUERY_COUNT.set(querySpan, repeated);
+    }
     queryExecutionInfo.getValueStore().put(QUERY_SPAN_KEY, querySpan);
+    track(queryExecutionInfo.getValueStore(), QUERY_REAPER_KEY, querySpan, AbandonedSpanReaper.Kind.QUERY,
+        queryExecutionInfo.getConnectionInfo());
+    startResultStatistics(tracingConfiguration, queryExecutionInfo, fingerprint);
+    if (overheadGovernor != null) {
+      overheadGovernor.recordSpan();
+    }
+  }
+
+  /**
+   * Whether the statement was commented with the trace context by a sampling commenter, which needs its span.
+   */
+  private boolean isCommented(List<QueryInfo> queryInfos) {
+    return sqlCommenter != null && queryInfos.size() == 1 && sqlCommenter.isTraced(queryInfos.get(0).getQuery());
+  }
+
+  /**
+   * Counts the statement within the parent span, or the current transaction or connection when there is
+   * none, and tags the parent span once the statement ran more often than the threshold.
+   */
+  private int countRepeated(QueryExecutionInfo queryExecutionInfo, QueryFingerprint fingerprint, Object parent) {
+    if (parent == null) {
+      parent = tracer.activeSpan();
+    }
+    SpanContext parentContext = parent == null ? null : ReactorContextTracing.spanContextOf(parent);
+    String parentSpanId = parentContext == null ? null : parentContext.toSpanId();
+    RepeatedQueryDetector.StatementCounts counts;
+    if (parentSpanId != null && !parentSpanId.isEmpty()) {
+      counts = repeatedQueryDetector.traceCounts(parentSpanId, ReactorContextTracing.spanOf(parent));
+    } else {
+      ValueStore connectionValueStore = queryExecutionInfo.getConnectionInfo().getValueStore();
+      counts = connectionValueStore.get(REPEATED_QUERIES_KEY, RepeatedQueryDetector.StatementCounts.class);
+      if (counts == null) {
+        counts = new RepeatedQueryDetector.StatementCounts(connectionSpan(connectionValueStore));
+        connectionValueStore.put(REPEATED_QUERIES_KEY, counts);
+      }
+    }
+    int count = counts.increment(fingerprint.getFingerprint());
+    if (count > repeatedQueryDetector.getThreshold()) {
+      if (count == repeatedQueryDetector.getThreshold() + 1 && metricsRecorder != null) {
+        metricsRecorder.recordRepeated(fingerprint, queryExecutionInfo.getType());
+      }
+      Span scopeSpan = counts.scopeSpan();
+      if (scopeSpan != null) {
+        TAG_REPEATED_STATEMENT.set(scopeSpan, fingerprint.getFingerprint());
+        TAG_REPEATED_STATEMENT_COUNT.set(scopeSpan, count);
+      }
+    }
+    return count;
+  }
+
+  private static void startResultStatistics(TracingConfiguration tracingConfiguration,
+                                            QueryExecutionInfo queryExecutionInfo, QueryFingerprint fingerprint) {
+    if (tracingConfiguration.isResultStatistics()) {
+      queryExecutionInfo.getValueStore().put(RESULT_STATISTICS_KEY,
+          new ResultStatistics(fingerprint, queryExecutionInfo.getType(), System.nanoTime()));
+    }
   }
 
   @Override
   public void afterQuery(QueryExecutionInfo queryExecutionInfo) {
+    if (overheadGovernor == null) {
+      endQuery(queryExecutionInfo);
+      return;
+    }
+    long start = System.nanoTime();
+    endQuery(queryExecutionInfo);
+    long end = System.nanoTime();
+    Duration executeDuration = queryExecutionInfo.getExecuteDuration();
+    if (executeDuration != null) {
+      overheadGovernor.recordExecution(executeDuration.toNanos());
+    }
+    overheadGovernor.recordCost(end - start, end);
+  }
+
+  private void endQuery(QueryExecutionInfo queryExecutionInfo) {
+    Snapshot snapshot = current.get();
+    recordMetrics(queryExecutionInfo);
+    recordTransactionStatistics(queryExecutionInfo);
     Span querySpan = queryExecutionInfo.getValueStore().get(QUERY_SPAN_KEY, Span.class);
+    if (!untrack(queryExecutionInfo.getValueStore(), QUERY_REAPER_KEY)) {
+      querySpan = null;
+    }
+    boolean slow = observeLatency(snapshot.slowQueryDetector, queryExecutionInfo, querySpan);
+    if (sqlCommenter != null) {
+      markSlow(snapshot.configuration, queryExecutionInfo, slow);
+    }
+    ResultStatistics resultStatistics = queryExecutionInfo.getValueStore().get(RESULT_STATISTICS_KEY, ResultStatistics.class);
+    Throwable thrown = queryExecutionInfo.getThrowable();
+    if (querySpan == null || querySpan instanceof NoopSpan) {
+      if (resultStatistics != null && thrown == null) {
+        deferResult(queryExecutionInfo.getConnectionInfo(), resultStatistics, null, false);
+      }
+      return;
+    }
     TAG_QUERY_SUCCESS.set(querySpan, queryExecutionInfo.isSuccess());
 
-    Throwable thrown = queryExecutionInfo.getThrowable();
-    if (thrown != null) {
-      SpanUtils.onError(thrown, querySpan);
-    } else {
+    if (thrown == null) {
       TAG_QUERY_MAPPED_RESULT_COUNT.set(querySpan, queryExecutionInfo.getCurrentResultCount());
-      SpanUtils.finishSpan(querySpan, queryExecutionInfo, tracingConfiguration);
+      slow |= SpanUtils.tagSpan(querySpan, queryExecutionInfo, snapshot.configuration);
+    }
+    if (slow && thrown == null && explainPlanCapture != null) {
+      capturePlan(queryExecutionInfo, querySpan);
+    }
+    boolean keep = slow || thrown != null || isKeptByTailSamplingRule(snapshot.configuration, queryExecutionInfo);
+    if (resultStatistics != null && thrown == null) {
+      deferResult(queryExecutionInfo.getConnectionInfo(), resultStatistics, querySpan, keep);
+    } else {
+      finishQuerySpan(queryExecutionInfo.getConnectionInfo(), querySpan, keep, thrown);
+    }
+  }
+
+  /**
+   * Lets the commenter comment a statement once it was slow, whether its query was sampled or not.
+   */
+  private void markSlow(TracingConfiguration tracingConfiguration, QueryExecutionInfo queryExecutionInfo,
+                        boolean slow) {
+    if (!slow && tracingConfiguration.getSlowQueryMode() == SlowQueryMode.FIXED
+        && tracingConfiguration.getSlowQueryThresholdMs() > 0 && queryExecutionInfo.getExecuteDuration() != null) {
+      slow = queryExecutionInfo.getExecuteDuration().toMillis() > tracingConfiguration.getSlowQueryThresholdMs();
+    }
+    if (slow && queryExecutionInfo.isSuccess()) {
+      sqlCommenter.markSlow(queryExecutionInfo.getValueStore().get(QUERY_FINGERPRINT_KEY, QueryFingerprint.class));
+    }
+  }
+
+  /**
+   * Tags the plan of a slow statement, or only its id while it is captured in the background.
+   */
+  private void capturePlan(QueryExecutionInfo queryExecutionInfo, Span querySpan) {
+    QueryFingerprint fingerprint = queryExecutionInfo.getValueStore().get(QUERY_FINGERPRINT_KEY, QueryFingerprint.class);
+    if (fingerprint == null || queryExecutionInfo.getQueries().size() != 1) {
+      return;
+    }
+    ExplainPlanCapture.Plan plan = explainPlanCapture.capture(fingerprint, queryExecutionInfo.getQueries().get(0));
+    if (plan != null) {
+      TAG_DB_PLAN_ID.set(querySpan, plan.getId());
+      if (plan.getPlan() != null) {
+        TAG_DB_PLAN.set(querySpan, plan.getPlan());
+      }
+    }
+  }
+
+  @Override
+  public void eachQueryResult(QueryExecutionInfo queryExecutionInfo) {
+    if (queryExecutionInfo.getThrowable() != null) {
+      return;
+    }
+    ResultStatistics resultStatistics = queryExecutionInfo.getValueStore().get(RESULT_STATISTICS_KEY, ResultStatistics.class);
+    if (resultStatistics != null) {
+      resultStatistics.onRow(System.nanoTime(), RowMappingTimer.takeElapsedNanos());
     }
+    TransactionStatistics transactionStatistics = queryExecutionInfo.getConnectionInfo().getValueStore()
+        .get(TRANSACTION_STATISTICS_KEY, TransactionStatistics.class);
+    if (transactionStatistics != null) {
+      transactionStatistics.rows++;
+    }
+  }
+
+  @Override
+  public void afterMapOnResult(MethodExecutionInfo methodExecutionInfo) {
+    completeResult(methodExecutionInfo.getConnectionInfo(), methodExecutionInfo.getThrown());
+  }
+
+  @Override
+  public void afterGetRowsUpdatedOnResult(MethodExecutionInfo methodExecutionInfo) {
+    completeResult(methodExecutionInfo.getConnectionInfo(), methodExecutionInfo.getThrown());
+  }
+
+  private void deferResult(ConnectionInfo connectionInfo, ResultStatistics resultStatistics, Span querySpan,
+                           boolean keep) {
+    resultStatistics.executedNanos = System.nanoTime();
+    resultStatistics.span = querySpan;
+    resultStatistics.keep = keep;
+    connectionInfo.getValueStore().put(PENDING_RESULT_STATISTICS_KEY, resultStatistics);
+  }
+
+  /**
+   * Reports the statistics of the last executed query of the connection once its result was
+   * consumed, or at the latest when the connection moves on to the next query, transaction or close.
+   */
+  private void completeResult(ConnectionInfo connectionInfo, Throwable thrown) {
+    if (connectionInfo == null) {
+      return;
+    }
+    ResultStatistics resultStatistics =
+        (ResultStatistics) connectionInfo.getValueStore().remove(PENDING_RESULT_STATISTICS_KEY);
+    if (resultStatistics == null) {
+      return;
+    }
+    long fetchNanos = System.nanoTime() - resultStatistics.executedNanos;
+    if (metricsRecorder != null && resultStatistics.fingerprint != null) {
+      metricsRecorder.recordResult(resultStatistics.fingerprint, resultStatistics.type, fetchNanos,
+          resultStatistics.rows);
+    }
+    if (heavyHitters != null && resultStatistics.fingerprint != null) {
+      heavyHitters.recordRows(resultStatistics.fingerprint, resultStatistics.rows);
+    }
+    Span querySpan = resultStatistics.span;
+    if (querySpan == null) {
+      return;
+    }
+    TAG_ROW_COUNT.set(querySpan, resultStatistics.rows);
+    TAG_FETCH_TIME_MS.set(querySpan, toMillis(fetchNanos));
+    if (resultStatistics.rows > 0) {
+      TAG_TIME_TO_FIRST_ROW_MS.set(querySpan, toMillis(resultStatistics.firstRowNanos - resultStatistics.startNanos));
+      if (fetchNanos > 0) {
+        TAG_ROWS_PER_SECOND.set(querySpan, resultStatistics.rows * 1_000_000_000.0 / fetchNanos);
+      }
+    }
+    if (resultStatistics.mappingNanos > 0) {
+      TAG_ROW_MAPPING_TIME_MS.set(querySpan, toMillis(resultStatistics.mappingNanos));
+    }
+    finishQuerySpan(connectionInfo, querySpan, resultStatistics.keep || thrown != null, thrown);
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  private static boolean isKeptByTailSamplingRule(TracingConfiguration tracingConfiguration,
+                                                  QueryExecutionInfo queryExecutionInfo) {
+    if (!tracingConfiguration.isTailSampling()) {
+      return false;
+    }
+    QueryFingerprint fingerprint = queryExecutionInfo.getValueStore().get(QUERY_FINGERPRINT_KEY, QueryFingerprint.class);
+    return tracingConfiguration.getTailSamplingRule().keep(queryExecutionInfo, fingerprint);
+  }
+
+  private void finishQuerySpan(ConnectionInfo connectionInfo, Span querySpan, boolean keep, Throwable thrown) {
+    thrown = errorDetail(querySpan, thrown);
+    TracingConfiguration tracingConfiguration = configuration();
+    if (!tracingConfiguration.isTailSampling()) {
+      spanFinisher.finish(querySpan, thrown, 0);
+      return;
+    }
+    tailSamplingBuffer(connectionInfo.getValueStore(), tracingConfiguration).finish(querySpan, keep, thrown);
+  }
+
+  private TailSamplingBuffer tailSamplingBuffer(ValueStore connectionValueStore,
+                                                TracingConfiguration tracingConfiguration) {
+    TailSamplingBuffer buffer = connectionValueStore.get(TAIL_SAMPLING_BUFFER_KEY, TailSamplingBuffer.class);
+    if (buffer == null) {
+      buffer = new TailSamplingBuffer(tracingConfiguration.getTailSamplingMaxSpans(),
+          tracingConfiguration.getTailSamplingMaxAgeMs(), spanFinisher);
+      connectionValueStore.put(TAIL_SAMPLING_BUFFER_KEY, buffer);
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns the error to log in full on the span, or {@code null} when the span was only tagged with the
+   * fingerprint of an error which failed too often in the current window.
+   */
+  private Throwable errorDetail(Span span, Throwable thrown) {
+    if (thrown == null || errorFingerprints == null || span instanceof NoopSpan) {
+      return thrown;
+    }
+    return errorFingerprints.tag(span, thrown) ? thrown : null;
+  }
+
+  /**
+   * Registers the span with the reaper, if any, so that it is finished as abandoned when nobody else does.
+   */
+  private void track(ValueStore valueStore, String key, Span span, AbandonedSpanReaper.Kind kind, Object owner) {
+    track(valueStore, key, span, kind, owner, true);
+  }
+
+  /**
+   * @param expires whether the span is finished as abandoned at the maximum age of the reaper, else only once
+   *                its owner was collected
+   */
+  private void track(ValueStore valueStore, String key, Span span, AbandonedSpanReaper.Kind kind, Object owner,
+                     boolean expires) {
+    if (spanReaper == null) {
+      return;
+    }
+    if (span instanceof NoopSpan) {
+      valueStore.remove(key);
+    } else {
+      valueStore.put(key, spanReaper.register(span, kind, owner, expires, spanFinisher));
+    }
+  }
+
+  /**
+   * The span of the connection, or {@code null} when there is none or the reaper finished it as abandoned.
+   */
+  private Span connectionSpan(ValueStore connectionValueStore) {
+    Span connectionSpan = connectionValueStore.get(CONNECTION_SPAN_KEY, Span.class);
+    if (spanReaper != null && connectionSpan != null) {
+      AbandonedSpanReaper.Entry entry =
+          connectionValueStore.get(CONNECTION_REAPER_KEY, AbandonedSpanReaper.Entry.class);
+      if (entry != null && entry.isReaped()) {
+        return null;
+      }
+    }
+    return connectionSpan;
+  }
+
+  /**
+   * Takes the span back from the reaper; returns false when it was already finished as abandoned.
+   */
+  private boolean untrack(ValueStore valueStore, String key) {
+    return spanReaper == null
+        || spanReaper.complete((AbandonedSpanReaper.Entry) valueStore.remove(key));
+  }
+
+  private void completeTailSampling(ConnectionInfo connectionInfo, Span span) {
+    TailSamplingBuffer buffer = connectionInfo.getValueStore().get(TAIL_SAMPLING_BUFFER_KEY, TailSamplingBuffer.class);
+    if (buffer == null) {
+      return;
+    }
+    int dropped = buffer.complete();
+    if (dropped > 0 && span != null) {
+      TAG_DROPPED_QUERY_SPANS.set(span, dropped);
+    }
+  }
+
+  private void recordTransactionStatistics(QueryExecutionInfo queryExecutionInfo) {
+    TransactionStatistics transactionStatistics = queryExecutionInfo.getConnectionInfo().getValueStore()
+        .get(TRANSACTION_STATISTICS_KEY, TransactionStatistics.class);
+    Duration executeDuration = queryExecutionInfo.getExecuteDuration();
+    if (transactionStatistics != null) {
+      transactionStatistics.onQuery(queryExecutionInfo.getType(), queryExecutionInfo.isSuccess(),
+          executeDuration == null ? 0 : executeDuration.toNanos(),
+          queryExecutionInfo.getValueStore().get(QUERY_FINGERPRINT_KEY, QueryFingerprint.class));
+    }
+  }
+
+  private void recordMetrics(QueryExecutionInfo queryExecutionInfo) {
+    if (metricsRecorder == null && heavyHitters == null) {
+      return;
+    }
+    QueryFingerprint fingerprint = queryExecutionInfo.getValueStore().get(QUERY_FINGERPRINT_KEY, QueryFingerprint.class);
+    Duration executeDuration = queryExecutionInfo.getExecuteDuration();
+    if (fingerprint == null || executeDuration == null) {
+      return;
+    }
+    if (metricsRecorder != null) {
+      metricsRecorder.record(fingerprint, queryExecutionInfo.getType(), queryExecutionInfo.isSuccess(),
+          executeDuration.toNanos());
+    }
+    if (heavyHitters != null) {
+      heavyHitters.record(fingerprint, executeDuration.toNanos());
+    }
+  }
+
+  private static boolean observeLatency(AdaptiveSlowQueryDetector slowQueryDetector,
+                                        QueryExecutionInfo queryExecutionInfo, Span querySpan) {
+    if (slowQueryDetector == null || !queryExecutionInfo.isSuccess()) {
+      return false;
+    }
+    QueryFingerprint fingerprint = queryExecutionInfo.getValueStore().get(QUERY_FINGERPRINT_KEY, QueryFingerprint.class);
+    Duration executeDuration = queryExecutionInfo.getExecuteDuration();
+    if (fingerprint == null || executeDuration == null) {
+      return false;
+    }
+    long durationNanos = executeDuration.toNanos();
+    AdaptiveSlowQueryDetector.Baseline baseline = slowQueryDetector.observe(fingerprint, durationNanos);
+    if (baseline != null && querySpan != null && !(querySpan instanceof NoopSpan)) {
+      TAG_LATENCY_PERCENTILE.set(querySpan, baseline.percentileOf(durationNanos));
+      if (baseline.isSlow(durationNanos)) {
+        TAG_SLOW.set(querySpan, true);
+        TAG_SLOW_THRESHOLD_MS.set(querySpan, baseline.getThresholdNanos() / 1_000_000.0);
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
   public void beforeBeginTransactionOnConnection(MethodExecutionInfo methodExecutionInfo) {
     Span transactionSpan = SpanUtils.buildSpan(SPAN_NAME_R2DBC_TRANSACTION, methodExecutionInfo,
-        tracer, tracingConfiguration);
-    methodExecutionInfo.getConnectionInfo().getValueStore().put(TRANSACTION_SPAN_KEY, transactionSpan);
+        ReactorContextTracing.spanContextOf(parent(methodExecutionInfo.getConnectionInfo())), tracer,
+        configuration());
+    ValueStore connectionValueStore = methodExecutionInfo.getConnectionInfo().getValueStore();
+    connectionValueStore.put(TRANSACTION_SPAN_KEY, transactionSpan);
+    if (configuration().isTailSampling()) {
+      tailSamplingBuffer(connectionValueStore, configuration()).beginTransaction();
+    }
+    track(connectionValueStore, TRANSACTION_REAPER_KEY, transactionSpan, AbandonedSpanReaper.Kind.TRANSACTION,
+        methodExecutionInfo.getConnectionInfo());
+    if (transactionSpan instanceof NoopSpan) {
+      connectionValueStore.remove(TRANSACTION_STATISTICS_KEY);
+    } else {
+      connectionValueStore.put(TRANSACTION_STATISTICS_KEY, new TransactionStatistics(System.nanoTime()));
+    }
+    if (repeatedQueryDetector != null) {
+      connectionValueStore.put(REPEATED_QUERIES_KEY, new RepeatedQueryDetector.StatementCounts(transactionSpan));
+    }
   }
 
   @Override
@@ -121,17 +771,29 @@ public class OpenTracingExecutorListener implements ProxyMethodExecutionListener
                                             String transactionAnnotation,
                                             String connectionAnnotation) {
     ConnectionInfo connectionInfo = methodExecutionInfo.getConnectionInfo();
+    completeResult(connectionInfo, null);
     Span transactionSpan = connectionInfo.getValueStore().get(TRANSACTION_SPAN_KEY, Span.class);
-    if (transactionSpan != null) {
+    completeTailSampling(connectionInfo, transactionSpan);
+    connectionInfo.getValueStore().remove(REPEATED_QUERIES_KEY);
+    if (transactionSpan != null && untrack(connectionInfo.getValueStore(), TRANSACTION_REAPER_KEY)) {
       TAG_ANNOTATION.set(transactionSpan, transactionAnnotation);
-      SpanUtils.finishSpan(transactionSpan, methodExecutionInfo, tracingConfiguration);
+      tagTransactionStatistics(connectionInfo, transactionSpan);
+      SpanUtils.finishSpan(transactionSpan, methodExecutionInfo, configuration());
     }
-    Span connectionSpan = connectionInfo.getValueStore().get(CONNECTION_SPAN_KEY, Span.class);
+    Span connectionSpan = connectionSpan(connectionInfo.getValueStore());
     if (connectionSpan != null) {
       TAG_ANNOTATION.set(connectionSpan, connectionAnnotation);
     }
   }
 
+  private static void tagTransactionStatistics(ConnectionInfo connectionInfo, Span transactionSpan) {
+    TransactionStatistics transactionStatistics =
+        (TransactionStatistics) connectionInfo.getValueStore().remove(TRANSACTION_STATISTICS_KEY);
+    if (transactionStatistics != null) {
+      transactionStatistics.tag(transactionSpan, System.nanoTime());
+    }
+  }
+
   @Override
   public void afterRollbackTransactionOnConnection(MethodExecutionInfo methodExecutionInfo) {
     afterTransactionOnConnection(methodExecutionInfo, ANNOTATION_ROLLBACK, ANNOTATION_TRANSACTION_ROLLBACK);
@@ -143,13 +805,50 @@ public class OpenTracingExecutorListener implements ProxyMethodExecutionListener
     String savepoint = (String) methodExecutionInfo.getMethodArgs()[0];
 
     Span transactionSpan = connectionInfo.getValueStore().get(TRANSACTION_SPAN_KEY, Span.class);
-    if (transactionSpan != null) {
+    if (transactionSpan != null && untrack(connectionInfo.getValueStore(), TRANSACTION_REAPER_KEY)) {
       TAG_ANNOTATION.set(transactionSpan, ANNOTATION_ROLLBACK_TO_SAVEPOINT);
       TAG_TRANSACTION_SAVEPOINT.set(transactionSpan, savepoint);
-      SpanUtils.finishSpan(transactionSpan, methodExecutionInfo, tracingConfiguration);
+      tagTransactionStatistics(connectionInfo, transactionSpan);
+      SpanUtils.finishSpan(transactionSpan, methodExecutionInfo, configuration());
     }
 
-    Span connectionSpan = connectionInfo.getValueStore().get(CONNECTION_SPAN_KEY, Span.class);
-    TAG_ANNOTATION.set(connectionSpan, ANNOTATION_TRANSACTION_ROLLBACK_TO_SAVEPOINT);
+    Span connectionSpan = connectionSpan(connectionInfo.getValueStore());
+    if (connectionSpan != null) {
+      TAG_ANNOTATION.set(connectionSpan, ANNOTATION_TRANSACTION_ROLLBACK_TO_SAVEPOINT);
+    }
+  }
+
+  /**
+   * Configuration of the listener together with the state compiled from it, replaced as a whole on updates.
+   */
+  private static final class Snapshot {
+
+    final TracingConfiguration configuration;
+    final TracingConfiguration minimal;
+    final AdaptiveSlowQueryDetector slowQueryDetector;
+
+    Snapshot(TracingConfiguration configuration, Snapshot previous) {
+      configuration.getIgnoreStatementMatcher();
+      configuration.getMetricsOnlyStatementMatcher();
+      configuration.getBindParameterEncoder();
+      this.configuration = configuration;
+      this.minimal = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration(configuration)
+          .withNormalizeStatements(true)
+          .withCaptureBindParameters(false)
+          .withResultStatistics(false)
+          .build();
+      if (configuration.getSlowQueryMode() != SlowQueryMode.ADAPTIVE) {
+        this.slowQueryDetector = null;
+      } else if (previous != null && previous.slowQueryDetector != null
+          && previous.slowQueryDetector.hasSettings(configuration.getSlowQueryPercentile(),
+          configuration.getSlowQueryFactor(), configuration.getSlowQueryMinSamples(),
+          configuration.getSlowQueryWindowMs())) {
+        this.slowQueryDetector = previous.slowQueryDetector;
+      } else {
+        this.slowQueryDetector = new AdaptiveSlowQueryDetector(configuration.getSlowQueryPercentile(),
+            configuration.getSlowQueryFactor(), configuration.getSlowQueryMinSamples(),
+            configuration.getSlowQueryWindowMs());
+      }
+    }
   }
-}
\ No newline at end of file
+}
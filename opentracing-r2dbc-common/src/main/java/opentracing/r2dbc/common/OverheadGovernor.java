@@ -0,0 +1,143 @@
+package opentracing.r2dbc.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the cost of the query callbacks within a share of the query execution time. Once per window it
+ * compares the measured cost, and optionally the rate of started query spans, against the budget and steps
+ * down one {@link Tier} when it is exceeded. It steps back up one tier after {@link #RECOVERY_WINDOWS}
+ * consecutive windows below half of the budget, so that a borderline load does not flip tiers every window.
+ */
+public class OverheadGovernor {
+
+  public static final double DEFAULT_BUDGET = 0.05;
+  public static final long DEFAULT_WINDOW_MS = 1_000;
+  public static final int DEFAULT_SAMPLE_EVERY = 10;
+  static final int RECOVERY_WINDOWS = 3;
+  static final double RECOVERY_FACTOR = 0.5;
+
+  /**
+   * What the listener does for a query, from the most to the least expensive.
+   */
+  public enum Tier {
+    /** Spans with all configured tags. */
+    FULL,
+    /** Spans without bind parameters and result statistics, statements are normalized. */
+    MINIMAL,
+    /** Like {@link #MINIMAL}, but only every n-th sampled query gets a span. */
+    SAMPLED,
+    /** No query spans, metrics are still recorded. */
+    METRICS_ONLY,
+    /** Queries are not looked at. */
+    NOOP
+  }
+
+  private static final Tier[] TIERS = Tier.values();
+
+  private final double budget;
+  private final long maxSpansPerSecond;
+  private final long windowNanos;
+  private final int sampleEvery;
+  private final LongAdder costNanos = new LongAdder();
+  private final LongAdder executeNanos = new LongAdder();
+  private final LongAdder spans = new LongAdder();
+  private final AtomicLong sampleCounter = new AtomicLong();
+  private volatile Tier tier = Tier.FULL;
+  private volatile double overhead;
+  private volatile double spansPerSecond;
+  private volatile long windowStart = System.nanoTime();
+  private int calmWindows;
+
+  public OverheadGovernor() {
+    this(DEFAULT_BUDGET, 0, DEFAULT_WINDOW_MS, DEFAULT_SAMPLE_EVERY);
+  }
+
+  /**
+   * @param budget            allowed callback cost as a share of the query execution time
+   * @param maxSpansPerSecond allowed rate of started query spans, 0 for no limit
+   * @param windowMs          length of a measurement window
+   * @param sampleEvery       share of the sampled queries traced in the {@link Tier#SAMPLED} tier
+   */
+  public OverheadGovernor(double budget, long maxSpansPerSecond, long windowMs, int sampleEvery) {
+    this.budget = budget;
+    this.maxSpansPerSecond = maxSpansPerSecond;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    this.sampleEvery = Math.max(1, sampleEvery);
+  }
+
+  public Tier getTier() {
+    return tier;
+  }
+
+  /**
+   * Callback cost as a share of the query execution time in the last window.
+   */
+  public double getOverhead() {
+    return overhead;
+  }
+
+  /**
+   * Rate of started query spans in the last window.
+   */
+  public double getSpansPerSecond() {
+    return spansPerSecond;
+  }
+
+  public double getBudget() {
+    return budget;
+  }
+
+  boolean isSampled() {
+    return sampleCounter.incrementAndGet() % sampleEvery == 0;
+  }
+
+  void recordExecution(long nanos) {
+    executeNanos.add(nanos);
+  }
+
+  void recordSpan() {
+    spans.increment();
+  }
+
+  /**
+   * Records the cost of one callback which ended at {@code now} and closes the window when it is over.
+   */
+  void recordCost(long nanos, long now) {
+    costNanos.add(nanos);
+    if (now - windowStart >= windowNanos) {
+      closeWindow(now);
+    }
+  }
+
+  private synchronized void closeWindow(long now) {
+    long elapsedNanos = now - windowStart;
+    if (elapsedNanos < windowNanos || (executeNanos.sum() == 0 && costNanos.sum() > 0)) {
+      // the window is extended until a query completes to weigh the cost against
+      return;
+    }
+    windowStart = now;
+    long execute = executeNanos.sumThenReset();
+    long cost = costNanos.sumThenReset();
+    overhead = execute > 0 ? (double) cost / execute : 0;
+    spansPerSecond = elapsedNanos > 0 ? spans.sumThenReset() * 1e9 / elapsedNanos : 0;
+
+    boolean spanRateExceeded = maxSpansPerSecond > 0 && spansPerSecond > maxSpansPerSecond;
+    int current = tier.ordinal();
+    if (overhead > budget || spanRateExceeded) {
+      calmWindows = 0;
+      if (current < TIERS.length - 1) {
+        tier = TIERS[current + 1];
+      }
+    } else if (overhead < budget * RECOVERY_FACTOR
+        && (maxSpansPerSecond <= 0 || spansPerSecond < maxSpansPerSecond * RECOVERY_FACTOR)) {
+      if (++calmWindows >= RECOVERY_WINDOWS && current > 0) {
+        calmWindows = 0;
+        tier = TIERS[current - 1];
+      }
+    } else {
+      calmWindows = 0;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package opentracing.r2dbc.common;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rate limits sampled queries per statement fingerprint, so that rare statements are still traced
+ * while hot ones are capped. Once {@code maxStatements} buckets exist, further statements share one
+ * overflow bucket instead of growing the map.
+ */
+public class PerStatementRateLimitingQuerySampler implements QuerySampler {
+
+  static final int DEFAULT_MAX_STATEMENTS = 1024;
+
+  private final double maxQueriesPerSecond;
+  private final int maxStatements;
+  private final ConcurrentHashMap<QueryFingerprint, TokenBucket> tokenBuckets;
+  private final TokenBucket overflowBucket;
+
+  public PerStatementRateLimitingQuerySampler(double maxQueriesPerSecond) {
+    this(maxQueriesPerSecond, DEFAULT_MAX_STATEMENTS);
+  }
+
+  public PerStatementRateLimitingQuerySampler(double maxQueriesPerSecond, int maxStatements) {
+    this.maxQueriesPerSecond = maxQueriesPerSecond;
+    this.maxStatements = maxStatements > 0 ? maxStatements : DEFAULT_MAX_STATEMENTS;
+    this.tokenBuckets = new ConcurrentHashMap<>();
+    this.overflowBucket = newBucket();
+  }
+
+  public double getMaxQueriesPerSecond() {
+    return maxQueriesPerSecond;
+  }
+
+  @Override
+  public boolean isSampled(QueryFingerprint fingerprint) {
+    if (fingerprint == null) {
+      return overflowBucket.tryAcquire();
+    }
+    TokenBucket tokenBucket = tokenBuckets.get(fingerprint);
+    if (tokenBucket == null) {
+      tokenBucket = tokenBuckets.size() < maxStatements ?
+          tokenBuckets.computeIfAbsent(fingerprint, key -> newBucket()) : overflowBucket;
+    }
+    return tokenBucket.tryAcquire();
+  }
+
+  private TokenBucket newBucket() {
+    return new TokenBucket(maxQueriesPerSecond, Math.max(1, maxQueriesPerSecond));
+  }
+}
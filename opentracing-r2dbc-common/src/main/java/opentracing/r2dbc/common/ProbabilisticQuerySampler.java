@@ -0,0 +1,24 @@
+package opentracing.r2dbc.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public class ProbabilisticQuerySampler implements QuerySampler {
+
+  private final double samplingRate;
+
+  public ProbabilisticQuerySampler(double samplingRate) {
+    if (samplingRate < 0 || samplingRate > 1) {
+      throw new IllegalArgumentException("samplingRate must be between 0.0 and 1.0: " + samplingRate);
+    }
+    this.samplingRate = samplingRate;
+  }
+
+  public double getSamplingRate() {
+    return samplingRate;
+  }
+
+  @Override
+  public boolean isSampled(QueryFingerprint fingerprint) {
+    return samplingRate >= 1 || ThreadLocalRandom.current().nextDouble() < samplingRate;
+  }
+}
@@ -0,0 +1,61 @@
+package opentracing.r2dbc.common;
+
+import java.util.Objects;
+
+public final class QueryFingerprint {
+
+  private final String fingerprint;
+  private final String operation;
+  private final String table;
+  private final String operationName;
+  private final String spanName;
+
+  QueryFingerprint(String fingerprint, String operation, String table) {
+    this.fingerprint = fingerprint;
+    this.operation = operation;
+    this.table = table;
+    this.operationName = table == null ? operation : operation + " " + table;
+    this.spanName = OpenTracingExecutorListener.SPAN_NAME_R2DBC_QUERY + " " + operationName;
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  public String getTable() {
+    return table;
+  }
+
+  public String getOperationName() {
+    return operationName;
+  }
+
+  public String getSpanName() {
+    return spanName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return fingerprint.equals(((QueryFingerprint) o).fingerprint);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(fingerprint);
+  }
+
+  @Override
+  public String toString() {
+    return fingerprint;
+  }
+}
@@ -0,0 +1,86 @@
+package opentracing.r2dbc.common;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded cache of {@link QueryFingerprint}s keyed by the raw query string, without a trailing trace comment.
+ * Lookups are lock free; once the cache is full a CLOCK sweep evicts entries which were not read since the
+ * previous sweep, which approximates LRU without maintaining an access order list on every hit.
+ */
+public class QueryFingerprintCache {
+
+  static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+  private final ConcurrentHashMap<String, Entry> entries;
+  private final int maximumSize;
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  public QueryFingerprintCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  public QueryFingerprintCache(int maximumSize) {
+    this.maximumSize = maximumSize > 0 ? maximumSize : DEFAULT_MAXIMUM_SIZE;
+    this.entries = new ConcurrentHashMap<>(Math.min(this.maximumSize, DEFAULT_MAXIMUM_SIZE));
+  }
+
+  public QueryFingerprint get(String query) {
+    if (query == null) {
+      query = "";
+    }
+    query = SqlCommenter.strip(query);
+    Entry entry = entries.get(query);
+    if (entry != null) {
+      if (!entry.referenced) {
+        entry.referenced = true;
+      }
+      return entry.fingerprint;
+    }
+    QueryFingerprint fingerprint = QueryFingerprinter.fingerprint(query);
+    if (entries.size() >= maximumSize) {
+      evict();
+    }
+    Entry existing = entries.putIfAbsent(query, new Entry(fingerprint));
+    return existing != null ? existing.fingerprint : fingerprint;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private void evict() {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      // free an eighth of the cache so that the sweep is amortized over many misses
+      int target = maximumSize - Math.max(1, maximumSize >> 3);
+      for (int pass = 0; pass < 2 && entries.size() > target; pass++) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && entries.size() > target) {
+          Entry entry = iterator.next().getValue();
+          if (entry.referenced) {
+            entry.referenced = false;
+          } else {
+            iterator.remove();
+          }
+        }
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  private static final class Entry {
+
+    private final QueryFingerprint fingerprint;
+    private volatile boolean referenced;
+
+    private Entry(QueryFingerprint fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+  }
+}
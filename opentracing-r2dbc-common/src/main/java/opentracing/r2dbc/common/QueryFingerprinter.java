@@ -0,0 +1,220 @@
+package opentracing.r2dbc.common;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces a SQL statement to its shape: comments are removed, whitespace is collapsed and string
+ * and numeric literals are replaced by {@code ?}, so that statements which only differ by their
+ * literals share one fingerprint.
+ */
+public final class QueryFingerprinter {
+
+  static final String OTHER_OPERATION = "OTHER";
+
+  private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN \\(\\?(?: ?, ?\\?)+\\)");
+
+  private static final Set<String> OPERATIONS = new HashSet<>(Arrays.asList(
+      "SELECT", "INSERT", "UPDATE", "DELETE", "MERGE", "UPSERT", "REPLACE", "WITH", "VALUES", "CALL",
+      "EXEC", "EXECUTE", "CREATE", "ALTER", "DROP", "TRUNCATE", "BEGIN", "START", "COMMIT", "ROLLBACK",
+      "SAVEPOINT", "RELEASE", "SET", "SHOW", "EXPLAIN", "LOCK", "GRANT", "REVOKE", "COPY"));
+
+  private QueryFingerprinter() {
+  }
+
+  public static QueryFingerprint fingerprint(String query) {
+    String fingerprint = normalize(query);
+    String[] tokens = fingerprint.split(" ");
+    String operation = operation(tokens);
+    return new QueryFingerprint(fingerprint, operation, table(operation, tokens));
+  }
+
+  static String normalize(String query) {
+    if (query == null) {
+      return "";
+    }
+    int length = query.length();
+    StringBuilder sb = new StringBuilder(length);
+    boolean pendingSpace = false;
+    int i = 0;
+    while (i < length) {
+      char c = query.charAt(i);
+      if (Character.isWhitespace(c)) {
+        pendingSpace = sb.length() > 0;
+        i++;
+        continue;
+      }
+      if (c == '-' && i + 1 < length && query.charAt(i + 1) == '-') {
+        i = skipLineComment(query, i);
+        pendingSpace = sb.length() > 0;
+        continue;
+      }
+      if (c == '/' && i + 1 < length && query.charAt(i + 1) == '*') {
+        i = skipBlockComment(query, i);
+        pendingSpace = sb.length() > 0;
+        continue;
+      }
+      if (pendingSpace) {
+        sb.append(' ');
+        pendingSpace = false;
+      }
+      if (c == '\'') {
+        // backslashes only escape in E'...' literals, standard SQL strings end at the first lone quote
+        boolean escapes = isEscapePrefix(sb);
+        if (escapes) {
+          sb.setLength(sb.length() - 1);
+        }
+        i = skipStringLiteral(query, i, escapes);
+        sb.append('?');
+      } else if (c == '"' || c == '`') {
+        int end = skipQuoted(query, i, c);
+        sb.append(query, i, end);
+        i = end;
+      } else if (isDigit(c) && !isIdentifierPart(previous(sb))) {
+        i = skipNumber(query, i);
+        sb.append('?');
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+    String normalized = sb.toString();
+    if (normalized.indexOf('?') >= 0) {
+      normalized = IN_LIST.matcher(normalized).replaceAll("IN (?)");
+    }
+    return normalized;
+  }
+
+  private static String operation(String[] tokens) {
+    for (String token : tokens) {
+      String word = stripParentheses(token);
+      if (word.isEmpty()) {
+        continue;
+      }
+      String operation = word.toUpperCase(Locale.ROOT);
+      return OPERATIONS.contains(operation) ? operation : OTHER_OPERATION;
+    }
+    return OTHER_OPERATION;
+  }
+
+  private static String table(String operation, String[] tokens) {
+    switch (operation) {
+      case "SELECT":
+      case "DELETE":
+      case "WITH":
+        return tokenAfter(tokens, "FROM");
+      case "INSERT":
+      case "MERGE":
+      case "REPLACE":
+      case "UPSERT":
+        return tokenAfter(tokens, "INTO");
+      case "UPDATE":
+        return tokenAfter(tokens, "UPDATE");
+      default:
+        return null;
+    }
+  }
+
+  private static String tokenAfter(String[] tokens, String keyword) {
+    for (int i = 0; i < tokens.length - 1; i++) {
+      if (keyword.equalsIgnoreCase(tokens[i])) {
+        String table = stripParentheses(tokens[i + 1]);
+        int end = table.indexOf(',');
+        if (end >= 0) {
+          table = table.substring(0, end);
+        }
+        if (table.isEmpty() || table.charAt(0) == '?' || table.charAt(0) == '$') {
+          return null;
+        }
+        return table;
+      }
+    }
+    return null;
+  }
+
+  private static String stripParentheses(String token) {
+    int start = 0;
+    int end = token.length();
+    while (start < end && token.charAt(start) == '(') {
+      start++;
+    }
+    int open = token.indexOf('(', start);
+    if (open >= 0) {
+      end = open;
+    }
+    while (end > start && (token.charAt(end - 1) == ')' || token.charAt(end - 1) == ';')) {
+      end--;
+    }
+    return token.substring(start, end);
+  }
+
+  private static int skipLineComment(String query, int i) {
+    int end = query.indexOf('\n', i);
+    return end < 0 ? query.length() : end + 1;
+  }
+
+  private static int skipBlockComment(String query, int i) {
+    int end = query.indexOf("*/", i + 2);
+    return end < 0 ? query.length() : end + 2;
+  }
+
+  private static boolean isEscapePrefix(StringBuilder sb) {
+    char c = previous(sb);
+    return (c == 'E' || c == 'e') && (sb.length() == 1 || !isIdentifierPart(sb.charAt(sb.length() - 2)));
+  }
+
+  private static int skipStringLiteral(String query, int i, boolean escapes) {
+    int length = query.length();
+    int j = i + 1;
+    while (j < length) {
+      char c = query.charAt(j);
+      if (c == '\'') {
+        if (j + 1 < length && query.charAt(j + 1) == '\'') {
+          j += 2;
+          continue;
+        }
+        return j + 1;
+      }
+      if (c == '\\' && escapes) {
+        j++;
+      }
+      j++;
+    }
+    return length;
+  }
+
+  private static int skipQuoted(String query, int i, char quote) {
+    int end = query.indexOf(quote, i + 1);
+    return end < 0 ? query.length() : end + 1;
+  }
+
+  private static int skipNumber(String query, int i) {
+    int length = query.length();
+    int j = i;
+    while (j < length) {
+      char c = query.charAt(j);
+      if (isDigit(c) || c == '.' || c == 'x' || c == 'X' || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')
+          || ((c == '+' || c == '-') && (query.charAt(j - 1) == 'e' || query.charAt(j - 1) == 'E'))) {
+        j++;
+      } else {
+        break;
+      }
+    }
+    return j;
+  }
+
+  private static char previous(StringBuilder sb) {
+    return sb.length() == 0 ? ' ' : sb.charAt(sb.length() - 1);
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == ':' || c == '@' || c == '.';
+  }
+}
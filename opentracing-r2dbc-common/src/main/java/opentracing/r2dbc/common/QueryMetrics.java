@@ -0,0 +1,79 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.ExecutionType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of one statement fingerprint for one execution type and outcome.
+ */
+public final class QueryMetrics {
+
+  private final QueryFingerprint fingerprint;
+  private final ExecutionType type;
+  private final boolean success;
+  private final LatencyHistogram histogram =
+      new LatencyHistogram(LatencyHistogram.DEFAULT_WINDOW_MS, LatencyHistogram.DEFAULT_WINDOWS);
+  private final LatencyHistogram fetchHistogram = new LatencyHistogram();
+  private final LongAdder rows = new LongAdder();
+  private final LongAdder repeated = new LongAdder();
+  private volatile boolean published;
+
+  QueryMetrics(QueryFingerprint fingerprint, ExecutionType type, boolean success) {
+    this.fingerprint = fingerprint;
+    this.type = type;
+    this.success = success;
+  }
+
+  public QueryFingerprint getFingerprint() {
+    return fingerprint;
+  }
+
+  public ExecutionType getType() {
+    return type;
+  }
+
+  public boolean isSuccess() {
+    return success;
+  }
+
+  public LatencyHistogram getHistogram() {
+    return histogram;
+  }
+
+  /**
+   * Time from the end of the execution until the result was consumed, only recorded with
+   * {@link TracingConfiguration#isResultStatistics() result statistics}.
+   */
+  public LatencyHistogram getFetchHistogram() {
+    return fetchHistogram;
+  }
+
+  public long getRows() {
+    return rows.sum();
+  }
+
+  /**
+   * Number of parent spans in which the statement ran more often than the repeated query threshold.
+   */
+  public long getRepeated() {
+    return repeated.sum();
+  }
+
+  void recordRepeated() {
+    repeated.increment();
+  }
+
+  void recordResult(long fetchNanos, long rowCount) {
+    fetchHistogram.record(fetchNanos);
+    rows.add(rowCount);
+  }
+
+  boolean isPublished() {
+    return published;
+  }
+
+  void published() {
+    published = true;
+  }
+}
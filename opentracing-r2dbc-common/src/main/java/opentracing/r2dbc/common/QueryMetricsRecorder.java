@@ -0,0 +1,161 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.ExecutionType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Records the execute duration of every query, sampled or not, per statement fingerprint,
+ * {@link ExecutionType} and outcome. Once {@code maxStatements} fingerprints are tracked, further
+ * statements are aggregated under a single overflow fingerprint so memory stays bounded.
+ * <p>
+ * Listeners are told about new {@link QueryMetrics} on a daemon thread rather than on the query which created
+ * them, so registering meters never delays a query.
+ */
+public class QueryMetricsRecorder {
+
+  static final int DEFAULT_MAX_STATEMENTS = 512;
+  static final QueryFingerprint OVERFLOW_FINGERPRINT =
+      new QueryFingerprint("other", QueryFingerprinter.OTHER_OPERATION, null);
+
+  private static final ExecutionType[] TYPES = ExecutionType.values();
+
+  private final int maxStatements;
+  private final ConcurrentHashMap<QueryFingerprint, StatementSlots> statements = new ConcurrentHashMap<>();
+  private final List<Consumer<QueryMetrics>> listeners = new CopyOnWriteArrayList<>();
+  private final ConcurrentLinkedQueue<QueryMetrics> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private volatile Scheduler scheduler;
+
+  public QueryMetricsRecorder() {
+    this(DEFAULT_MAX_STATEMENTS);
+  }
+
+  public QueryMetricsRecorder(int maxStatements) {
+    this.maxStatements = maxStatements > 0 ? maxStatements : DEFAULT_MAX_STATEMENTS;
+  }
+
+  public void record(QueryFingerprint fingerprint, ExecutionType type, boolean success, long durationNanos) {
+    queryMetrics(fingerprint, type, success).getHistogram().record(durationNanos);
+  }
+
+  public void recordResult(QueryFingerprint fingerprint, ExecutionType type, long fetchNanos, long rows) {
+    queryMetrics(fingerprint, type, true).recordResult(fetchNanos, rows);
+  }
+
+  public void recordRepeated(QueryFingerprint fingerprint, ExecutionType type) {
+    queryMetrics(fingerprint, type, true).recordRepeated();
+  }
+
+  public QueryMetrics queryMetrics(QueryFingerprint fingerprint, ExecutionType type, boolean success) {
+    StatementSlots statement = statement(fingerprint);
+    int index = type.ordinal() * 2 + (success ? 1 : 0);
+    QueryMetrics queryMetrics = statement.slots.get(index);
+    if (queryMetrics == null) {
+      QueryMetrics created = new QueryMetrics(statement.fingerprint, type, success);
+      if (statement.slots.compareAndSet(index, null, created)) {
+        publish(created);
+        queryMetrics = created;
+      } else {
+        queryMetrics = statement.slots.get(index);
+      }
+    }
+    return queryMetrics;
+  }
+
+  public Collection<QueryMetrics> getQueryMetrics() {
+    List<QueryMetrics> result = new ArrayList<>();
+    for (StatementSlots statement : statements.values()) {
+      for (int i = 0; i < statement.slots.length(); i++) {
+        QueryMetrics queryMetrics = statement.slots.get(i);
+        if (queryMetrics != null) {
+          result.add(queryMetrics);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Registers a listener which is called once for every existing and every future
+   * {@link QueryMetrics}, e.g. to register meters for it.
+   */
+  public synchronized void addListener(Consumer<QueryMetrics> listener) {
+    for (QueryMetrics queryMetrics : getQueryMetrics()) {
+      if (queryMetrics.isPublished()) {
+        listener.accept(queryMetrics);
+      }
+    }
+    listeners.add(listener);
+    drain();
+  }
+
+  private void publish(QueryMetrics queryMetrics) {
+    pending.add(queryMetrics);
+    if (!listeners.isEmpty() && draining.compareAndSet(false, true)) {
+      scheduler().schedule(this::drain);
+    }
+  }
+
+  private Scheduler scheduler() {
+    Scheduler scheduler = this.scheduler;
+    if (scheduler == null) {
+      synchronized (pending) {
+        scheduler = this.scheduler;
+        if (scheduler == null) {
+          scheduler = Schedulers.newSingle("r2dbc-metrics", true);
+          this.scheduler = scheduler;
+        }
+      }
+    }
+    return scheduler;
+  }
+
+  /**
+   * Tells the listeners about the pending {@link QueryMetrics}.
+   */
+  synchronized void drain() {
+    draining.set(false);
+    QueryMetrics queryMetrics;
+    while ((queryMetrics = pending.poll()) != null) {
+      queryMetrics.published();
+      for (Consumer<QueryMetrics> listener : listeners) {
+        listener.accept(queryMetrics);
+      }
+    }
+  }
+
+  private StatementSlots statement(QueryFingerprint fingerprint) {
+    if (fingerprint == null) {
+      fingerprint = OVERFLOW_FINGERPRINT;
+    }
+    StatementSlots statement = statements.get(fingerprint);
+    if (statement == null) {
+      if (statements.size() >= maxStatements) {
+        fingerprint = OVERFLOW_FINGERPRINT;
+      }
+      statement = statements.computeIfAbsent(fingerprint, StatementSlots::new);
+    }
+    return statement;
+  }
+
+  private static final class StatementSlots {
+
+    private final QueryFingerprint fingerprint;
+    private final AtomicReferenceArray<QueryMetrics> slots = new AtomicReferenceArray<>(TYPES.length * 2);
+
+    private StatementSlots(QueryFingerprint fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+  }
+}
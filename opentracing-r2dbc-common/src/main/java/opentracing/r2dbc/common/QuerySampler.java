@@ -0,0 +1,13 @@
+package opentracing.r2dbc.common;
+
+/**
+ * Head sampling decision for query spans. It is consulted before any span related work is done, so
+ * implementations must be cheap and must not allocate.
+ */
+public interface QuerySampler {
+
+  QuerySampler ALWAYS = fingerprint -> true;
+  QuerySampler NEVER = fingerprint -> false;
+
+  boolean isSampled(QueryFingerprint fingerprint);
+}
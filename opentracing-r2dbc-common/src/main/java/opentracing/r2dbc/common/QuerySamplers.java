@@ -0,0 +1,36 @@
+package opentracing.r2dbc.common;
+
+import java.util.Locale;
+
+public final class QuerySamplers {
+
+  public static final String TYPE_CONST = "const";
+  public static final String TYPE_PROBABILISTIC = "probabilistic";
+  public static final String TYPE_RATE_LIMITING = "ratelimiting";
+  public static final String TYPE_STATEMENT_RATE_LIMITING = "statement-ratelimiting";
+
+  private QuerySamplers() {
+  }
+
+  public static QuerySampler create(String type, double param) {
+    return create(type, param, PerStatementRateLimitingQuerySampler.DEFAULT_MAX_STATEMENTS);
+  }
+
+  public static QuerySampler create(String type, double param, int maxStatements) {
+    if (type == null || type.isEmpty()) {
+      return QuerySampler.ALWAYS;
+    }
+    switch (type.toLowerCase(Locale.ROOT)) {
+      case TYPE_CONST:
+        return param != 0 ? QuerySampler.ALWAYS : QuerySampler.NEVER;
+      case TYPE_PROBABILISTIC:
+        return new ProbabilisticQuerySampler(param);
+      case TYPE_RATE_LIMITING:
+        return new RateLimitingQuerySampler(param);
+      case TYPE_STATEMENT_RATE_LIMITING:
+        return new PerStatementRateLimitingQuerySampler(param, maxStatements);
+      default:
+        throw new IllegalArgumentException("Unknown sampler type: " + type);
+    }
+  }
+}
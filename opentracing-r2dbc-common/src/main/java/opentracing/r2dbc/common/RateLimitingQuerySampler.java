@@ -0,0 +1,21 @@
+package opentracing.r2dbc.common;
+
+public class RateLimitingQuerySampler implements QuerySampler {
+
+  private final double maxQueriesPerSecond;
+  private final TokenBucket tokenBucket;
+
+  public RateLimitingQuerySampler(double maxQueriesPerSecond) {
+    this.maxQueriesPerSecond = maxQueriesPerSecond;
+    this.tokenBucket = new TokenBucket(maxQueriesPerSecond, Math.max(1, maxQueriesPerSecond));
+  }
+
+  public double getMaxQueriesPerSecond() {
+    return maxQueriesPerSecond;
+  }
+
+  @Override
+  public boolean isSampled(QueryFingerprint fingerprint) {
+    return tokenBucket.tryAcquire();
+  }
+}
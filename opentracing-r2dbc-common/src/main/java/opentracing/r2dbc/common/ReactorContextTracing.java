@@ -0,0 +1,180 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.r2dbc.spi.ConnectionFactory;
+import reactor.core.CorePublisher;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoOperator;
+import reactor.util.context.Context;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Parents r2dbc spans on the span found in the Reactor subscriber {@link Context} instead of
+ * {@link Tracer#activeSpan()}, which is rarely the right one on the event loop running the proxy callbacks.
+ * <p>
+ * The parent is read once when a connection or statement is subscribed and handed over to the
+ * listener, which keeps it in the connection {@code ValueStore} for the later query and transaction spans.
+ * No scope is activated around the operators of the pipeline.
+ */
+public final class ReactorContextTracing {
+
+  public static final String PARENT_SPAN_KEY = ReactorContextTracing.class.getName() + ".parentSpan";
+  public static final String ROUTE_KEY = ReactorContextTracing.class.getName() + ".route";
+
+  private static final ThreadLocal<Object> SUBSCRIBING_PARENT = new ThreadLocal<>();
+  private static final ThreadLocal<Object> SUBSCRIBING_ROUTE = new ThreadLocal<>();
+
+  private ReactorContextTracing() {
+  }
+
+  /**
+   * Adds the span to a subscriber context, e.g. {@code mono.subscriberContext(withParentSpan(span))}.
+   */
+  public static Function<Context, Context> withParentSpan(Span span) {
+    return context -> span == null ? context : context.put(PARENT_SPAN_KEY, span);
+  }
+
+  public static Function<Context, Context> withParentSpanContext(SpanContext spanContext) {
+    return context -> spanContext == null ? context : context.put(PARENT_SPAN_KEY, spanContext);
+  }
+
+  /**
+   * Adds the route of the request to a subscriber context, which the {@link SqlCommenter} puts into the
+   * comments of the statements of connections created within it.
+   */
+  public static Function<Context, Context> withRoute(String route) {
+    return context -> route == null ? context : context.put(ROUTE_KEY, route);
+  }
+
+  /**
+   * Adds a route which is only resolved when a connection is created, e.g. once the handler of a request is known.
+   */
+  public static Function<Context, Context> withRoute(Supplier<String> route) {
+    return context -> route == null ? context : context.put(ROUTE_KEY, route);
+  }
+
+  /**
+   * Puts the span active when the returned mono is subscribed into its subscriber context, unless it
+   * already holds a parent.
+   */
+  public static <T> Mono<T> withActiveSpan(Mono<T> source, Tracer tracer) {
+    return Mono.defer(() -> {
+      Span span = tracer.activeSpan();
+      return span == null ? source : source.subscriberContext(context ->
+          context.hasKey(PARENT_SPAN_KEY) ? context : context.put(PARENT_SPAN_KEY, span));
+    });
+  }
+
+  /**
+   * Hands the parent span of the subscriber context over to the proxy callbacks run when the given
+   * publisher of the proxied connection factory, connection or statement is subscribed.
+   */
+  public static <T> Mono<T> propagate(Mono<T> source) {
+    return new ParentSpanMono<>(source);
+  }
+
+  public static <T> Flux<T> propagate(Flux<T> source) {
+    return new ParentSpanFlux<>(source);
+  }
+
+  /**
+   * Wraps a proxied connection factory so that every created connection is parented on the subscriber context.
+   */
+  public static ConnectionFactory propagating(ConnectionFactory connectionFactory) {
+    return connectionFactory instanceof ContextPropagatingConnectionFactory ?
+        connectionFactory : new ContextPropagatingConnectionFactory(connectionFactory);
+  }
+
+  /**
+   * The {@link Span} or {@link SpanContext} of the subscriber context while a publisher is subscribed
+   * through {@link #propagate(Mono)}.
+   */
+  static Object subscribingParent() {
+    return SUBSCRIBING_PARENT.get();
+  }
+
+  /**
+   * The route of the subscriber context while a publisher is subscribed through {@link #propagate(Mono)}.
+   */
+  static String subscribingRoute() {
+    Object route = SUBSCRIBING_ROUTE.get();
+    return route instanceof Supplier ? (String) ((Supplier<?>) route).get() : (String) route;
+  }
+
+  static Object parentOf(Context context) {
+    Object parent = context.getOrDefault(PARENT_SPAN_KEY, null);
+    return parent instanceof Span || parent instanceof SpanContext ? parent : null;
+  }
+
+  static SpanContext spanContextOf(Object parent) {
+    return parent instanceof Span ? ((Span) parent).context() : (SpanContext) parent;
+  }
+
+  static Span spanOf(Object parent) {
+    return parent instanceof Span ? (Span) parent : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void subscribe(CorePublisher<? extends T> source, CoreSubscriber<? super T> actual) {
+    Context context = actual.currentContext();
+    Object parent = parentOf(context);
+    Object route = context.getOrDefault(ROUTE_KEY, null);
+    if (parent == null && route == null) {
+      ((CorePublisher<T>) source).subscribe(actual);
+      return;
+    }
+    Object previous = SUBSCRIBING_PARENT.get();
+    Object previousRoute = SUBSCRIBING_ROUTE.get();
+    if (parent != null) {
+      SUBSCRIBING_PARENT.set(parent);
+    }
+    if (route != null) {
+      SUBSCRIBING_ROUTE.set(route);
+    }
+    try {
+      ((CorePublisher<T>) source).subscribe(actual);
+    } finally {
+      set(SUBSCRIBING_PARENT, previous);
+      set(SUBSCRIBING_ROUTE, previousRoute);
+    }
+  }
+
+  private static void set(ThreadLocal<Object> threadLocal, Object value) {
+    if (value == null) {
+      threadLocal.remove();
+    } else {
+      threadLocal.set(value);
+    }
+  }
+
+  private static final class ParentSpanMono<T> extends MonoOperator<T, T> {
+
+    ParentSpanMono(Mono<? extends T> source) {
+      super(source);
+    }
+
+    @Override
+    public void subscribe(CoreSubscriber<? super T> actual) {
+      ReactorContextTracing.subscribe(source, actual);
+    }
+  }
+
+  private static final class ParentSpanFlux<T> extends FluxOperator<T, T> {
+
+    ParentSpanFlux(Flux<? extends T> source) {
+      super(source);
+    }
+
+    @Override
+    public void subscribe(CoreSubscriber<? super T> actual) {
+      ReactorContextTracing.subscribe(source, actual);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts how often each statement fingerprint runs within one parent span, to spot N+1 query patterns.
+ * <p>
+ * Counts of the parent spans of traced requests are kept in bounded LRU maps keyed by span id, split into lock
+ * stripes so that event loops counting for different requests rarely contend; without a parent span the listener
+ * keeps the counts of the current transaction or connection in its {@code ValueStore}. The counts only hold a weak
+ * reference to the span they tag, so a finished parent span is not kept alive until it is evicted.
+ */
+final class RepeatedQueryDetector {
+
+  static final int MAX_STATEMENTS_PER_SCOPE = 64;
+  static final int STRIPES = 16;
+
+  private final int threshold;
+  private final Map<String, StatementCounts>[] traces;
+
+  RepeatedQueryDetector(int threshold, int maxTraces) {
+    this(threshold, maxTraces, STRIPES);
+  }
+
+  /**
+   * @param stripes rounded down to a power of two, at most {@code maxTraces}
+   */
+  @SuppressWarnings("unchecked")
+  RepeatedQueryDetector(int threshold, int maxTraces, int stripes) {
+    this.threshold = threshold;
+    int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(stripes, maxTraces)));
+    int maxTracesPerStripe = Math.max(1, maxTraces / stripeCount);
+    this.traces = new Map[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      traces[i] = new LinkedHashMap<String, StatementCounts>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StatementCounts> eldest) {
+          return size() > maxTracesPerStripe;
+        }
+      };
+    }
+  }
+
+  int getThreshold() {
+    return threshold;
+  }
+
+  StatementCounts traceCounts(String spanId, Span parentSpan) {
+    Map<String, StatementCounts> stripe = stripe(spanId);
+    synchronized (stripe) {
+      StatementCounts counts = stripe.get(spanId);
+      if (counts == null) {
+        counts = new StatementCounts(parentSpan);
+        stripe.put(spanId, counts);
+      }
+      return counts;
+    }
+  }
+
+  int traceCount() {
+    int count = 0;
+    for (Map<String, StatementCounts> stripe : traces) {
+      synchronized (stripe) {
+        count += stripe.size();
+      }
+    }
+    return count;
+  }
+
+  private Map<String, StatementCounts> stripe(String spanId) {
+    int hash = spanId.hashCode();
+    return traces[(hash ^ (hash >>> 16)) & (traces.length - 1)];
+  }
+
+  /**
+   * Open addressing table of statement fingerprints to execution counts, growing up to
+   * {@link #MAX_STATEMENTS_PER_SCOPE} statements; further statements are not counted.
+   */
+  static final class StatementCounts {
+
+    private final WeakReference<Span> scopeSpan;
+    private String[] statements = new String[8];
+    private int[] counts = new int[8];
+    private int size;
+
+    StatementCounts(Span scopeSpan) {
+      this.scopeSpan = scopeSpan == null ? null : new WeakReference<>(scopeSpan);
+    }
+
+    /**
+     * The span tagged with the repeated statements, or {@code null} once it was collected.
+     */
+    Span scopeSpan() {
+      return scopeSpan == null ? null : scopeSpan.get();
+    }
+
+    /**
+     * Counts an execution of the statement and returns its count, or {@code 0} when the table is full.
+     */
+    synchronized int increment(String statement) {
+      int index = indexOf(statements, statement);
+      if (statements[index] != null) {
+        return ++counts[index];
+      }
+      if (size == MAX_STATEMENTS_PER_SCOPE) {
+        return 0;
+      }
+      if (++size * 2 > statements.length) {
+        grow();
+        index = indexOf(statements, statement);
+      }
+      statements[index] = statement;
+      return counts[index] = 1;
+    }
+
+    private void grow() {
+      String[] oldStatements = statements;
+      int[] oldCounts = counts;
+      statements = new String[oldStatements.length * 2];
+      counts = new int[statements.length];
+      for (int i = 0; i < oldStatements.length; i++) {
+        if (oldStatements[i] != null) {
+          int index = indexOf(statements, oldStatements[i]);
+          statements[index] = oldStatements[i];
+          counts[index] = oldCounts[i];
+        }
+      }
+    }
+
+    private static int indexOf(String[] statements, String statement) {
+      int hash = statement.hashCode();
+      int mask = statements.length - 1;
+      int index = (hash ^ (hash >>> 16)) & mask;
+      while (statements[index] != null && !statements[index].equals(statement)) {
+        index = (index + 1) & mask;
+      }
+      return index;
+    }
+  }
+}
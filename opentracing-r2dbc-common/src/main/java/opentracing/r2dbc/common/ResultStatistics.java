@@ -0,0 +1,34 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.r2dbc.proxy.core.ExecutionType;
+
+/**
+ * Row streaming counters of one query, created once per query and updated for every row without
+ * allocating. Rows of one result are signalled serially, so plain fields are sufficient.
+ */
+final class ResultStatistics {
+
+  final QueryFingerprint fingerprint;
+  final ExecutionType type;
+  final long startNanos;
+  long executedNanos;
+  long firstRowNanos;
+  long rows;
+  long mappingNanos;
+  Span span;
+  boolean keep;
+
+  ResultStatistics(QueryFingerprint fingerprint, ExecutionType type, long startNanos) {
+    this.fingerprint = fingerprint;
+    this.type = type;
+    this.startNanos = startNanos;
+  }
+
+  void onRow(long now, long rowMappingNanos) {
+    if (rows++ == 0) {
+      firstRowNanos = now;
+    }
+    mappingNanos += rowMappingNanos;
+  }
+}
@@ -0,0 +1,41 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+
+import java.util.function.BiFunction;
+
+/**
+ * Measures the time spent in {@code Result.map} functions. The proxy only sees mapped rows, so the
+ * mapping function has to be wrapped explicitly:
+ * <pre>
+ *   result.map(RowMappingTimer.timed((row, metadata) -&gt; toUser(row)))
+ * </pre>
+ * The elapsed time is handed to the listener through a thread local slot, the listener picks it up
+ * when the mapped row is emitted on the same thread.
+ */
+public final class RowMappingTimer {
+
+  private static final ThreadLocal<long[]> ELAPSED_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+  private RowMappingTimer() {
+  }
+
+  public static <T> BiFunction<Row, RowMetadata, T> timed(BiFunction<Row, RowMetadata, ? extends T> mappingFunction) {
+    return (row, rowMetadata) -> {
+      long start = System.nanoTime();
+      try {
+        return mappingFunction.apply(row, rowMetadata);
+      } finally {
+        ELAPSED_NANOS.get()[0] += System.nanoTime() - start;
+      }
+    };
+  }
+
+  static long takeElapsedNanos() {
+    long[] elapsed = ELAPSED_NANOS.get();
+    long nanos = elapsed[0];
+    elapsed[0] = 0;
+    return nanos;
+  }
+}
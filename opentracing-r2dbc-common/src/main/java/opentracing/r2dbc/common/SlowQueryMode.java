@@ -0,0 +1,14 @@
+package opentracing.r2dbc.common;
+
+public enum SlowQueryMode {
+  /**
+   * A query is slow when it runs longer than {@link TracingConfiguration#getSlowQueryThresholdMs()}.
+   */
+  FIXED,
+  /**
+   * A query is slow when it runs longer than its own statement's recent
+   * {@link TracingConfiguration#getSlowQueryPercentile() percentile} times
+   * {@link TracingConfiguration#getSlowQueryFactor() factor}, see {@link AdaptiveSlowQueryDetector}.
+   */
+  ADAPTIVE
+}
@@ -0,0 +1,113 @@
+package opentracing.r2dbc.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the heaviest keys by an accumulated weight, monitoring at most {@code capacity}
+ * keys. A key which is not monitored replaces the lightest monitored one and inherits its weight, which is
+ * kept as the error the weight of the key may be overestimated by. Not thread safe.
+ */
+final class SpaceSaving {
+
+  private final Counter[] heap;
+  private final Map<String, Counter> counters;
+  private int size;
+
+  SpaceSaving(int capacity) {
+    this.heap = new Counter[Math.max(1, capacity)];
+    this.counters = new HashMap<>(heap.length * 2);
+  }
+
+  void add(String key, long weight) {
+    if (weight <= 0) {
+      return;
+    }
+    Counter counter = counters.get(key);
+    if (counter == null && size < heap.length) {
+      counter = heap[size];
+      if (counter == null) {
+        counter = new Counter();
+        heap[size] = counter;
+      }
+      counter.key = key;
+      counter.weight = weight;
+      counter.error = 0;
+      counters.put(key, counter);
+      siftUp(size++);
+      return;
+    }
+    if (counter == null) {
+      counter = heap[0];
+      counters.remove(counter.key);
+      counter.error = counter.weight;
+      counter.key = key;
+      counters.put(key, counter);
+    }
+    counter.weight += weight;
+    siftDown(counter.index);
+  }
+
+  int size() {
+    return size;
+  }
+
+  Counter get(int index) {
+    return heap[index];
+  }
+
+  /**
+   * The weight any key which is not monitored may have, 0 while the summary is not full.
+   */
+  long min() {
+    return size < heap.length ? 0 : heap[0].weight;
+  }
+
+  void clear() {
+    counters.clear();
+    size = 0;
+  }
+
+  private void siftUp(int index) {
+    Counter counter = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (heap[parent].weight <= counter.weight) {
+        break;
+      }
+      heap[index] = heap[parent];
+      heap[index].index = index;
+      index = parent;
+    }
+    heap[index] = counter;
+    counter.index = index;
+  }
+
+  private void siftDown(int index) {
+    Counter counter = heap[index];
+    while (true) {
+      int child = index * 2 + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && heap[child + 1].weight < heap[child].weight) {
+        child++;
+      }
+      if (heap[child].weight >= counter.weight) {
+        break;
+      }
+      heap[index] = heap[child];
+      heap[index].index = index;
+      index = child;
+    }
+    heap[index] = counter;
+    counter.index = index;
+  }
+
+  static final class Counter {
+    String key;
+    long weight;
+    long error;
+    int index;
+  }
+}
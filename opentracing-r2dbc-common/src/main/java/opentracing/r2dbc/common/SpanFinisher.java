@@ -0,0 +1,33 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+
+/**
+ * Finishes the spans of the listener, tagging the error of a failed execution first.
+ */
+public interface SpanFinisher {
+
+  /**
+   * Finishes spans on the calling thread.
+   */
+  SpanFinisher SYNC = (span, thrown, finishMicros) -> {
+    if (thrown != null) {
+      SpanUtils.tagError(thrown, span);
+    }
+    if (finishMicros > 0) {
+      span.finish(finishMicros);
+    } else {
+      span.finish();
+    }
+  };
+
+  /**
+   * @param thrown       the error of the execution, or {@code null}
+   * @param finishMicros the finish timestamp, or {@code 0} for now
+   */
+  void finish(Span span, Throwable thrown, long finishMicros);
+
+  default void finish(Span span) {
+    finish(span, null, 0);
+  }
+}
@@ -0,0 +1,76 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+import io.r2dbc.proxy.core.ConnectionInfo;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionMetadata;
+
+/**
+ * Tags shared by every span of a connection. Computed once per connection, kept in the connection
+ * {@link io.r2dbc.proxy.core.ValueStore} and applied on the span builder, so that no tag has to be
+ * set on an already started span.
+ */
+public final class SpanTagTemplate {
+
+  static final String TAG_TEMPLATE_KEY = "spanTagTemplate";
+  static final String COMPONENT_NAME = "opentracing-r2dbc";
+
+  static final SpanTagTemplate NO_CONNECTION = new SpanTagTemplate(null, null);
+
+  private final String connectionId;
+  private final String dbType;
+
+  private SpanTagTemplate(String connectionId, String dbType) {
+    this.connectionId = connectionId;
+    this.dbType = dbType;
+  }
+
+  public static SpanTagTemplate of(ConnectionInfo connectionInfo) {
+    if (connectionInfo == null) {
+      return NO_CONNECTION;
+    }
+    SpanTagTemplate template = connectionInfo.getValueStore().get(TAG_TEMPLATE_KEY, SpanTagTemplate.class);
+    if (template != null) {
+      return template;
+    }
+    Connection connection = connectionInfo.getOriginalConnection();
+    template = new SpanTagTemplate(connectionInfo.getConnectionId(), dbType(connection));
+    if (connection != null) {
+      // before the connection is established there is no metadata worth remembering
+      connectionInfo.getValueStore().put(TAG_TEMPLATE_KEY, template);
+    }
+    return template;
+  }
+
+  public String getConnectionId() {
+    return connectionId;
+  }
+
+  public String getDbType() {
+    return dbType;
+  }
+
+  public Tracer.SpanBuilder apply(Tracer.SpanBuilder spanBuilder) {
+    spanBuilder.withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+        .withTag(Tags.COMPONENT.getKey(), COMPONENT_NAME);
+    if (connectionId != null) {
+      spanBuilder.withTag(TagConstants.TAG_CONNECTION_ID.getKey(), connectionId);
+    }
+    if (dbType != null) {
+      spanBuilder.withTag(Tags.DB_TYPE.getKey(), dbType);
+    }
+    return spanBuilder;
+  }
+
+  private static String dbType(Connection connection) {
+    if (connection == null) {
+      return null;
+    }
+    ConnectionMetadata metadata = connection.getMetadata();
+    if (metadata == null) {
+      return null;
+    }
+    return metadata.getDatabaseProductName() + ":" + metadata.getDatabaseVersion();
+  }
+}
@@ -1,6 +1,7 @@
 package opentracing.r2dbc.common;
 
 import io.opentracing.Span;
+import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 import io.opentracing.noop.NoopSpan;
 import io.opentracing.tag.Tags;
@@ -8,23 +9,31 @@ import io.r2dbc.proxy.core.ConnectionInfo;
 import io.r2dbc.proxy.core.ExecutionType;
 import io.r2dbc.proxy.core.MethodExecutionInfo;
 import io.r2dbc.proxy.core.QueryExecutionInfo;
-import io.r2dbc.spi.ConnectionMetadata;
 
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 
 import static opentracing.r2dbc.common.TagConstants.*;
 
 public class SpanUtils {
 
-  private static final String COMPONENT_NAME = "opentracing-r2dbc";
-
   public static void finishSpan(Span span,
                                 QueryExecutionInfo queryExecutionInfo,
                                 TracingConfiguration tracingConfiguration) {
-    _finishSpan(span,
+    tagSpan(span, queryExecutionInfo, tracingConfiguration);
+    tracingConfiguration.getSpanFinisher().finish(span);
+  }
+
+  /**
+   * Sets the tags of a finished query without finishing its span and returns whether the query
+   * exceeded the fixed slow query threshold.
+   */
+  public static boolean tagSpan(Span span,
+                                QueryExecutionInfo queryExecutionInfo,
+                                TracingConfiguration tracingConfiguration) {
+    return _tagSpan(span,
+        tracingConfiguration.getSlowQueryMode() == SlowQueryMode.FIXED,
         tracingConfiguration,
         queryExecutionInfo.getExecuteDuration(),
         queryExecutionInfo.getConnectionInfo(),
@@ -32,22 +41,25 @@ public class SpanUtils {
         queryExecutionInfo.getThreadName());
   }
 
-  private static void _finishSpan(Span span,
+  private static boolean _tagSpan(Span span,
+                                  boolean fixedSlowQueryThreshold,
                                   TracingConfiguration tracingConfiguration,
                                   Duration executeDuration2,
                                   ConnectionInfo connectionInfo,
                                   long threadId,
                                   String threadName) {
-    if (isSlowQueryEnabled(tracingConfiguration)) {
+    boolean slow = false;
+    if (fixedSlowQueryThreshold && isSlowQueryEnabled(tracingConfiguration)) {
       Duration executeDuration = executeDuration2;
       if (null != executeDuration && executeDuration.toMillis() > tracingConfiguration.getSlowQueryThresholdMs()) {
         TAG_SLOW.set(span, true);
+        slow = true;
       }
     }
     TAG_CONNECTION_ID.set(span, connectionInfo.getConnectionId());
-    TAG_THREAD_ID.set(span, String.valueOf(threadId));
+    TAG_THREAD_ID.set(span, ThreadIds.toString(threadId));
     TAG_THREAD_NAME.set(span, threadName);
-    span.finish();
+    return slow;
   }
 
   private static boolean isSlowQueryEnabled(TracingConfiguration tracingConfiguration) {
@@ -58,35 +70,54 @@ public class SpanUtils {
   public static void finishSpan(Span span,
                                 MethodExecutionInfo methodExecutionInfo,
                                 TracingConfiguration tracingConfiguration) {
-    _finishSpan(span,
+    _tagSpan(span,
+        true,
         tracingConfiguration,
         methodExecutionInfo.getExecuteDuration(),
         methodExecutionInfo.getConnectionInfo(),
         methodExecutionInfo.getThreadId(),
         methodExecutionInfo.getThreadName());
+    tracingConfiguration.getSpanFinisher().finish(span);
+  }
+
+  public static Span buildSpan(String operationName,
+                               MethodExecutionInfo methodExecutionInfo,
+                               Tracer tracer,
+                               TracingConfiguration tracingConfiguration) {
+    return buildSpan(operationName, methodExecutionInfo, null, tracer, tracingConfiguration);
   }
 
+  /**
+   * Builds a span parented on {@code parent}, or on the active span when it is {@code null}.
+   */
   public static Span buildSpan(String operationName,
                                MethodExecutionInfo methodExecutionInfo,
+                               SpanContext parent,
                                Tracer tracer,
                                TracingConfiguration tracingConfiguration) {
     if (!isTracingEnabled(tracingConfiguration, null)) {
       return NoopSpan.INSTANCE;
     }
-    Tracer.SpanBuilder spanBuilder = tracer.buildSpan(operationName)
-        .asChildOf(tracer.activeSpan())
-        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
+    Tracer.SpanBuilder spanBuilder = childOf(tracer.buildSpan(operationName), parent, tracer);
+    decorate(spanBuilder, methodExecutionInfo);
+    return spanBuilder.start();
+  }
 
-    Span span = spanBuilder.start();
-    decorate(span, methodExecutionInfo);
-    return span;
+  public static Span buildChildSpan(String operationName,
+                                    Span parent,
+                                    Tracer tracer) {
+    return tracer.buildSpan(operationName)
+        .asChildOf(parent)
+        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+        .withTag(Tags.COMPONENT.getKey(), SpanTagTemplate.COMPONENT_NAME)
+        .start();
   }
 
   private static boolean isTracingEnabled(TracingConfiguration tracingConfiguration,
                                           String sql) {
     if (!tracingConfiguration.isTraceEnabled()) {
       return false;
-    } else if (tracingConfiguration.getIgnoreStatements() != null && tracingConfiguration.getIgnoreStatements().contains(sql)) {
+    } else if (sql != null && tracingConfiguration.getIgnoreStatementMatcher().matches(sql)) {
       return false;
     }
     return true;
@@ -100,73 +131,81 @@ public class SpanUtils {
     if (!isTracingEnabled(tracingConfiguration, sql)) {
       return NoopSpan.INSTANCE;
     }
-
-    Tracer.SpanBuilder spanBuilder = tracer.buildSpan(operationName)
-        .asChildOf(tracer.activeSpan())
-        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
-
-    Span span = spanBuilder.start();
-    decorate(span, sql, queryExecutionInfo);
-    return span;
+    return buildSpan(operationName, sql, null, queryExecutionInfo, tracer, tracingConfiguration);
   }
 
-  private static void decorate(Span span,
-                               MethodExecutionInfo methodExecutionInfo) {
-    Tags.COMPONENT.set(span, COMPONENT_NAME);
+  public static Span buildSpan(String operationName,
+                               String statement,
+                               QueryFingerprint fingerprint,
+                               QueryExecutionInfo queryExecutionInfo,
+                               Tracer tracer,
+                               TracingConfiguration tracingConfiguration) {
+    return buildSpan(operationName, statement, fingerprint, queryExecutionInfo, null, tracer, tracingConfiguration);
+  }
 
-    ConnectionInfo connectionInfo = methodExecutionInfo.getConnectionInfo();
-    if (null != connectionInfo) {
-      String connectionId = connectionInfo.getConnectionId();
-      TAG_CONNECTION_ID.set(span, connectionId);
+  public static Span buildSpan(String operationName,
+                               String statement,
+                               QueryFingerprint fingerprint,
+                               QueryExecutionInfo queryExecutionInfo,
+                               SpanContext parent,
+                               Tracer tracer,
+                               TracingConfiguration tracingConfiguration) {
+    if (!isTracingEnabled(tracingConfiguration, null)) {
+      return NoopSpan.INSTANCE;
     }
-    ConnectionMetadata metadata = Optional.of(methodExecutionInfo)
-        .map(info -> info.getConnectionInfo())
-        .map(info -> info.getOriginalConnection())
-        .map(conn -> conn.getMetadata())
-        .orElse(null);
-    tagDBType(span, metadata);
-    TAG_CONNECTION_CREATE_THREAD_ID.set(span, String.valueOf(methodExecutionInfo.getThreadId()));
-    TAG_CONNECTION_CREATE_THREAD_NAME.set(span, methodExecutionInfo.getThreadName());
+
+    Tracer.SpanBuilder spanBuilder = childOf(tracer.buildSpan(operationName), parent, tracer);
+    decorate(spanBuilder, statement, fingerprint, queryExecutionInfo, tracingConfiguration);
+    return spanBuilder.start();
   }
 
-  private static void decorate(Span span, String sql,
-                               QueryExecutionInfo queryExecutionInfo) {
-    Tags.COMPONENT.set(span, COMPONENT_NAME);
+  private static Tracer.SpanBuilder childOf(Tracer.SpanBuilder spanBuilder, SpanContext parent, Tracer tracer) {
+    return parent != null ? spanBuilder.asChildOf(parent) : spanBuilder.asChildOf(tracer.activeSpan());
+  }
 
+  private static void decorate(Tracer.SpanBuilder spanBuilder,
+                               MethodExecutionInfo methodExecutionInfo) {
+    SpanTagTemplate.of(methodExecutionInfo.getConnectionInfo()).apply(spanBuilder)
+        .withTag(TAG_CONNECTION_CREATE_THREAD_ID.getKey(), ThreadIds.toString(methodExecutionInfo.getThreadId()))
+        .withTag(TAG_CONNECTION_CREATE_THREAD_NAME.getKey(), methodExecutionInfo.getThreadName());
+  }
+
+  private static void decorate(Tracer.SpanBuilder spanBuilder, String sql, QueryFingerprint fingerprint,
+                               QueryExecutionInfo queryExecutionInfo, TracingConfiguration tracingConfiguration) {
+    SpanTagTemplate.of(queryExecutionInfo.getConnectionInfo()).apply(spanBuilder)
+        .withTag(TAG_QUERY_TYPE.getKey(), queryExecutionInfo.getType().toString());
     if (isNotEmpty(sql)) {
-      Tags.DB_STATEMENT.set(span, sql);
+      spanBuilder.withTag(Tags.DB_STATEMENT.getKey(), sql);
     }
-
-    String connectionId = queryExecutionInfo.getConnectionInfo().getConnectionId();
-    ConnectionMetadata metadata = Optional.of(queryExecutionInfo)
-        .map(info -> info.getConnectionInfo())
-        .map(info -> info.getOriginalConnection())
-        .map(conn -> conn.getMetadata())
-        .orElse(null);
-    tagDBType(span, metadata);
-    TAG_CONNECTION_ID.set(span, connectionId);
-    TAG_QUERY_TYPE.set(span, queryExecutionInfo.getType().toString());
-    if (ExecutionType.BATCH == queryExecutionInfo.getType()) {
-      TAG_BATCH_SIZE.set(span, queryExecutionInfo.getBatchSize());
+    if (null != fingerprint) {
+      spanBuilder.withTag(TAG_DB_OPERATION.getKey(), fingerprint.getOperation());
+      if (null != fingerprint.getTable()) {
+        spanBuilder.withTag(TAG_DB_TABLE.getKey(), fingerprint.getTable());
+      }
     }
-  }
-
-  private static void tagDBType(Span span, ConnectionMetadata metadata) {
-    if (null != metadata) {
-      String databaseProductName = metadata.getDatabaseProductName();
-      String databaseVersion = metadata.getDatabaseVersion();
-      Tags.DB_TYPE.set(span, String.join(databaseProductName, ":", databaseVersion));
+    if (ExecutionType.BATCH == queryExecutionInfo.getType()) {
+      spanBuilder.withTag(TAG_BATCH_SIZE.getKey(), queryExecutionInfo.getBatchSize());
+    } else if (tracingConfiguration.isCaptureBindParameters()) {
+      String bindings = tracingConfiguration.getBindParameterEncoder().encode(queryExecutionInfo.getQueries());
+      if (bindings != null) {
+        spanBuilder.withTag(TAG_DB_BINDINGS.getKey(), bindings);
+      }
     }
   }
 
   public static void onError(Throwable throwable,
                              Span span) {
+    tagError(throwable, span);
+    span.finish();
+  }
+
+  public static void tagError(Throwable throwable,
+                              Span span) {
     Tags.ERROR.set(span, Boolean.TRUE);
 
     if (throwable != null) {
       span.log(errorLogs(throwable));
     }
-    span.finish();
   }
 
   private static Map<String, Object> errorLogs(Throwable throwable) {
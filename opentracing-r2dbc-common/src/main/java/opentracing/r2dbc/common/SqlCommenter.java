@@ -0,0 +1,375 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapAdapter;
+import io.r2dbc.proxy.core.ConnectionInfo;
+import io.r2dbc.proxy.core.StatementInfo;
+import io.r2dbc.proxy.core.ValueStore;
+import io.r2dbc.proxy.listener.BindParameterConverter;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the trace context to the SQL of created statements as a sqlcommenter comment, e.g.
+ * {@code SELECT 1 /*route='%2Fusers',service='shop',traceparent='00-<trace id>-<span id>-01'*}{@code /}, so that
+ * slow query logs and {@code pg_stat_statements} of the database can be joined to the traces.
+ * <p>
+ * Installed as the {@link BindParameterConverter} of the proxy and given to the listener through the
+ * {@link TracingConfiguration}. Statements are created before their query spans are started, so the comment carries
+ * the span the query spans of the connection are parented on, i.e. the one of the subscriber context, else the
+ * active span when the connection may be reused by later requests, else the {@code r2dbc:connection} span. The
+ * trace flags are the ones the tracer propagates for that span, sampled when it propagates none. The comment is
+ * kept in the connection {@code ValueStore} and built again when the span or the route changes. The route is the
+ * one of the subscriber context, see {@link ReactorContextTracing#withRoute(String)}.
+ * <p>
+ * As the sqlcommenter specification asks, the comment goes before a terminating semicolon, and statements whose
+ * last line ends in a {@code --} comment, which would swallow it, are left alone.
+ * <p>
+ * A comment makes the statement text unique to its trace, which defeats the prepared statement caches of drivers
+ * and databases. In {@link Mode#SAMPLED} only the statements chosen by the sampler of the commenter and the ones
+ * which were slow within the slow window are commented, and the listener traces every commented statement.
+ */
+public class SqlCommenter implements BindParameterConverter {
+
+  public enum Mode {
+    ALWAYS,
+    SAMPLED
+  }
+
+  public static final long DEFAULT_SLOW_WINDOW_MS = 600_000;
+  public static final int DEFAULT_MAX_SLOW_STATEMENTS = 1024;
+  static final String TRACEPARENT = "traceparent='";
+  static final String SAMPLED_FLAGS = "01";
+  static final String NOT_SAMPLED_FLAGS = "00";
+
+  private final Tracer tracer;
+  private final String service;
+  private final Mode mode;
+  private final QuerySampler sampler;
+  private final long slowWindowNanos;
+  private final int maxSlowStatements;
+  private final QueryFingerprintCache fingerprintCache = new QueryFingerprintCache();
+  private final ConcurrentHashMap<String, Long> slowStatements = new ConcurrentHashMap<>();
+
+  public SqlCommenter(Tracer tracer, String service) {
+    this(tracer, service, Mode.ALWAYS, QuerySampler.ALWAYS, DEFAULT_SLOW_WINDOW_MS, DEFAULT_MAX_SLOW_STATEMENTS);
+  }
+
+  /**
+   * @param tracer            the tracer of the listener, which propagates the trace flags and the active span
+   * @param service           {@code null} to leave it out
+   * @param sampler           the statements commented in {@link Mode#SAMPLED} besides the slow ones
+   * @param slowWindowMs      how long a statement stays commented in {@link Mode#SAMPLED} after it was slow
+   * @param maxSlowStatements slow statements remembered
+   */
+  public SqlCommenter(Tracer tracer, String service, Mode mode, QuerySampler sampler, long slowWindowMs,
+                      int maxSlowStatements) {
+    this.tracer = tracer;
+    this.service = service == null || service.isEmpty() ? null : service;
+    this.mode = mode == null ? Mode.ALWAYS : mode;
+    this.sampler = sampler == null ? QuerySampler.ALWAYS : sampler;
+    this.slowWindowNanos = TimeUnit.MILLISECONDS.toNanos(slowWindowMs);
+    this.maxSlowStatements = maxSlowStatements > 0 ? maxSlowStatements : DEFAULT_MAX_SLOW_STATEMENTS;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  @Override
+  public String onCreateStatement(String query, StatementInfo info) {
+    if (query == null) {
+      return null;
+    }
+    int end = commentIndex(query);
+    if (end < 0 || (mode == Mode.SAMPLED && !isSampled(query))) {
+      return query;
+    }
+    String comment = comment(info.getConnectionInfo());
+    return comment == null ? query : query.substring(0, end) + comment + query.substring(end);
+  }
+
+  /**
+   * Whether the listener has to trace the query regardless of its own sampler, as it was commented in
+   * {@link Mode#SAMPLED}.
+   */
+  boolean isTraced(String query) {
+    return mode == Mode.SAMPLED && strip(query) != query;
+  }
+
+  /**
+   * Comments the statement in {@link Mode#SAMPLED} for the slow window.
+   */
+  void markSlow(QueryFingerprint fingerprint) {
+    if (mode != Mode.SAMPLED || fingerprint == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (slowStatements.size() >= maxSlowStatements && !slowStatements.containsKey(fingerprint.getFingerprint())) {
+      Iterator<Long> iterator = slowStatements.values().iterator();
+      while (iterator.hasNext()) {
+        if (now - iterator.next() >= slowWindowNanos) {
+          iterator.remove();
+        }
+      }
+      if (slowStatements.size() >= maxSlowStatements) {
+        return;
+      }
+    }
+    slowStatements.put(fingerprint.getFingerprint(), now);
+  }
+
+  /**
+   * The query without a trace comment appended by a commenter, so that fingerprints, statement rules and
+   * {@code db.statement} do not depend on the trace.
+   */
+  static String strip(String query) {
+    if (query == null) {
+      return null;
+    }
+    int end = terminatorIndex(query);
+    if (!query.startsWith("*/", end - 2)) {
+      return query;
+    }
+    int start = query.lastIndexOf(" /*", end);
+    return start < 0 || query.indexOf(TRACEPARENT, start) < 0 ?
+        query : query.substring(0, start) + query.substring(end);
+  }
+
+  /**
+   * Where the comment goes: before a terminating semicolon and trailing whitespace, or -1 when the last line
+   * ends in a line comment.
+   */
+  static int commentIndex(String query) {
+    int end = terminatorIndex(query);
+    boolean quoted = false;
+    boolean doubleQuoted = false;
+    for (int i = query.lastIndexOf('\n', end - 1) + 1; i < end; i++) {
+      char c = query.charAt(i);
+      if (c == '\'' && !doubleQuoted) {
+        quoted = !quoted;
+      } else if (c == '"' && !quoted) {
+        doubleQuoted = !doubleQuoted;
+      } else if (c == '-' && !quoted && !doubleQuoted && i + 1 < end && query.charAt(i + 1) == '-') {
+        return -1;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * The end of the statement without trailing whitespace and a terminating semicolon.
+   */
+  private static int terminatorIndex(String query) {
+    int end = query.length();
+    while (end > 0 && Character.isWhitespace(query.charAt(end - 1))) {
+      end--;
+    }
+    if (end > 0 && query.charAt(end - 1) == ';') {
+      end--;
+    }
+    return end;
+  }
+
+  private boolean isSampled(String query) {
+    QueryFingerprint fingerprint = fingerprintCache.get(query);
+    Long slowAt = slowStatements.get(fingerprint.getFingerprint());
+    if (slowAt != null) {
+      if (System.nanoTime() - slowAt < slowWindowNanos) {
+        return true;
+      }
+      slowStatements.remove(fingerprint.getFingerprint(), slowAt);
+    }
+    return sampler.isSampled(fingerprint);
+  }
+
+  private String comment(ConnectionInfo connectionInfo) {
+    if (connectionInfo == null) {
+      return null;
+    }
+    ValueStore valueStore = connectionInfo.getValueStore();
+    SpanContext spanContext = spanContext(valueStore);
+    if (spanContext == null) {
+      return null;
+    }
+    String route = ReactorContextTracing.subscribingRoute();
+    if (route == null) {
+      route = valueStore.get(OpenTracingExecutorListener.ROUTE_KEY, String.class);
+    }
+    Comment comment = valueStore.get(OpenTracingExecutorListener.SQL_COMMENT_KEY, Comment.class);
+    if (comment == null || comment.spanContext != spanContext || !Objects.equals(comment.route, route)) {
+      comment = new Comment(spanContext, route, comment(spanContext, route));
+      valueStore.put(OpenTracingExecutorListener.SQL_COMMENT_KEY, comment);
+    }
+    return comment.text.isEmpty() ? null : comment.text;
+  }
+
+  /**
+   * The span the query spans of the connection are parented on, else the connection span.
+   */
+  private SpanContext spanContext(ValueStore valueStore) {
+    Object parent = ReactorContextTracing.subscribingParent();
+    if (parent == null && tracer != null && valueStore.get(OpenTracingExecutorListener.PER_ACQUIRE_KEY) == null) {
+      // the last parent of a reused connection may belong to a request which already completed
+      Span activeSpan = tracer.activeSpan();
+      if (activeSpan != null) {
+        return activeSpan.context();
+      }
+    }
+    if (parent == null) {
+      parent = valueStore.get(OpenTracingExecutorListener.PARENT_SPAN_KEY);
+    }
+    if (parent instanceof Span || parent instanceof SpanContext) {
+      return ReactorContextTracing.spanContextOf(parent);
+    }
+    Span connectionSpan = valueStore.get(OpenTracingExecutorListener.CONNECTION_SPAN_KEY, Span.class);
+    return connectionSpan == null ? null : connectionSpan.context();
+  }
+
+  /**
+   * The comment for the span context, empty when it has no ids, e.g. of a noop span.
+   */
+  String comment(SpanContext spanContext, String route) {
+    String traceId = spanContext.toTraceId();
+    String spanId = spanContext.toSpanId();
+    if (traceId == null || traceId.isEmpty() || spanId == null || spanId.isEmpty()) {
+      return "";
+    }
+    StringBuilder comment = new StringBuilder(" /*");
+    if (route != null && !route.isEmpty()) {
+      append(comment, "route", route).append(',');
+    }
+    if (service != null) {
+      append(comment, "service", service).append(',');
+    }
+    append(comment, "traceparent", "00-" + hexId(traceId, 32) + '-' + hexId(spanId, 16) + '-'
+        + traceFlags(spanContext));
+    return comment.append("*/").toString();
+  }
+
+  /**
+   * The W3C trace flags of the span context, read from the {@code traceparent}, Jaeger or B3 headers the tracer
+   * injects for it. Sampled when the tracer propagates no sampling decision.
+   */
+  String traceFlags(SpanContext spanContext) {
+    if (tracer == null) {
+      return SAMPLED_FLAGS;
+    }
+    Map<String, String> headers = new HashMap<>();
+    try {
+      tracer.inject(spanContext, Format.Builtin.TEXT_MAP, new TextMapAdapter(headers));
+    } catch (RuntimeException e) {
+      return SAMPLED_FLAGS;
+    }
+    Boolean sampled = null;
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      String value = header.getValue();
+      if (value == null) {
+        continue;
+      }
+      switch (header.getKey().toLowerCase(Locale.ROOT)) {
+        case "traceparent": {
+          String[] fields = value.split("-");
+          if (fields.length >= 4 && fields[3].length() == 2 && isHex(fields[3])) {
+            return fields[3].toLowerCase(Locale.ROOT);
+          }
+          break;
+        }
+        case "uber-trace-id": {
+          String[] fields = value.replace("%3A", ":").replace("%3a", ":").split(":");
+          if (fields.length == 4 && isHex(fields[3])) {
+            sampled = (Long.parseLong(fields[3], 16) & 1) != 0;
+          }
+          break;
+        }
+        case "x-b3-sampled":
+          sampled = "1".equals(value) || "true".equalsIgnoreCase(value);
+          break;
+        case "x-b3-flags":
+          // debug implies sampled
+          if ("1".equals(value)) {
+            sampled = true;
+          }
+          break;
+        case "b3": {
+          String[] fields = value.split("-");
+          String decision = fields.length == 1 ? fields[0] : fields.length >= 3 ? fields[2] : null;
+          if (decision != null) {
+            sampled = "1".equals(decision) || "d".equals(decision);
+          }
+          break;
+        }
+        default:
+          break;
+      }
+    }
+    return sampled == null || sampled ? SAMPLED_FLAGS : NOT_SAMPLED_FLAGS;
+  }
+
+  private static boolean isHex(String value) {
+    if (value.isEmpty() || value.length() > 15) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (Character.digit(value.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static StringBuilder append(StringBuilder comment, String key, String value) {
+    try {
+      return comment.append(key).append("='")
+          .append(URLEncoder.encode(value, "UTF-8").replace("+", "%20")).append('\'');
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Left pads a hexadecimal id to the length of the W3C trace context, other ids are kept as they are.
+   */
+  static String hexId(String id, int length) {
+    if (id.length() >= length) {
+      return id;
+    }
+    for (int i = 0; i < id.length(); i++) {
+      if (Character.digit(id.charAt(i), 16) < 0) {
+        return id;
+      }
+    }
+    StringBuilder padded = new StringBuilder(length);
+    for (int i = id.length(); i < length; i++) {
+      padded.append('0');
+    }
+    return padded.append(id.toLowerCase(Locale.ROOT)).toString();
+  }
+
+  /**
+   * The comment of a connection with the span and route it was built for.
+   */
+  private static final class Comment {
+
+    final SpanContext spanContext;
+    final String route;
+    final String text;
+
+    Comment(SpanContext spanContext, String route, String text) {
+      this.spanContext = spanContext;
+      this.route = route;
+      this.text = text;
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package opentracing.r2dbc.common;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the statements using the most database time, executions and rows over a sliding window of recent
+ * minutes, in bounded memory.
+ * <p>
+ * Every window of {@code windowMs} keeps a {@link SpaceSaving} summary of {@code capacity} statement
+ * fingerprints per {@link Metric} and lock stripe; the summaries of the last windows are merged when the top
+ * statements are asked for. The weights are upper bounds, overestimated by at most the reported error, and
+ * the top statements are exact as long as fewer than {@code capacity} statements ran in a window.
+ */
+public class StatementHeavyHitters {
+
+  public enum Metric {
+    TIME,
+    COUNT,
+    ROWS
+  }
+
+  public static final int DEFAULT_CAPACITY = 128;
+  public static final long DEFAULT_WINDOW_MS = 60_000;
+  public static final int DEFAULT_WINDOWS = 10;
+  static final int STRIPES = 4;
+
+  private static final Metric[] METRICS = Metric.values();
+
+  private final int capacity;
+  private final long windowNanos;
+  private final Summary[][] summaries;
+  private final long startNanos = System.nanoTime();
+
+  public StatementHeavyHitters() {
+    this(DEFAULT_CAPACITY, DEFAULT_WINDOW_MS, DEFAULT_WINDOWS);
+  }
+
+  /**
+   * @param capacity statements monitored per window, metric and stripe
+   * @param windowMs length of a window
+   * @param windows  windows kept, the longest period the top statements can be asked for
+   */
+  public StatementHeavyHitters(int capacity, long windowMs, int windows) {
+    this.capacity = Math.max(1, capacity);
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, windowMs));
+    this.summaries = new Summary[Math.max(1, windows)][STRIPES];
+    for (Summary[] window : summaries) {
+      for (int i = 0; i < STRIPES; i++) {
+        window[i] = new Summary();
+      }
+    }
+  }
+
+  public long getWindowMs() {
+    return TimeUnit.NANOSECONDS.toMillis(windowNanos);
+  }
+
+  public int getWindows() {
+    return summaries.length;
+  }
+
+  public void record(QueryFingerprint fingerprint, long durationNanos) {
+    record(fingerprint, durationNanos, System.nanoTime());
+  }
+
+  void record(QueryFingerprint fingerprint, long durationNanos, long now) {
+    Summary summary = summary(now);
+    synchronized (summary) {
+      summary.roll(epoch(now), capacity);
+      summary.metrics[Metric.TIME.ordinal()].add(fingerprint.getFingerprint(), durationNanos);
+      summary.metrics[Metric.COUNT.ordinal()].add(fingerprint.getFingerprint(), 1);
+    }
+  }
+
+  /**
+   * Records the rows of a result, which the listener only counts with result statistics enabled.
+   */
+  public void recordRows(QueryFingerprint fingerprint, long rows) {
+    recordRows(fingerprint, rows, System.nanoTime());
+  }
+
+  void recordRows(QueryFingerprint fingerprint, long rows, long now) {
+    Summary summary = summary(now);
+    synchronized (summary) {
+      summary.roll(epoch(now), capacity);
+      summary.metrics[Metric.ROWS.ordinal()].add(fingerprint.getFingerprint(), rows);
+    }
+  }
+
+  /**
+   * The heaviest statements by the metric over the given period, rounded up to whole windows and
+   * including the current one, heaviest first.
+   */
+  public List<HeavyHitter> top(Metric metric, int limit, Duration period) {
+    return top(metric, limit, period, System.nanoTime());
+  }
+
+  List<HeavyHitter> top(Metric metric, int limit, Duration period, long now) {
+    long windows = Math.max(1, Math.min(summaries.length, (period.toNanos() + windowNanos - 1) / windowNanos));
+    long current = epoch(now);
+    Map<String, HeavyHitter> merged = new HashMap<>();
+    long totalMin = 0;
+    for (long epoch = current - windows + 1; epoch <= current; epoch++) {
+      if (epoch < 0) {
+        continue;
+      }
+      for (Summary summary : summaries[(int) (epoch % summaries.length)]) {
+        synchronized (summary) {
+          if (summary.epoch != epoch) {
+            continue;
+          }
+          SpaceSaving spaceSaving = summary.metrics[metric.ordinal()];
+          long min = spaceSaving.min();
+          totalMin += min;
+          for (int i = 0; i < spaceSaving.size(); i++) {
+            SpaceSaving.Counter counter = spaceSaving.get(i);
+            HeavyHitter heavyHitter = merged.computeIfAbsent(counter.key, HeavyHitter::new);
+            heavyHitter.value += counter.weight;
+            heavyHitter.error += counter.error;
+            heavyHitter.min += min;
+          }
+        }
+      }
+    }
+    List<HeavyHitter> result = new ArrayList<>(merged.values());
+    for (HeavyHitter heavyHitter : result) {
+      // a statement not monitored by a full summary may have run up to its lightest weight there
+      long unmonitored = totalMin - heavyHitter.min;
+      heavyHitter.value += unmonitored;
+      heavyHitter.error += unmonitored;
+    }
+    result.sort((a, b) -> Long.compare(b.value, a.value));
+    return result.size() > limit ? new ArrayList<>(result.subList(0, Math.max(0, limit))) : result;
+  }
+
+  private long epoch(long now) {
+    return (now - startNanos) / windowNanos;
+  }
+
+  private Summary summary(long now) {
+    int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    return summaries[(int) (epoch(now) % summaries.length)][stripe];
+  }
+
+  /**
+   * A statement with its weight in the period, e.g. the total execute time in nanoseconds.
+   */
+  public static final class HeavyHitter {
+
+    private final String statement;
+    private long value;
+    private long error;
+    private long min;
+
+    HeavyHitter(String statement) {
+      this.statement = statement;
+    }
+
+    public String getStatement() {
+      return statement;
+    }
+
+    public long getValue() {
+      return value;
+    }
+
+    /**
+     * How much {@link #getValue()} may overestimate the weight of the statement.
+     */
+    public long getError() {
+      return error;
+    }
+  }
+
+  private static final class Summary {
+
+    private final SpaceSaving[] metrics = new SpaceSaving[METRICS.length];
+    private long epoch = -1;
+
+    void roll(long epoch, int capacity) {
+      if (this.epoch == epoch) {
+        return;
+      }
+      this.epoch = epoch;
+      for (int i = 0; i < metrics.length; i++) {
+        if (metrics[i] == null) {
+          metrics[i] = new SpaceSaving(capacity);
+        } else {
+          metrics[i].clear();
+        }
+      }
+    }
+  }
+}
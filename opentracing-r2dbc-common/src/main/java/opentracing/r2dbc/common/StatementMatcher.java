@@ -0,0 +1,179 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.QueryInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Statement rules compiled once from configuration. A rule is matched exactly unless it starts
+ * with one of the following prefixes:
+ * <ul>
+ *   <li>{@code prefix:} / {@code suffix:} / {@code contains:} - case insensitive text match</li>
+ *   <li>{@code glob:} - case insensitive glob with {@code *} and {@code ?}</li>
+ *   <li>{@code regex:} - java regular expression which must match the whole statement</li>
+ *   <li>{@code fingerprint:} - statement with the same fingerprint, i.e. equal up to literals</li>
+ * </ul>
+ */
+public final class StatementMatcher {
+
+  public static final StatementMatcher NONE = new StatementMatcher(Collections.emptySet());
+
+  static final String PREFIX = "prefix:";
+  static final String SUFFIX = "suffix:";
+  static final String CONTAINS = "contains:";
+  static final String GLOB = "glob:";
+  static final String REGEX = "regex:";
+  static final String FINGERPRINT = "fingerprint:";
+
+  private final boolean empty;
+  private final Set<String> exact = new HashSet<>();
+  private final Set<String> fingerprints = new HashSet<>();
+  private final AsciiTrie prefixes;
+  private final AsciiTrie suffixes;
+  private final AsciiTrie substrings;
+  private final List<String> nonAsciiSubstrings = new ArrayList<>();
+  private final Pattern pattern;
+
+  private StatementMatcher(Collection<String> rules) {
+    List<String> prefixRules = new ArrayList<>();
+    List<String> suffixRules = new ArrayList<>();
+    List<String> substringRules = new ArrayList<>();
+    List<String> patterns = new ArrayList<>();
+    for (String rule : rules) {
+      if (rule == null || rule.isEmpty()) {
+        continue;
+      }
+      if (isEmptyRule(rule)) {
+        // an empty prefix or substring would match every statement
+        throw new IllegalArgumentException("Empty statement rule: " + rule);
+      }
+      if (rule.startsWith(PREFIX)) {
+        addAscii(rule.substring(PREFIX.length()), prefixRules, patterns, true, false);
+      } else if (rule.startsWith(SUFFIX)) {
+        addAscii(rule.substring(SUFFIX.length()), suffixRules, patterns, false, true);
+      } else if (rule.startsWith(CONTAINS)) {
+        String substring = rule.substring(CONTAINS.length());
+        if (AsciiTrie.isAscii(substring)) {
+          substringRules.add(substring);
+        } else {
+          nonAsciiSubstrings.add(substring);
+        }
+      } else if (rule.startsWith(GLOB)) {
+        patterns.add("(?i:" + globToRegex(rule.substring(GLOB.length())) + ")");
+      } else if (rule.startsWith(REGEX)) {
+        patterns.add("(?:" + rule.substring(REGEX.length()) + ")");
+      } else if (rule.startsWith(FINGERPRINT)) {
+        fingerprints.add(QueryFingerprinter.normalize(rule.substring(FINGERPRINT.length())));
+      } else {
+        exact.add(rule);
+      }
+    }
+    prefixes = prefixRules.isEmpty() ? null : new AsciiTrie(prefixRules, false);
+    suffixes = suffixRules.isEmpty() ? null : new AsciiTrie(suffixRules, true);
+    substrings = substringRules.isEmpty() ? null : new AsciiTrie(substringRules, false).buildFailureLinks();
+    pattern = patterns.isEmpty() ? null : Pattern.compile(String.join("|", patterns), Pattern.DOTALL);
+    empty = exact.isEmpty() && fingerprints.isEmpty() && prefixes == null && suffixes == null
+        && substrings == null && nonAsciiSubstrings.isEmpty() && pattern == null;
+  }
+
+  private static boolean isEmptyRule(String rule) {
+    return rule.equals(PREFIX) || rule.equals(SUFFIX) || rule.equals(CONTAINS) || rule.equals(GLOB)
+        || rule.equals(REGEX) || rule.equals(FINGERPRINT);
+  }
+
+  public static StatementMatcher compile(Collection<String> rules) {
+    if (rules == null || rules.isEmpty()) {
+      return NONE;
+    }
+    return new StatementMatcher(rules);
+  }
+
+  public boolean isEmpty() {
+    return empty;
+  }
+
+  public boolean matches(String query) {
+    return matches(query, null);
+  }
+
+  public boolean matches(String query, QueryFingerprintCache fingerprintCache) {
+    if (empty || query == null) {
+      return false;
+    }
+    query = SqlCommenter.strip(query);
+    if (exact.contains(query)) {
+      return true;
+    }
+    if (prefixes != null && prefixes.matchesPrefix(query)) {
+      return true;
+    }
+    if (suffixes != null && suffixes.matchesSuffix(query)) {
+      return true;
+    }
+    if (substrings != null && substrings.matchesAnywhere(query)) {
+      return true;
+    }
+    for (String substring : nonAsciiSubstrings) {
+      if (query.contains(substring)) {
+        return true;
+      }
+    }
+    if (!fingerprints.isEmpty()) {
+      String fingerprint = fingerprintCache != null ?
+          fingerprintCache.get(query).getFingerprint() : QueryFingerprinter.normalize(query);
+      if (fingerprints.contains(fingerprint)) {
+        return true;
+      }
+    }
+    return pattern != null && pattern.matcher(query).matches();
+  }
+
+  /**
+   * Returns true if the execution is non empty and every one of its queries matches.
+   */
+  public boolean matchesAll(List<QueryInfo> queryInfos, QueryFingerprintCache fingerprintCache) {
+    if (empty || queryInfos.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < queryInfos.size(); i++) {
+      if (!matches(queryInfos.get(i).getQuery(), fingerprintCache)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void addAscii(String text, List<String> asciiRules, List<String> patterns,
+                               boolean prefix, boolean suffix) {
+    if (AsciiTrie.isAscii(text)) {
+      asciiRules.add(text);
+    } else {
+      patterns.add("(?i:" + (prefix ? "\\s*" : ".*") + Pattern.quote(text) + (suffix ? "[\\s;]*" : ".*") + ")");
+    }
+  }
+
+  private static String globToRegex(String glob) {
+    StringBuilder sb = new StringBuilder();
+    int literalStart = 0;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*' || c == '?') {
+        if (i > literalStart) {
+          sb.append(Pattern.quote(glob.substring(literalStart, i)));
+        }
+        sb.append(c == '*' ? ".*" : ".");
+        literalStart = i + 1;
+      }
+    }
+    if (literalStart < glob.length()) {
+      sb.append(Pattern.quote(glob.substring(literalStart)));
+    }
+    return sb.toString();
+  }
+}
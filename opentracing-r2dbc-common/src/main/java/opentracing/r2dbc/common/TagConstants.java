@@ -12,6 +12,7 @@ TagConstants {
   StringTag TAG_CONNECTION_CREATE_THREAD_ID = new StringTag("threadIdOnCreate");
   StringTag TAG_CONNECTION_CREATE_THREAD_NAME = new StringTag("threadNameOnCreate");
   IntTag TAG_BATCH_SIZE = new IntTag("batchSize");
+  IntTag TAG_BATCH_DISTINCT_STATEMENTS = new IntTag("batchDistinctStatements");
   StringTag TAG_QUERY_TYPE = new StringTag("type");
   StringTag TAG_ANNOTATION = new StringTag("annotation");
   StringTag TAG_CONNECTION_CLOSE_THREAD_ID = new StringTag("threadIdOnClose");
@@ -24,4 +25,44 @@ TagConstants {
   StringTag TAG_TRANSACTION_SAVEPOINT = new StringTag("savepoint");
   BooleanTag TAG_QUERY_SUCCESS = new BooleanTag("success");
   IntTag TAG_QUERY_MAPPED_RESULT_COUNT = new IntTag("mappedResultCount");
+  StringTag TAG_DB_OPERATION = new StringTag("db.operation");
+  StringTag TAG_DB_TABLE = new StringTag("db.sql.table");
+  StringTag TAG_DB_BINDINGS = new StringTag("db.bindings");
+  NumberTag TAG_LATENCY_PERCENTILE = new NumberTag("latencyPercentile");
+  NumberTag TAG_SLOW_THRESHOLD_MS = new NumberTag("slowThresholdMs");
+  IntTag TAG_DROPPED_QUERY_SPANS = new IntTag("droppedQuerySpans");
+  NumberTag TAG_ROW_COUNT = new NumberTag("rowCount");
+  NumberTag TAG_TIME_TO_FIRST_ROW_MS = new NumberTag("timeToFirstRowMs");
+  NumberTag TAG_FETCH_TIME_MS = new NumberTag("fetchTimeMs");
+  NumberTag TAG_ROWS_PER_SECOND = new NumberTag("rowsPerSecond");
+  NumberTag TAG_ROW_MAPPING_TIME_MS = new NumberTag("rowMappingTimeMs");
+  // guessed from the pool state before the acquire, concurrent acquires can make it wrong
+  StringTag TAG_POOL_ACQUIRE_ESTIMATE = new StringTag("pool.acquireEstimate");
+  NumberTag TAG_POOL_ACQUIRE_TIME_MS = new NumberTag("pool.acquireTimeMs");
+  IntTag TAG_POOL_PENDING_ACQUIRE = new IntTag("pool.pendingAcquire");
+  IntTag TAG_POOL_IDLE = new IntTag("pool.idle");
+  IntTag TAG_POOL_ACQUIRED = new IntTag("pool.acquired");
+  IntTag TAG_POOL_ALLOCATED = new IntTag("pool.allocated");
+  IntTag TAG_POOL_MAX_ALLOCATED = new IntTag("pool.maxAllocated");
+  StringTag TAG_ERROR_FINGERPRINT = new StringTag("error.fingerprint");
+  StringTag TAG_ERROR_KIND = new StringTag("error.kind");
+  StringTag TAG_ERROR_SQL_STATE = new StringTag("error.sqlState");
+  IntTag TAG_ERROR_CODE = new IntTag("error.code");
+  NumberTag TAG_ERROR_OCCURRENCES = new NumberTag("error.occurrences");
+  IntTag TAG_QUERY_COUNT = new IntTag("queryCount");
+  IntTag TAG_BATCH_COUNT = new IntTag("batchCount");
+  IntTag TAG_FAILED_QUERY_COUNT = new IntTag("failedQueryCount");
+  NumberTag TAG_MAPPED_ROW_COUNT = new NumberTag("mappedRowCount");
+  NumberTag TAG_DB_TIME_MS = new NumberTag("dbTimeMs");
+  NumberTag TAG_MAX_QUERY_TIME_MS = new NumberTag("maxQueryTimeMs");
+  NumberTag TAG_WALL_TIME_MS = new NumberTag("wallTimeMs");
+  NumberTag TAG_DB_TIME_RATIO = new NumberTag("dbTimeRatio");
+  StringTag TAG_SLOWEST_STATEMENT = new StringTag("slowestStatement");
+  IntTag TAG_REPEATED_QUERY_COUNT = new IntTag("repeatedQueryCount");
+  StringTag TAG_REPEATED_STATEMENT = new StringTag("repeatedStatement");
+  IntTag TAG_REPEATED_STATEMENT_COUNT = new IntTag("repeatedStatementCount");
+  BooleanTag TAG_ABANDONED = new BooleanTag("abandoned");
+  StringTag TAG_ABANDONED_REASON = new StringTag("abandoned.reason");
+  StringTag TAG_DB_PLAN = new StringTag("db.plan");
+  StringTag TAG_DB_PLAN_ID = new StringTag("db.plan.id");
 }
@@ -0,0 +1,148 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query spans of one connection whose {@link Span#finish(long) finish} is deferred until the
+ * enclosing unit ends. Once any query of that unit is kept, the buffered spans are finished and
+ * further spans are finished right away; otherwise they are dropped, i.e. never finished and
+ * therefore never reported.
+ * <p>
+ * Within a transaction the unit is the transaction. Outside of one it is the trace of the query
+ * spans, so that autocommit queries of a connection which a pool keeps open for long are decided
+ * per request: a span of another trace ends the unit. Closing the connection ends it as well.
+ * <p>
+ * Memory is bounded by a fixed size ring: when it is full, or a span has been buffered for longer
+ * than the maximum age, the oldest span is dropped.
+ */
+final class TailSamplingBuffer {
+
+  private final Span[] spans;
+  private final long[] finishMicros;
+  private final long[] bufferedAt;
+  private final long maxAgeNanos;
+  private final SpanFinisher spanFinisher;
+  private int head;
+  private int size;
+  private boolean keep;
+  private boolean transaction;
+  private String traceId;
+  private int dropped;
+  private int droppedInTransaction;
+
+  TailSamplingBuffer(int maxSpans, long maxAgeMs) {
+    this(maxSpans, maxAgeMs, SpanFinisher.SYNC);
+  }
+
+  TailSamplingBuffer(int maxSpans, long maxAgeMs, SpanFinisher spanFinisher) {
+    this.spans = new Span[Math.max(1, maxSpans)];
+    this.finishMicros = new long[spans.length];
+    this.bufferedAt = new long[spans.length];
+    this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+    this.spanFinisher = spanFinisher;
+  }
+
+  /**
+   * Finishes the given span now when this unit is, or becomes, kept; buffers it otherwise.
+   */
+  synchronized void finish(Span span, boolean keepSpan) {
+    finish(span, keepSpan, null);
+  }
+
+  /**
+   * As {@link #finish(Span, boolean)}, tagging the error of a kept span when finishing it.
+   */
+  synchronized void finish(Span span, boolean keepSpan, Throwable thrown) {
+    if (!transaction) {
+      String spanTraceId = span.context().toTraceId();
+      if (spanTraceId != null && !spanTraceId.isEmpty() && !spanTraceId.equals(traceId)) {
+        endUnit();
+        traceId = spanTraceId;
+      }
+    }
+    if (keepSpan && !keep) {
+      keep = true;
+      flush();
+    }
+    if (keep) {
+      spanFinisher.finish(span, thrown, 0);
+      return;
+    }
+    long now = System.nanoTime();
+    evictExpired(now);
+    if (size == spans.length) {
+      evictOldest();
+    }
+    int index = (head + size) % spans.length;
+    spans[index] = span;
+    finishMicros[index] = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    bufferedAt[index] = now;
+    size++;
+  }
+
+  /**
+   * Ends the current unit and makes the transaction begun on the connection the next one.
+   */
+  synchronized void beginTransaction() {
+    endUnit();
+    transaction = true;
+  }
+
+  /**
+   * Ends the current unit, dropping whatever is still buffered, and returns the number of spans
+   * dropped for the transaction, or outside of transactions since the last call.
+   */
+  synchronized int complete() {
+    endUnit();
+    int completedDropped;
+    if (transaction) {
+      completedDropped = droppedInTransaction;
+      droppedInTransaction = 0;
+      transaction = false;
+    } else {
+      completedDropped = dropped;
+      dropped = 0;
+    }
+    return completedDropped;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  private void endUnit() {
+    while (size > 0) {
+      evictOldest();
+    }
+    keep = false;
+    traceId = null;
+  }
+
+  private void flush() {
+    while (size > 0) {
+      spanFinisher.finish(spans[head], null, finishMicros[head]);
+      spans[head] = null;
+      head = (head + 1) % spans.length;
+      size--;
+    }
+  }
+
+  private void evictExpired(long now) {
+    while (size > 0 && now - bufferedAt[head] > maxAgeNanos) {
+      evictOldest();
+    }
+  }
+
+  private void evictOldest() {
+    spans[head] = null;
+    head = (head + 1) % spans.length;
+    size--;
+    if (transaction) {
+      droppedInTransaction++;
+    } else {
+      dropped++;
+    }
+  }
+}
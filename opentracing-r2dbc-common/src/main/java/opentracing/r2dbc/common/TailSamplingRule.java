@@ -0,0 +1,35 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.core.QueryInfo;
+
+import java.util.Collection;
+
+/**
+ * Decides whether a finished query makes the spans buffered by tail sampling worth reporting, in
+ * addition to slow and failed queries which are always kept.
+ */
+public interface TailSamplingRule {
+
+  TailSamplingRule NONE = (queryExecutionInfo, fingerprint) -> false;
+
+  boolean keep(QueryExecutionInfo queryExecutionInfo, QueryFingerprint fingerprint);
+
+  /**
+   * Keeps the buffered spans when any query matches one of the given {@link StatementMatcher} rules.
+   */
+  static TailSamplingRule statements(Collection<String> rules) {
+    StatementMatcher matcher = StatementMatcher.compile(rules);
+    if (matcher.isEmpty()) {
+      return NONE;
+    }
+    return (queryExecutionInfo, fingerprint) -> {
+      for (QueryInfo queryInfo : queryExecutionInfo.getQueries()) {
+        if (matcher.matches(queryInfo.getQuery())) {
+          return true;
+        }
+      }
+      return false;
+    };
+  }
+}
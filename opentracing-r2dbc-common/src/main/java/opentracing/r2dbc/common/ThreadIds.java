@@ -0,0 +1,33 @@
+package opentracing.r2dbc.common;
+
+/**
+ * Per thread cache of the thread id string used in span tags. Callbacks run on a handful of event
+ * loop threads, so the id is almost always the one of the calling thread.
+ */
+final class ThreadIds {
+
+  private static final ThreadLocal<CachedId> CACHE = ThreadLocal.withInitial(() -> new CachedId(-1));
+
+  private ThreadIds() {
+  }
+
+  static String toString(long threadId) {
+    CachedId cached = CACHE.get();
+    if (cached.id != threadId) {
+      cached = new CachedId(threadId);
+      CACHE.set(cached);
+    }
+    return cached.string;
+  }
+
+  private static final class CachedId {
+
+    private final long id;
+    private final String string;
+
+    private CachedId(long id) {
+      this.id = id;
+      this.string = String.valueOf(id);
+    }
+  }
+}
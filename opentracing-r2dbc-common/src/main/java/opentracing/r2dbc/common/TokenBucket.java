@@ -0,0 +1,41 @@
+package opentracing.r2dbc.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket implemented as a generic cell rate algorithm: the only state is the
+ * theoretical arrival time of the next permit.
+ */
+final class TokenBucket {
+
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final AtomicLong theoreticalArrivalTime;
+
+  TokenBucket(double permitsPerSecond, double burst) {
+    if (permitsPerSecond <= 0) {
+      throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+    }
+    this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    this.toleranceNanos = (long) (intervalNanos * (Math.max(1, burst) - 1));
+    this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+  }
+
+  boolean tryAcquire() {
+    return tryAcquire(System.nanoTime());
+  }
+
+  boolean tryAcquire(long now) {
+    while (true) {
+      long tat = theoreticalArrivalTime.get();
+      long next = tat - now > 0 ? tat : now;
+      if (next - now > toleranceNanos) {
+        return false;
+      }
+      if (theoreticalArrivalTime.compareAndSet(tat, next + intervalNanos)) {
+        return true;
+      }
+    }
+  }
+}
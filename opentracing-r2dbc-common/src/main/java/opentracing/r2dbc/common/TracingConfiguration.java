@@ -4,12 +4,103 @@ import java.util.Set;
 
 public class TracingConfiguration {
 
+  public static final double DEFAULT_SLOW_QUERY_PERCENTILE = 99;
+  public static final double DEFAULT_SLOW_QUERY_FACTOR = 1.5;
+  public static final long DEFAULT_SLOW_QUERY_MIN_SAMPLES = 100;
+  public static final long DEFAULT_SLOW_QUERY_WINDOW_MS = 60_000;
+  public static final int DEFAULT_BATCH_MAX_STATEMENTS = 16;
+  public static final int DEFAULT_BATCH_MAX_STATEMENT_LENGTH = 4096;
+  public static final int DEFAULT_BIND_PARAMETER_MAX_VALUE_LENGTH = 64;
+  public static final int DEFAULT_BIND_PARAMETER_MAX_LENGTH = 1024;
+  public static final int DEFAULT_TAIL_SAMPLING_MAX_SPANS = 64;
+  public static final long DEFAULT_TAIL_SAMPLING_MAX_AGE_MS = 60_000;
+  public static final int DEFAULT_ERROR_FULL_DETAIL_PER_WINDOW = 10;
+  public static final long DEFAULT_ERROR_WINDOW_MS = 60_000;
+  public static final int DEFAULT_ERROR_MAX_FINGERPRINTS = 256;
+  public static final int DEFAULT_REPEATED_QUERY_MAX_TRACES = 1024;
+
   private boolean traceEnabled;
 
   private Set<String> ignoreStatements;
 
+  private volatile StatementMatcher ignoreStatementMatcher;
+
   private long slowQueryThresholdMs;
 
+  private SlowQueryMode slowQueryMode = SlowQueryMode.FIXED;
+
+  private double slowQueryPercentile = DEFAULT_SLOW_QUERY_PERCENTILE;
+
+  private double slowQueryFactor = DEFAULT_SLOW_QUERY_FACTOR;
+
+  private long slowQueryMinSamples = DEFAULT_SLOW_QUERY_MIN_SAMPLES;
+
+  private long slowQueryWindowMs = DEFAULT_SLOW_QUERY_WINDOW_MS;
+
+  private boolean normalizeStatements;
+
+  private boolean spanNameFromStatement;
+
+  private int statementCacheSize;
+
+  private int batchMaxStatements = DEFAULT_BATCH_MAX_STATEMENTS;
+
+  private int batchMaxStatementLength = DEFAULT_BATCH_MAX_STATEMENT_LENGTH;
+
+  private QuerySampler sampler = QuerySampler.ALWAYS;
+
+  private boolean captureBindParameters;
+
+  private int bindParameterMaxValueLength = DEFAULT_BIND_PARAMETER_MAX_VALUE_LENGTH;
+
+  private int bindParameterMaxLength = DEFAULT_BIND_PARAMETER_MAX_LENGTH;
+
+  private Set<String> bindParameterAllow;
+
+  private Set<String> bindParameterDeny;
+
+  private BindParameterMasker bindParameterMasker = BindParameterMasker.NONE;
+
+  private volatile BindParameterEncoder bindParameterEncoder;
+
+  private boolean resultStatistics;
+
+  private boolean tailSampling;
+
+  private int tailSamplingMaxSpans = DEFAULT_TAIL_SAMPLING_MAX_SPANS;
+
+  private long tailSamplingMaxAgeMs = DEFAULT_TAIL_SAMPLING_MAX_AGE_MS;
+
+  private TailSamplingRule tailSamplingRule = TailSamplingRule.NONE;
+
+  private SpanFinisher spanFinisher = SpanFinisher.SYNC;
+
+  private boolean errorFingerprinting;
+
+  private int errorFullDetailPerWindow = DEFAULT_ERROR_FULL_DETAIL_PER_WINDOW;
+
+  private long errorWindowMs = DEFAULT_ERROR_WINDOW_MS;
+
+  private int errorMaxFingerprints = DEFAULT_ERROR_MAX_FINGERPRINTS;
+
+  private int repeatedQueryThreshold;
+
+  private int repeatedQueryMaxTraces = DEFAULT_REPEATED_QUERY_MAX_TRACES;
+
+  private OverheadGovernor overheadGovernor;
+
+  private Set<String> metricsOnlyStatements;
+
+  private volatile StatementMatcher metricsOnlyStatementMatcher;
+
+  private AbandonedSpanReaper abandonedSpanReaper;
+
+  private StatementHeavyHitters statementHeavyHitters;
+
+  private ExplainPlanCapture explainPlanCapture;
+
+  private SqlCommenter sqlCommenter;
+
   public long getSlowQueryThresholdMs() {
     return slowQueryThresholdMs;
   }
@@ -18,6 +109,46 @@ public class TracingConfiguration {
     this.slowQueryThresholdMs = slowQueryThresholdMs;
   }
 
+  public SlowQueryMode getSlowQueryMode() {
+    return slowQueryMode;
+  }
+
+  public void setSlowQueryMode(SlowQueryMode slowQueryMode) {
+    this.slowQueryMode = slowQueryMode == null ? SlowQueryMode.FIXED : slowQueryMode;
+  }
+
+  public double getSlowQueryPercentile() {
+    return slowQueryPercentile;
+  }
+
+  public void setSlowQueryPercentile(double slowQueryPercentile) {
+    this.slowQueryPercentile = slowQueryPercentile;
+  }
+
+  public double getSlowQueryFactor() {
+    return slowQueryFactor;
+  }
+
+  public void setSlowQueryFactor(double slowQueryFactor) {
+    this.slowQueryFactor = slowQueryFactor;
+  }
+
+  public long getSlowQueryMinSamples() {
+    return slowQueryMinSamples;
+  }
+
+  public void setSlowQueryMinSamples(long slowQueryMinSamples) {
+    this.slowQueryMinSamples = slowQueryMinSamples;
+  }
+
+  public long getSlowQueryWindowMs() {
+    return slowQueryWindowMs;
+  }
+
+  public void setSlowQueryWindowMs(long slowQueryWindowMs) {
+    this.slowQueryWindowMs = slowQueryWindowMs;
+  }
+
   public boolean isTraceEnabled() {
     return traceEnabled;
   }
@@ -32,12 +163,370 @@ public class TracingConfiguration {
 
   public void setIgnoreStatements(Set<String> ignoreStatements) {
     this.ignoreStatements = ignoreStatements;
+    this.ignoreStatementMatcher = null;
+  }
+
+  public StatementMatcher getIgnoreStatementMatcher() {
+    StatementMatcher matcher = ignoreStatementMatcher;
+    if (matcher == null) {
+      matcher = StatementMatcher.compile(ignoreStatements);
+      ignoreStatementMatcher = matcher;
+    }
+    return matcher;
+  }
+
+  public boolean isNormalizeStatements() {
+    return normalizeStatements;
+  }
+
+  public void setNormalizeStatements(boolean normalizeStatements) {
+    this.normalizeStatements = normalizeStatements;
+  }
+
+  public boolean isSpanNameFromStatement() {
+    return spanNameFromStatement;
+  }
+
+  public void setSpanNameFromStatement(boolean spanNameFromStatement) {
+    this.spanNameFromStatement = spanNameFromStatement;
+  }
+
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+
+  public void setStatementCacheSize(int statementCacheSize) {
+    this.statementCacheSize = statementCacheSize;
+  }
+
+  /**
+   * Maximum number of distinct statements shown in the {@code db.statement} of a batch.
+   */
+  public int getBatchMaxStatements() {
+    return batchMaxStatements;
+  }
+
+  public void setBatchMaxStatements(int batchMaxStatements) {
+    this.batchMaxStatements = batchMaxStatements;
+  }
+
+  /**
+   * Maximum length, in UTF-8 bytes, of the {@code db.statement} of a batch.
+   */
+  public int getBatchMaxStatementLength() {
+    return batchMaxStatementLength;
+  }
+
+  public void setBatchMaxStatementLength(int batchMaxStatementLength) {
+    this.batchMaxStatementLength = batchMaxStatementLength;
+  }
+
+  public QuerySampler getSampler() {
+    return sampler;
+  }
+
+  public void setSampler(QuerySampler sampler) {
+    this.sampler = sampler == null ? QuerySampler.ALWAYS : sampler;
+  }
+
+  /**
+   * Whether the bind values of sampled queries are captured as {@code db.bindings}, see
+   * {@link BindParameterEncoder}.
+   */
+  public boolean isCaptureBindParameters() {
+    return captureBindParameters;
+  }
+
+  public void setCaptureBindParameters(boolean captureBindParameters) {
+    this.captureBindParameters = captureBindParameters;
+  }
+
+  public int getBindParameterMaxValueLength() {
+    return bindParameterMaxValueLength;
+  }
+
+  public void setBindParameterMaxValueLength(int bindParameterMaxValueLength) {
+    this.bindParameterMaxValueLength = bindParameterMaxValueLength;
+    this.bindParameterEncoder = null;
+  }
+
+  public int getBindParameterMaxLength() {
+    return bindParameterMaxLength;
+  }
+
+  public void setBindParameterMaxLength(int bindParameterMaxLength) {
+    this.bindParameterMaxLength = bindParameterMaxLength;
+    this.bindParameterEncoder = null;
+  }
+
+  /**
+   * Indexes or names of the only parameters to capture, all parameters when empty.
+   */
+  public Set<String> getBindParameterAllow() {
+    return bindParameterAllow;
+  }
+
+  public void setBindParameterAllow(Set<String> bindParameterAllow) {
+    this.bindParameterAllow = bindParameterAllow;
+    this.bindParameterEncoder = null;
+  }
+
+  /**
+   * Indexes or names of parameters whose values are always masked.
+   */
+  public Set<String> getBindParameterDeny() {
+    return bindParameterDeny;
+  }
+
+  public void setBindParameterDeny(Set<String> bindParameterDeny) {
+    this.bindParameterDeny = bindParameterDeny;
+    this.bindParameterEncoder = null;
+  }
+
+  public BindParameterMasker getBindParameterMasker() {
+    return bindParameterMasker;
+  }
+
+  public void setBindParameterMasker(BindParameterMasker bindParameterMasker) {
+    this.bindParameterMasker = bindParameterMasker == null ? BindParameterMasker.NONE : bindParameterMasker;
+    this.bindParameterEncoder = null;
+  }
+
+  public BindParameterEncoder getBindParameterEncoder() {
+    BindParameterEncoder encoder = bindParameterEncoder;
+    if (encoder == null) {
+      encoder = new BindParameterEncoder(bindParameterMaxValueLength, bindParameterMaxLength,
+          bindParameterAllow, bindParameterDeny, bindParameterMasker);
+      bindParameterEncoder = encoder;
+    }
+    return encoder;
+  }
+
+  /**
+   * Whether row streaming is measured. Query spans are then finished once their result was
+   * consumed instead of when the execution completes.
+   */
+  public boolean isResultStatistics() {
+    return resultStatistics;
+  }
+
+  public void setResultStatistics(boolean resultStatistics) {
+    this.resultStatistics = resultStatistics;
+  }
+
+  public boolean isTailSampling() {
+    return tailSampling;
+  }
+
+  public void setTailSampling(boolean tailSampling) {
+    this.tailSampling = tailSampling;
+  }
+
+  public int getTailSamplingMaxSpans() {
+    return tailSamplingMaxSpans;
+  }
+
+  public void setTailSamplingMaxSpans(int tailSamplingMaxSpans) {
+    this.tailSamplingMaxSpans = tailSamplingMaxSpans;
+  }
+
+  public long getTailSamplingMaxAgeMs() {
+    return tailSamplingMaxAgeMs;
+  }
+
+  public void setTailSamplingMaxAgeMs(long tailSamplingMaxAgeMs) {
+    this.tailSamplingMaxAgeMs = tailSamplingMaxAgeMs;
+  }
+
+  public TailSamplingRule getTailSamplingRule() {
+    return tailSamplingRule;
+  }
+
+  public void setTailSamplingRule(TailSamplingRule tailSamplingRule) {
+    this.tailSamplingRule = tailSamplingRule == null ? TailSamplingRule.NONE : tailSamplingRule;
+  }
+
+  public SpanFinisher getSpanFinisher() {
+    return spanFinisher;
+  }
+
+  /**
+   * Sets how spans are finished, e.g. an {@link AsyncSpanFinisher} to finish them off the event loop.
+   */
+  public void setSpanFinisher(SpanFinisher spanFinisher) {
+    this.spanFinisher = spanFinisher == null ? SpanFinisher.SYNC : spanFinisher;
+  }
+
+  public boolean isErrorFingerprinting() {
+    return errorFingerprinting;
+  }
+
+  /**
+   * Tags a fingerprint on failed spans and only logs the first errors of a fingerprint per window in full.
+   */
+  public void setErrorFingerprinting(boolean errorFingerprinting) {
+    this.errorFingerprinting = errorFingerprinting;
+  }
+
+  public int getErrorFullDetailPerWindow() {
+    return errorFullDetailPerWindow;
+  }
+
+  public void setErrorFullDetailPerWindow(int errorFullDetailPerWindow) {
+    this.errorFullDetailPerWindow = errorFullDetailPerWindow;
+  }
+
+  public long getErrorWindowMs() {
+    return errorWindowMs;
+  }
+
+  public void setErrorWindowMs(long errorWindowMs) {
+    this.errorWindowMs = errorWindowMs;
+  }
+
+  public int getErrorMaxFingerprints() {
+    return errorMaxFingerprints;
+  }
+
+  public void setErrorMaxFingerprints(int errorMaxFingerprints) {
+    this.errorMaxFingerprints = errorMaxFingerprints;
+  }
+
+  public int getRepeatedQueryThreshold() {
+    return repeatedQueryThreshold;
+  }
+
+  /**
+   * Tags the parent span once a statement runs more than this many times below it, 0 to disable.
+   */
+  public void setRepeatedQueryThreshold(int repeatedQueryThreshold) {
+    this.repeatedQueryThreshold = repeatedQueryThreshold;
+  }
+
+  public int getRepeatedQueryMaxTraces() {
+    return repeatedQueryMaxTraces;
+  }
+
+  public void setRepeatedQueryMaxTraces(int repeatedQueryMaxTraces) {
+    this.repeatedQueryMaxTraces = repeatedQueryMaxTraces;
+  }
+
+  public OverheadGovernor getOverheadGovernor() {
+    return overheadGovernor;
+  }
+
+  /**
+   * Steps down to cheaper tiers while the listener exceeds its overhead budget, null to disable.
+   */
+  public void setOverheadGovernor(OverheadGovernor overheadGovernor) {
+    this.overheadGovernor = overheadGovernor;
+  }
+
+  public Set<String> getMetricsOnlyStatements() {
+    return metricsOnlyStatements;
+  }
+
+  /**
+   * Queries matching these rules, same syntax as the ignore statements, only update the query metrics
+   * and never get a span. Without a {@link QueryMetricsRecorder} they are traced like any other query.
+   */
+  public void setMetricsOnlyStatements(Set<String> metricsOnlyStatements) {
+    this.metricsOnlyStatements = metricsOnlyStatements;
+    this.metricsOnlyStatementMatcher = null;
+  }
+
+  public StatementMatcher getMetricsOnlyStatementMatcher() {
+    StatementMatcher matcher = metricsOnlyStatementMatcher;
+    if (matcher == null) {
+      matcher = StatementMatcher.compile(metricsOnlyStatements);
+      metricsOnlyStatementMatcher = matcher;
+    }
+    return matcher;
+  }
+
+  public AbandonedSpanReaper getAbandonedSpanReaper() {
+    return abandonedSpanReaper;
+  }
+
+  /**
+   * Finishes connection, transaction and query spans still open after a maximum age, null to disable.
+   */
+  public void setAbandonedSpanReaper(AbandonedSpanReaper abandonedSpanReaper) {
+    this.abandonedSpanReaper = abandonedSpanReaper;
+  }
+
+  public StatementHeavyHitters getStatementHeavyHitters() {
+    return statementHeavyHitters;
+  }
+
+  /**
+   * Tracks the statements using the most database time, executions and rows, null to disable.
+   */
+  public void setStatementHeavyHitters(StatementHeavyHitters statementHeavyHitters) {
+    this.statementHeavyHitters = statementHeavyHitters;
+  }
+
+  public ExplainPlanCapture getExplainPlanCapture() {
+    return explainPlanCapture;
+  }
+
+  /**
+   * Captures the plans of slow statements asynchronously and tags them on the query spans, null to disable.
+   */
+  public void setExplainPlanCapture(ExplainPlanCapture explainPlanCapture) {
+    this.explainPlanCapture = explainPlanCapture;
+  }
+
+  public SqlCommenter getSqlCommenter() {
+    return sqlCommenter;
+  }
+
+  /**
+   * Comments statements with the trace context, which also needs it installed on the proxy, null to disable.
+   */
+  public void setSqlCommenter(SqlCommenter sqlCommenter) {
+    this.sqlCommenter = sqlCommenter;
   }
 
   public static final class TracingConfigurationBuilder {
     private boolean traceEnabled;
     private Set<String> ignoreStatements;
     private long slowQueryThresholdMs;
+    private SlowQueryMode slowQueryMode;
+    private double slowQueryPercentile = DEFAULT_SLOW_QUERY_PERCENTILE;
+    private double slowQueryFactor = DEFAULT_SLOW_QUERY_FACTOR;
+    private long slowQueryMinSamples = DEFAULT_SLOW_QUERY_MIN_SAMPLES;
+    private long slowQueryWindowMs = DEFAULT_SLOW_QUERY_WINDOW_MS;
+    private boolean normalizeStatements;
+    private boolean spanNameFromStatement;
+    private int statementCacheSize;
+    private int batchMaxStatements = DEFAULT_BATCH_MAX_STATEMENTS;
+    private int batchMaxStatementLength = DEFAULT_BATCH_MAX_STATEMENT_LENGTH;
+    private QuerySampler sampler;
+    private boolean captureBindParameters;
+    private int bindParameterMaxValueLength = DEFAULT_BIND_PARAMETER_MAX_VALUE_LENGTH;
+    private int bindParameterMaxLength = DEFAULT_BIND_PARAMETER_MAX_LENGTH;
+    private Set<String> bindParameterAllow;
+    private Set<String> bindParameterDeny;
+    private BindParameterMasker bindParameterMasker;
+    private boolean resultStatistics;
+    private boolean tailSampling;
+    private int tailSamplingMaxSpans = DEFAULT_TAIL_SAMPLING_MAX_SPANS;
+    private long tailSamplingMaxAgeMs = DEFAULT_TAIL_SAMPLING_MAX_AGE_MS;
+    private TailSamplingRule tailSamplingRule;
+    private SpanFinisher spanFinisher;
+    private boolean errorFingerprinting;
+    private int errorFullDetailPerWindow = DEFAULT_ERROR_FULL_DETAIL_PER_WINDOW;
+    private long errorWindowMs = DEFAULT_ERROR_WINDOW_MS;
+    private int errorMaxFingerprints = DEFAULT_ERROR_MAX_FINGERPRINTS;
+    private int repeatedQueryThreshold;
+    private int repeatedQueryMaxTraces = DEFAULT_REPEATED_QUERY_MAX_TRACES;
+    private OverheadGovernor overheadGovernor;
+    private Set<String> metricsOnlyStatements;
+    private AbandonedSpanReaper abandonedSpanReaper;
+    private StatementHeavyHitters statementHeavyHitters;
+    private ExplainPlanCapture explainPlanCapture;
+    private SqlCommenter sqlCommenter;
 
     private TracingConfigurationBuilder() {
     }
@@ -46,6 +535,52 @@ public class TracingConfiguration {
       return new TracingConfigurationBuilder();
     }
 
+    /**
+     * Starts from a copy of the given configuration.
+     */
+    public static TracingConfigurationBuilder aTracingConfiguration(TracingConfiguration configuration) {
+      TracingConfigurationBuilder builder = new TracingConfigurationBuilder();
+      builder.traceEnabled = configuration.traceEnabled;
+      builder.ignoreStatements = configuration.ignoreStatements;
+      builder.slowQueryThresholdMs = configuration.slowQueryThresholdMs;
+      builder.slowQueryMode = configuration.slowQueryMode;
+      builder.slowQueryPercentile = configuration.slowQueryPercentile;
+      builder.slowQueryFactor = configuration.slowQueryFactor;
+      builder.slowQueryMinSamples = configuration.slowQueryMinSamples;
+      builder.slowQueryWindowMs = configuration.slowQueryWindowMs;
+      builder.normalizeStatements = configuration.normalizeStatements;
+      builder.spanNameFromStatement = configuration.spanNameFromStatement;
+      builder.statementCacheSize = configuration.statementCacheSize;
+      builder.batchMaxStatements = configuration.batchMaxStatements;
+      builder.batchMaxStatementLength = configuration.batchMaxStatementLength;
+      builder.sampler = configuration.sampler;
+      builder.captureBindParameters = configuration.captureBindParameters;
+      builder.bindParameterMaxValueLength = configuration.bindParameterMaxValueLength;
+      builder.bindParameterMaxLength = configuration.bindParameterMaxLength;
+      builder.bindParameterAllow = configuration.bindParameterAllow;
+      builder.bindParameterDeny = configuration.bindParameterDeny;
+      builder.bindParameterMasker = configuration.bindParameterMasker;
+      builder.resultStatistics = configuration.resultStatistics;
+      builder.tailSampling = configuration.tailSampling;
+      builder.tailSamplingMaxSpans = configuration.tailSamplingMaxSpans;
+      builder.tailSamplingMaxAgeMs = configuration.tailSamplingMaxAgeMs;
+      builder.tailSamplingRule = configuration.tailSamplingRule;
+      builder.spanFinisher = configuration.spanFinisher;
+      builder.errorFingerprinting = configuration.errorFingerprinting;
+      builder.errorFullDetailPerWindow = configuration.errorFullDetailPerWindow;
+      builder.errorWindowMs = configuration.errorWindowMs;
+      builder.errorMaxFingerprints = configuration.errorMaxFingerprints;
+      builder.repeatedQueryThreshold = configuration.repeatedQueryThreshold;
+      builder.repeatedQueryMaxTraces = configuration.repeatedQueryMaxTraces;
+      builder.overheadGovernor = configuration.overheadGovernor;
+      builder.metricsOnlyStatements = configuration.metricsOnlyStatements;
+      builder.abandonedSpanReaper = configuration.abandonedSpanReaper;
+      builder.statementHeavyHitters = configuration.statementHeavyHitters;
+      builder.explainPlanCapture = configuration.explainPlanCapture;
+      builder.sqlCommenter = configuration.sqlCommenter;
+      return builder;
+    }
+
     public TracingConfigurationBuilder withTraceEnabled(boolean traceEnabled) {
       this.traceEnabled = traceEnabled;
       return this;
@@ -61,11 +596,221 @@ public class TracingConfiguration {
       return this;
     }
 
+    public TracingConfigurationBuilder withSlowQueryMode(SlowQueryMode slowQueryMode) {
+      this.slowQueryMode = slowQueryMode;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withSlowQueryPercentile(double slowQueryPercentile) {
+      this.slowQueryPercentile = slowQueryPercentile;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withSlowQueryFactor(double slowQueryFactor) {
+      this.slowQueryFactor = slowQueryFactor;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withSlowQueryMinSamples(long slowQueryMinSamples) {
+      this.slowQueryMinSamples = slowQueryMinSamples;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withSlowQueryWindowMs(long slowQueryWindowMs) {
+      this.slowQueryWindowMs = slowQueryWindowMs;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withNormalizeStatements(boolean normalizeStatements) {
+      this.normalizeStatements = normalizeStatements;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withSpanNameFromStatement(boolean spanNameFromStatement) {
+      this.spanNameFromStatement = spanNameFromStatement;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withStatementCacheSize(int statementCacheSize) {
+      this.statementCacheSize = statementCacheSize;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withBatchMaxStatements(int batchMaxStatements) {
+      this.batchMaxStatements = batchMaxStatements;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withBatchMaxStatementLength(int batchMaxStatementLength) {
+      this.batchMaxStatementLength = batchMaxStatementLength;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withSampler(QuerySampler sampler) {
+      this.sampler = sampler;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withCaptureBindParameters(boolean captureBindParameters) {
+      this.captureBindParameters = captureBindParameters;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withBindParameterMaxValueLength(int bindParameterMaxValueLength) {
+      this.bindParameterMaxValueLength = bindParameterMaxValueLength;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withBindParameterMaxLength(int bindParameterMaxLength) {
+      this.bindParameterMaxLength = bindParameterMaxLength;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withBindParameterAllow(Set<String> bindParameterAllow) {
+      this.bindParameterAllow = bindParameterAllow;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withBindParameterDeny(Set<String> bindParameterDeny) {
+      this.bindParameterDeny = bindParameterDeny;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withBindParameterMasker(BindParameterMasker bindParameterMasker) {
+      this.bindParameterMasker = bindParameterMasker;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withResultStatistics(boolean resultStatistics) {
+      this.resultStatistics = resultStatistics;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withTailSampling(boolean tailSampling) {
+      this.tailSampling = tailSampling;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withTailSamplingMaxSpans(int tailSamplingMaxSpans) {
+      this.tailSamplingMaxSpans = tailSamplingMaxSpans;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withTailSamplingMaxAgeMs(long tailSamplingMaxAgeMs) {
+      this.tailSamplingMaxAgeMs = tailSamplingMaxAgeMs;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withTailSamplingRule(TailSamplingRule tailSamplingRule) {
+      this.tailSamplingRule = tailSamplingRule;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withSpanFinisher(SpanFinisher spanFinisher) {
+      this.spanFinisher = spanFinisher;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withErrorFingerprinting(boolean errorFingerprinting) {
+      this.errorFingerprinting = errorFingerprinting;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withErrorFullDetailPerWindow(int errorFullDetailPerWindow) {
+      this.errorFullDetailPerWindow = errorFullDetailPerWindow;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withErrorWindowMs(long errorWindowMs) {
+      this.errorWindowMs = errorWindowMs;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withErrorMaxFingerprints(int errorMaxFingerprints) {
+      this.errorMaxFingerprints = errorMaxFingerprints;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withRepeatedQueryThreshold(int repeatedQueryThreshold) {
+      this.repeatedQueryThreshold = repeatedQueryThreshold;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withRepeatedQueryMaxTraces(int repeatedQueryMaxTraces) {
+      this.repeatedQueryMaxTraces = repeatedQueryMaxTraces;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withOverheadGovernor(OverheadGovernor overheadGovernor) {
+      this.overheadGovernor = overheadGovernor;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withMetricsOnlyStatements(Set<String> metricsOnlyStatements) {
+      this.metricsOnlyStatements = metricsOnlyStatements;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withAbandonedSpanReaper(AbandonedSpanReaper abandonedSpanReaper) {
+      this.abandonedSpanReaper = abandonedSpanReaper;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withStatementHeavyHitters(StatementHeavyHitters statementHeavyHitters) {
+      this.statementHeavyHitters = statementHeavyHitters;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withExplainPlanCapture(ExplainPlanCapture explainPlanCapture) {
+      this.explainPlanCapture = explainPlanCapture;
+      return this;
+    }
+
+    public TracingConfigurationBuilder withSqlCommenter(SqlCommenter sqlCommenter) {
+      this.sqlCommenter = sqlCommenter;
+      return this;
+    }
+
     public TracingConfiguration build() {
       TracingConfiguration tracingConfiguration = new TracingConfiguration();
       tracingConfiguration.setTraceEnabled(traceEnabled);
       tracingConfiguration.setIgnoreStatements(ignoreStatements);
       tracingConfiguration.setSlowQueryThresholdMs(slowQueryThresholdMs);
+      tracingConfiguration.setSlowQueryMode(slowQueryMode);
+      tracingConfiguration.setSlowQueryPercentile(slowQueryPercentile);
+      tracingConfiguration.setSlowQueryFactor(slowQueryFactor);
+      tracingConfiguration.setSlowQueryMinSamples(slowQueryMinSamples);
+      tracingConfiguration.setSlowQueryWindowMs(slowQueryWindowMs);
+      tracingConfiguration.setNormalizeStatements(normalizeStatements);
+      tracingConfiguration.setSpanNameFromStatement(spanNameFromStatement);
+      tracingConfiguration.setStatementCacheSize(statementCacheSize);
+      tracingConfiguration.setBatchMaxStatements(batchMaxStatements);
+      tracingConfiguration.setBatchMaxStatementLength(batchMaxStatementLength);
+      tracingConfiguration.setSampler(sampler);
+      tracingConfiguration.setCaptureBindParameters(captureBindParameters);
+      tracingConfiguration.setBindParameterMaxValueLength(bindParameterMaxValueLength);
+      tracingConfiguration.setBindParameterMaxLength(bindParameterMaxLength);
+      tracingConfiguration.setBindParameterAllow(bindParameterAllow);
+      tracingConfiguration.setBindParameterDeny(bindParameterDeny);
+      tracingConfiguration.setBindParameterMasker(bindParameterMasker);
+      tracingConfiguration.setResultStatistics(resultStatistics);
+      tracingConfiguration.setTailSampling(tailSampling);
+      tracingConfiguration.setTailSamplingMaxSpans(tailSamplingMaxSpans);
+      tracingConfiguration.setTailSamplingMaxAgeMs(tailSamplingMaxAgeMs);
+      tracingConfiguration.setTailSamplingRule(tailSamplingRule);
+      tracingConfiguration.setSpanFinisher(spanFinisher);
+      tracingConfiguration.setErrorFingerprinting(errorFingerprinting);
+      tracingConfiguration.setErrorFullDetailPerWindow(errorFullDetailPerWindow);
+      tracingConfiguration.setErrorWindowMs(errorWindowMs);
+      tracingConfiguration.setErrorMaxFingerprints(errorMaxFingerprints);
+      tracingConfiguration.setRepeatedQueryThreshold(repeatedQueryThreshold);
+      tracingConfiguration.setRepeatedQueryMaxTraces(repeatedQueryMaxTraces);
+      tracingConfiguration.setOverheadGovernor(overheadGovernor);
+      tracingConfiguration.setMetricsOnlyStatements(metricsOnlyStatements);
+      tracingConfiguration.setAbandonedSpanReaper(abandonedSpanReaper);
+      tracingConfiguration.setStatementHeavyHitters(statementHeavyHitters);
+      tracingConfiguration.setExplainPlanCapture(explainPlanCapture);
+      tracingConfiguration.setSqlCommenter(sqlCommenter);
       return tracingConfiguration;
     }
   }
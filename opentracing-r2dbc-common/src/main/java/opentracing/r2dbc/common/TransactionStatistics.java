@@ -0,0 +1,60 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.r2dbc.proxy.core.ExecutionType;
+
+import static opentracing.r2dbc.common.TagConstants.*;
+
+/**
+ * Totals of the queries executed within one transaction, kept in the connection {@code ValueStore}
+ * and tagged on the transaction span when it ends. A connection runs its queries one after the
+ * other, so plain fields are enough.
+ */
+final class TransactionStatistics {
+
+  final long startNanos;
+  int queries;
+  int batches;
+  int failedQueries;
+  long rows;
+  long executeNanos;
+  long maxExecuteNanos;
+  String slowestStatement;
+
+  TransactionStatistics(long startNanos) {
+    this.startNanos = startNanos;
+  }
+
+  void onQuery(ExecutionType type, boolean success, long executeNanos, QueryFingerprint fingerprint) {
+    if (ExecutionType.BATCH == type) {
+      batches++;
+    } else {
+      queries++;
+    }
+    if (!success) {
+      failedQueries++;
+    }
+    this.executeNanos += executeNanos;
+    if (executeNanos > maxExecuteNanos || queries + batches == 1) {
+      maxExecuteNanos = executeNanos;
+      slowestStatement = fingerprint == null ? null : fingerprint.getFingerprint();
+    }
+  }
+
+  void tag(Span span, long endNanos) {
+    long wallNanos = endNanos - startNanos;
+    TAG_QUERY_COUNT.set(span, queries);
+    TAG_BATCH_COUNT.set(span, batches);
+    TAG_FAILED_QUERY_COUNT.set(span, failedQueries);
+    TAG_MAPPED_ROW_COUNT.set(span, rows);
+    TAG_DB_TIME_MS.set(span, executeNanos / 1_000_000.0);
+    TAG_MAX_QUERY_TIME_MS.set(span, maxExecuteNanos / 1_000_000.0);
+    TAG_WALL_TIME_MS.set(span, wallNanos / 1_000_000.0);
+    if (wallNanos > 0) {
+      TAG_DB_TIME_RATIO.set(span, Math.min(1.0, (double) executeNanos / wallNanos));
+    }
+    if (slowestStatement != null) {
+      TAG_SLOWEST_STATEMENT.set(span, slowestStatement);
+    }
+  }
+}
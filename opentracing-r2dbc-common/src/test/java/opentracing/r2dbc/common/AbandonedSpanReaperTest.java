@@ -0,0 +1,136 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AbandonedSpanReaperTest {
+
+  private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final MockTracer mockTracer = new MockTracer();
+
+  @Test
+  public void testReapAfterMaxAge() {
+    AbandonedSpanReaper reaper = new AbandonedSpanReaper(100, 10, false);
+    long now = System.nanoTime();
+    AbandonedSpanReaper.Entry leaked = reaper.register(mockTracer.buildSpan("leaked").start(),
+        AbandonedSpanReaper.Kind.CONNECTION, null, now);
+    AbandonedSpanReaper.Entry closed = reaper.register(mockTracer.buildSpan("closed").start(),
+        AbandonedSpanReaper.Kind.TRANSACTION, null, now);
+    Assert.assertEquals(1, reaper.getOpenSpans(AbandonedSpanReaper.Kind.CONNECTION));
+    Assert.assertEquals(1, reaper.getOpenSpans(AbandonedSpanReaper.Kind.TRANSACTION));
+
+    reaper.tick(now + TICK_NANOS * 5);
+    Assert.assertTrue(reaper.complete(closed));
+    Assert.assertTrue(mockTracer.finishedSpans().isEmpty());
+
+    reaper.tick(now + TICK_NANOS * 11);
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1, spans.size());
+    Assert.assertEquals("leaked", spans.get(0).operationName());
+    Assert.assertEquals(true, spans.get(0).tags().get("abandoned"));
+    Assert.assertEquals(AbandonedSpanReaper.REASON_MAX_AGE, spans.get(0).tags().get("abandoned.reason"));
+    Assert.assertFalse(reaper.complete(leaked));
+    Assert.assertEquals(0, reaper.getOpenSpans(AbandonedSpanReaper.Kind.CONNECTION));
+    Assert.assertEquals(0, reaper.getOpenSpans(AbandonedSpanReaper.Kind.TRANSACTION));
+    Assert.assertEquals(1, reaper.getAbandonedSpans(AbandonedSpanReaper.Kind.CONNECTION));
+    Assert.assertEquals(0, reaper.getAbandonedSpans(AbandonedSpanReaper.Kind.TRANSACTION));
+  }
+
+  @Test
+  public void testMaxAgeBeyondWheel() {
+    AbandonedSpanReaper reaper = new AbandonedSpanReaper(AbandonedSpanReaper.WHEEL_SIZE * 25, 10, false);
+    long now = System.nanoTime();
+    reaper.register(mockTracer.buildSpan("leaked").start(), AbandonedSpanReaper.Kind.QUERY, null, now);
+    reaper.tick(now);
+
+    reaper.tick(now + TICK_NANOS * AbandonedSpanReaper.WHEEL_SIZE * 2);
+    Assert.assertTrue(mockTracer.finishedSpans().isEmpty());
+
+    reaper.tick(now + TICK_NANOS * (AbandonedSpanReaper.WHEEL_SIZE * 5 / 2 + 1));
+    Assert.assertEquals(1, mockTracer.finishedSpans().size());
+    Assert.assertEquals(1, reaper.getAbandonedSpans(AbandonedSpanReaper.Kind.QUERY));
+  }
+
+  @Test
+  public void testReapCollectedOwner() throws InterruptedException {
+    AbandonedSpanReaper reaper = new AbandonedSpanReaper(AbandonedSpanReaper.DEFAULT_MAX_AGE_MS, 10, false);
+    long now = System.nanoTime();
+    Object owner = new Object();
+    reaper.register(mockTracer.buildSpan("leaked").start(), AbandonedSpanReaper.Kind.CONNECTION, owner, now);
+    reaper.tick(now);
+    Assert.assertTrue(mockTracer.finishedSpans().isEmpty());
+
+    owner = null;
+    for (int i = 0; i < 50 && mockTracer.finishedSpans().isEmpty(); i++) {
+      System.gc();
+      Thread.sleep(10);
+      reaper.tick(now);
+    }
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1, spans.size());
+    Assert.assertEquals(AbandonedSpanReaper.REASON_COLLECTED, spans.get(0).tags().get("abandoned.reason"));
+  }
+
+  @Test
+  public void testReapCollectedOwnerOfSpanWithoutExpiry() throws InterruptedException {
+    AbandonedSpanReaper reaper = new AbandonedSpanReaper(100, 10, false);
+    long now = System.nanoTime();
+    Object owner = new Object();
+    // the entry is dropped along with the owner, as by a leaked connection
+    reaper.register(mockTracer.buildSpan("leaked").start(), AbandonedSpanReaper.Kind.CONNECTION, owner, false,
+        SpanFinisher.SYNC, now);
+    reaper.tick(now);
+
+    owner = null;
+    for (int i = 0; i < 50 && mockTracer.finishedSpans().isEmpty(); i++) {
+      System.gc();
+      Thread.sleep(10);
+      reaper.tick(now);
+    }
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1, spans.size());
+    Assert.assertEquals(AbandonedSpanReaper.REASON_COLLECTED, spans.get(0).tags().get("abandoned.reason"));
+    Assert.assertEquals(0, reaper.getOpenSpans(AbandonedSpanReaper.Kind.CONNECTION));
+  }
+
+  @Test
+  public void testSpanWithoutExpiryAndSpanFinisher() {
+    AbandonedSpanReaper reaper = new AbandonedSpanReaper(100, 10, false);
+    List<Span> finished = new ArrayList<>();
+    SpanFinisher spanFinisher = (span, thrown, finishMicros) -> {
+      finished.add(span);
+      SpanFinisher.SYNC.finish(span, thrown, finishMicros);
+    };
+    long now = System.nanoTime();
+    Object owner = new Object();
+    reaper.register(mockTracer.buildSpan("pooled").start(), AbandonedSpanReaper.Kind.CONNECTION, owner, false,
+        spanFinisher, now);
+    reaper.register(mockTracer.buildSpan("leaked").start(), AbandonedSpanReaper.Kind.QUERY, null, true,
+        spanFinisher, now);
+
+    reaper.tick(now + TICK_NANOS * AbandonedSpanReaper.WHEEL_SIZE * 2);
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1, spans.size());
+    Assert.assertEquals("leaked", spans.get(0).operationName());
+    Assert.assertEquals(Collections.singletonList(spans.get(0)), finished);
+    Assert.assertEquals(1, reaper.getOpenSpans(AbandonedSpanReaper.Kind.CONNECTION));
+    Assert.assertNotNull(owner);
+  }
+
+  @Test
+  public void testRegisterAfterClose() {
+    AbandonedSpanReaper reaper = new AbandonedSpanReaper(100, 10);
+    reaper.close();
+    Assert.assertNull(reaper.register(mockTracer.buildSpan("late").start(), AbandonedSpanReaper.Kind.QUERY, null));
+    Assert.assertTrue(reaper.complete(null));
+  }
+}
@@ -0,0 +1,71 @@
+package opentracing.r2dbc.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveSlowQueryDetectorTest {
+
+  private static final QueryFingerprint LOOKUP = QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 1");
+  private static final QueryFingerprint REPORT = QueryFingerprinter.fingerprint("SELECT count(*) FROM orders");
+
+  @Test
+  public void testBaselinePerStatement() {
+    AdaptiveSlowQueryDetector detector = new AdaptiveSlowQueryDetector(99, 1.5, 100, 60_000);
+    long now = 0;
+    for (int i = 1; i <= 100; i++) {
+      Assert.assertNull(detector.observe(LOOKUP, millis(5), now));
+      Assert.assertNull(detector.observe(REPORT, millis(2000), now));
+    }
+
+    AdaptiveSlowQueryDetector.Baseline lookup = detector.observe(LOOKUP, millis(50), now);
+    Assert.assertNotNull(lookup);
+    Assert.assertTrue(lookup.isSlow(millis(50)));
+    Assert.assertEquals(100.0, lookup.percentileOf(millis(50)), 0);
+
+    AdaptiveSlowQueryDetector.Baseline report = detector.observe(REPORT, millis(2100), now);
+    Assert.assertFalse(report.isSlow(millis(2100)));
+    Assert.assertEquals(0.0, report.percentileOf(millis(50)), 0);
+  }
+
+  @Test
+  public void testBaselineRollsOverAfterWindow() {
+    AdaptiveSlowQueryDetector detector = new AdaptiveSlowQueryDetector(99, 1.5, 10, 1000);
+    for (int i = 0; i < 10; i++) {
+      detector.observe(LOOKUP, millis(5), 0);
+    }
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(detector.observe(LOOKUP, millis(100), millis(10)).isSlow(millis(100)));
+    }
+    Assert.assertTrue(detector.observe(LOOKUP, millis(100), millis(2000)).isSlow(millis(100)));
+    Assert.assertFalse(detector.observe(LOOKUP, millis(100), millis(2000)).isSlow(millis(100)));
+  }
+
+  @Test
+  public void testStatementLimit() {
+    AdaptiveSlowQueryDetector detector = new AdaptiveSlowQueryDetector(99, 1.5, 1, 60_000, 1);
+    detector.observe(LOOKUP, millis(5), 0);
+    Assert.assertNotNull(detector.observe(LOOKUP, millis(5), 0));
+    Assert.assertNull(detector.observe(REPORT, millis(5), 0));
+    Assert.assertNull(detector.observe(REPORT, millis(5), 0));
+  }
+
+  @Test
+  public void testIdleStatementIsEvicted() {
+    AdaptiveSlowQueryDetector detector = new AdaptiveSlowQueryDetector(99, 1.5, 1, 1000, 1);
+    long now = System.nanoTime();
+    detector.observe(LOOKUP, millis(5), now);
+    Assert.assertNull(detector.observe(REPORT, millis(5), now + millis(500)));
+    Assert.assertNull(detector.observe(REPORT, millis(5), now + millis(500)));
+
+    now += millis(1500);
+    Assert.assertNull(detector.observe(REPORT, millis(5), now));
+    Assert.assertNotNull(detector.observe(REPORT, millis(5), now));
+    Assert.assertNull(detector.observe(LOOKUP, millis(5), now));
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
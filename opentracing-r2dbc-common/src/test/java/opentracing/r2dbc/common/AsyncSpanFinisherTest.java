@@ -0,0 +1,121 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class AsyncSpanFinisherTest {
+
+  private final MockTracer mockTracer = new MockTracer();
+  private final CountDownLatch workerBlocked = new CountDownLatch(1);
+  private final CountDownLatch releaseWorker = new CountDownLatch(1);
+
+  @Before
+  public void before() {
+    mockTracer.reset();
+  }
+
+  @Test
+  public void testFinishWithError() {
+    Exception error = new RuntimeException();
+    AsyncSpanFinisher finisher = new AsyncSpanFinisher();
+    finisher.finish(mockTracer.buildSpan("query").start(), error, 42);
+    finisher.close();
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1, spans.size());
+    Assert.assertEquals(42, spans.get(0).finishMicros());
+    Assert.assertEquals(true, spans.get(0).tags().get("error"));
+    Assert.assertEquals(error, spans.get(0).logEntries().get(0).fields().get("error.object"));
+    Assert.assertEquals(1, finisher.getFinishedSpans());
+    Assert.assertEquals(0, finisher.getPendingSpans());
+  }
+
+  @Test
+  public void testFastSpanNeverFinishesBeforeItStarted() {
+    AsyncSpanFinisher finisher = new AsyncSpanFinisher();
+    for (int i = 0; i < 1000; i++) {
+      finisher.finish(mockTracer.buildSpan("query").start());
+    }
+    finisher.close();
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1000, spans.size());
+    for (MockSpan span : spans) {
+      Assert.assertTrue(span.finishMicros() >= span.startMicros());
+    }
+  }
+
+  @Test
+  public void testDropNew() throws InterruptedException {
+    AsyncSpanFinisher finisher = blockedFinisher(AsyncSpanFinisher.OverflowPolicy.DROP_NEW);
+    finisher.finish(mockTracer.buildSpan("a").start());
+    finisher.finish(mockTracer.buildSpan("b").start());
+    finisher.finish(mockTracer.buildSpan("c").start());
+    releaseWorker.countDown();
+    finisher.close();
+
+    Assert.assertEquals("[a, b]", finishedSpanNames());
+    Assert.assertEquals(1, finisher.getDroppedSpans());
+  }
+
+  @Test
+  public void testDropOldest() throws InterruptedException {
+    AsyncSpanFinisher finisher = blockedFinisher(AsyncSpanFinisher.OverflowPolicy.DROP_OLDEST);
+    finisher.finish(mockTracer.buildSpan("a").start());
+    finisher.finish(mockTracer.buildSpan("b").start());
+    finisher.finish(mockTracer.buildSpan("c").start());
+    releaseWorker.countDown();
+    finisher.close();
+
+    Assert.assertEquals("[b, c]", finishedSpanNames());
+    Assert.assertEquals(1, finisher.getDroppedSpans());
+  }
+
+  @Test
+  public void testBlock() throws InterruptedException {
+    AsyncSpanFinisher finisher = blockedFinisher(AsyncSpanFinisher.OverflowPolicy.BLOCK);
+    finisher.finish(mockTracer.buildSpan("a").start());
+    finisher.finish(mockTracer.buildSpan("b").start());
+    Thread producer = new Thread(() -> finisher.finish(mockTracer.buildSpan("c").start()));
+    producer.start();
+    producer.join(50);
+    Assert.assertTrue(producer.isAlive());
+    releaseWorker.countDown();
+    producer.join();
+    finisher.close();
+
+    Assert.assertEquals("[a, b, c]", finishedSpanNames());
+    Assert.assertEquals(0, finisher.getDroppedSpans());
+  }
+
+  /**
+   * A finisher with a ring of two whose worker is stuck finishing a span until released.
+   */
+  private AsyncSpanFinisher blockedFinisher(AsyncSpanFinisher.OverflowPolicy overflowPolicy)
+      throws InterruptedException {
+    AsyncSpanFinisher finisher = new AsyncSpanFinisher(2, overflowPolicy);
+    finisher.finish((Span) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Span.class},
+        (proxy, method, args) -> {
+          workerBlocked.countDown();
+          releaseWorker.await();
+          return null;
+        }));
+    Assert.assertTrue(workerBlocked.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(2, finisher.getBufferSize());
+    return finisher;
+  }
+
+  private String finishedSpanNames() {
+    return mockTracer.finishedSpans().stream().map(MockSpan::operationName).collect(Collectors.toList()).toString();
+  }
+}
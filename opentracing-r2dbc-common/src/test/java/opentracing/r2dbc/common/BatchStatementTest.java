@@ -0,0 +1,65 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.QueryInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+public class BatchStatementTest {
+
+  @Test
+  public void testIdenticalStatementsCollapse() {
+    List<QueryInfo> queryInfos = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      queryInfos.add(new QueryInfo("INSERT INTO users(id) VALUES ($1)"));
+    }
+    queryInfos.add(new QueryInfo("DELETE FROM users"));
+
+    BatchStatement batchStatement = BatchStatement.of(queryInfos, Function.identity(), 16, 4096);
+
+    Assert.assertEquals("INSERT INTO users(id) VALUES ($1) /* x10000 */, DELETE FROM users",
+        batchStatement.getStatement());
+    Assert.assertEquals(2, batchStatement.getDistinctStatements());
+  }
+
+  @Test
+  public void testDistinctStatementsAreCapped() {
+    List<QueryInfo> queryInfos = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      queryInfos.add(new QueryInfo("INSERT INTO users(id) VALUES (" + i + ")"));
+    }
+
+    BatchStatement byCount = BatchStatement.of(queryInfos, Function.identity(), 2, 4096);
+    Assert.assertEquals("INSERT INTO users(id) VALUES (0), INSERT INTO users(id) VALUES (1), /* 98 more statements */",
+        byCount.getStatement());
+    Assert.assertEquals(100, byCount.getDistinctStatements());
+
+    BatchStatement byLength = BatchStatement.of(queryInfos, Function.identity(), 100, 40);
+    Assert.assertEquals("INSERT INTO users(id) VALUES (0), /* 99 more statements */", byLength.getStatement());
+
+    BatchStatement normalized = BatchStatement.of(queryInfos,
+        query -> QueryFingerprinter.fingerprint(query).getFingerprint(), 2, 4096);
+    Assert.assertEquals(1, normalized.getDistinctStatements());
+    Assert.assertTrue(normalized.getStatement().endsWith(" /* x100 */"));
+  }
+
+  @Test
+  public void testLengthIsCappedInUtf8Bytes() {
+    List<QueryInfo> queryInfos = new ArrayList<>();
+    queryInfos.add(new QueryInfo("SELECT '\u00e9'"));
+    queryInfos.add(new QueryInfo("SELECT '\u00fc'"));
+    // 11 bytes each, the second one does not fit into 22 bytes with its separator
+    BatchStatement byBytes = BatchStatement.of(queryInfos, Function.identity(), 100, 22);
+    Assert.assertEquals("SELECT '\u00e9', /* 1 more statements */", byBytes.getStatement());
+
+    queryInfos.clear();
+    queryInfos.add(new QueryInfo("SELECT '\ud83d\ude00'"));
+    queryInfos.add(new QueryInfo("SELECT 2"));
+    // the emoji takes 4 bytes and is not split
+    BatchStatement cut = BatchStatement.of(queryInfos, Function.identity(), 100, 10);
+    Assert.assertEquals("SELECT '..., /* 1 more statements */", cut.getStatement());
+  }
+}
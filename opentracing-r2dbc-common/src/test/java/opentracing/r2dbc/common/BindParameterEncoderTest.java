@@ -0,0 +1,82 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.Bindings;
+import io.r2dbc.proxy.core.BoundValue;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.spi.Blob;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+public class BindParameterEncoderTest {
+
+  @Test
+  public void testTypeAwareEncoding() {
+    QueryInfo queryInfo = queryInfo(
+        BoundValue.value(42),
+        BoundValue.value("abcdefghij"),
+        BoundValue.nullValue(String.class),
+        BoundValue.value(new byte[1024]),
+        BoundValue.value(Blob.from(Mono.just(ByteBuffer.allocate(1)))));
+    BindParameterEncoder encoder = new BindParameterEncoder(4, 1024, null, null, null);
+
+    Assert.assertEquals("(0=42, 1='abcd...', 2=NULL, 3=<byte[1024]>, 4=<Blob>)",
+        encoder.encode(Collections.singletonList(queryInfo)));
+    Assert.assertNull(encoder.encode(Collections.singletonList(new QueryInfo("SELECT 1"))));
+  }
+
+  @Test
+  public void testAllowDenyAndMasking() {
+    QueryInfo queryInfo = queryInfo(BoundValue.value(1), BoundValue.value("secret"), BoundValue.value("mail@example.com"));
+    Bindings named = new Bindings();
+    named.addNamedBinding(Bindings.namedBinding("name", BoundValue.value("bob")));
+    queryInfo.getBindingsList().add(named);
+
+    BindParameterEncoder deny = new BindParameterEncoder(64, 1024, null, Collections.singleton("1"),
+        (key, value) -> "2".equals(String.valueOf(key)) ? "<email>" : value);
+    Assert.assertEquals("(0=1, 1=***, 2='<email>'), (name='bob')",
+        deny.encode(Collections.singletonList(queryInfo)));
+
+    BindParameterEncoder allow = new BindParameterEncoder(64, 1024, Collections.singleton("0"), null, null);
+    Assert.assertEquals("(0=1)", allow.encode(Collections.singletonList(queryInfo)));
+  }
+
+  @Test
+  public void testMaxLength() {
+    QueryInfo queryInfo = new QueryInfo("INSERT INTO users(id) VALUES ($1)");
+    for (int i = 0; i < 1000; i++) {
+      Bindings bindings = new Bindings();
+      bindings.addIndexBinding(Bindings.indexBinding(0, BoundValue.value(i)));
+      queryInfo.getBindingsList().add(bindings);
+    }
+    String encoded = new BindParameterEncoder(64, 32, null, null, null).encode(Collections.singletonList(queryInfo));
+    Assert.assertEquals("(0=0), (0=1), (0=2), (0=3), (0=4...", encoded);
+  }
+
+  @Test
+  public void testLimitsAreInUtf8Bytes() {
+    QueryInfo queryInfo = queryInfo(BoundValue.value("\u00e9t\u00e9 \ud83d\ude00!"), BoundValue.value("\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9"));
+    // neither the two byte chars nor the surrogate pair are split
+    Assert.assertEquals("(0='\u00e9t\u00e9 ...', 1='\u00e9\u00e9\u00e9...')",
+        new BindParameterEncoder(7, 1024, null, null, null).encode(Collections.singletonList(queryInfo)));
+    Assert.assertEquals("(0='\u00e9t\u00e9 \ud83d\ude00...', 1='\u00e9\u00e9\u00e9\u00e9\u00e9...')",
+        new BindParameterEncoder(10, 1024, null, null, null).encode(Collections.singletonList(queryInfo)));
+    Assert.assertEquals("(0='\u00e9t\u00e9 ...",
+        new BindParameterEncoder(64, 10, null, null, null).encode(Collections.singletonList(queryInfo)));
+    Assert.assertEquals(4, BindParameterEncoder.utf8Prefix("\u00e9t\u00e9 \ud83d\ude00", 9));
+    Assert.assertEquals(6, BindParameterEncoder.utf8Prefix("\u00e9t\u00e9 \ud83d\ude00", 10));
+  }
+
+  private static QueryInfo queryInfo(BoundValue... values) {
+    QueryInfo queryInfo = new QueryInfo("SELECT * FROM users WHERE id = $1");
+    Bindings bindings = new Bindings();
+    for (int i = 0; i < values.length; i++) {
+      bindings.addIndexBinding(Bindings.indexBinding(i, values[i]));
+    }
+    queryInfo.getBindingsList().add(bindings);
+    return queryInfo;
+  }
+}
@@ -0,0 +1,83 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.r2dbc.spi.R2dbcTransientResourceException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ErrorFingerprintsTest {
+
+  private final MockTracer mockTracer = new MockTracer();
+
+  @Test
+  public void testFingerprint() {
+    List<Exception> errors = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      errors.add(failure("08006"));
+      errors.add(failure("40001"));
+    }
+
+    Assert.assertEquals(ErrorFingerprints.fingerprint(errors.get(0)), ErrorFingerprints.fingerprint(errors.get(2)));
+    Assert.assertEquals(ErrorFingerprints.fingerprint(errors.get(1)), ErrorFingerprints.fingerprint(errors.get(3)));
+    Assert.assertNotEquals(ErrorFingerprints.fingerprint(errors.get(0)), ErrorFingerprints.fingerprint(errors.get(1)));
+    Assert.assertNotEquals(ErrorFingerprints.fingerprint(errors.get(0)),
+        ErrorFingerprints.fingerprint(new RuntimeException(errors.get(0))));
+  }
+
+  @Test
+  public void testFullDetailPerWindow() {
+    ErrorFingerprints errorFingerprints = new ErrorFingerprints(16, 2, 60_000);
+    List<Boolean> fullDetails = new ArrayList<>();
+    List<MockSpan> spans = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      MockSpan span = mockTracer.buildSpan("query").start();
+      fullDetails.add(errorFingerprints.tag(span, failure("08006")));
+      spans.add(span);
+    }
+
+    Assert.assertEquals("[true, true, false, false]", fullDetails.toString());
+    Assert.assertEquals(1, errorFingerprints.size());
+    Assert.assertEquals(spans.get(0).tags().get("error.fingerprint"), spans.get(3).tags().get("error.fingerprint"));
+    Assert.assertEquals(true, spans.get(3).tags().get("error"));
+    Assert.assertEquals("08006", spans.get(3).tags().get("error.sqlState"));
+    Assert.assertEquals(7, spans.get(3).tags().get("error.code"));
+    Assert.assertEquals(R2dbcTransientResourceException.class.getName(), spans.get(3).tags().get("error.kind"));
+    Assert.assertEquals(4L, spans.get(3).tags().get("error.occurrences"));
+    Assert.assertNull(spans.get(0).tags().get("error.occurrences"));
+  }
+
+  @Test
+  public void testNewWindow() throws InterruptedException {
+    ErrorFingerprints errorFingerprints = new ErrorFingerprints(16, 1, 10);
+    List<Boolean> fullDetails = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      if (i == 2) {
+        Thread.sleep(20);
+      }
+      fullDetails.add(errorFingerprints.tag(mockTracer.buildSpan("query").start(), failure("08006")));
+    }
+
+    Assert.assertEquals("[true, false, true]", fullDetails.toString());
+  }
+
+  @Test
+  public void testMaxFingerprints() {
+    ErrorFingerprints errorFingerprints = new ErrorFingerprints(1, 1, 60_000);
+    MockSpan span = null;
+    for (String sqlState : new String[]{"08006", "40001", "57014"}) {
+      span = mockTracer.buildSpan("query").start();
+      errorFingerprints.tag(span, failure(sqlState));
+    }
+
+    Assert.assertEquals(1, errorFingerprints.size());
+    Assert.assertEquals("other", span.tags().get("error.fingerprint"));
+  }
+
+  private static Exception failure(String sqlState) {
+    return new R2dbcTransientResourceException("connection failure", sqlState, 7);
+  }
+}
@@ -0,0 +1,87 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.h2.CloseableConnectionFactory;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.proxy.core.Bindings;
+import io.r2dbc.proxy.core.BoundValue;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.spi.Connection;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class ExplainPlanCaptureTest {
+
+  private CloseableConnectionFactory connectionFactory;
+  private ExplainPlanCapture explainPlanCapture;
+
+  @Before
+  public void before() {
+    connectionFactory = H2ConnectionFactory.inMemory("explain");
+    Mono.usingWhen(connectionFactory.create(),
+        connection -> Flux.from(connection.createStatement(
+            "CREATE TABLE IF NOT EXISTS users (id INT PRIMARY KEY, name VARCHAR(64))").execute())
+            .flatMap(result -> result.getRowsUpdated())
+            .then(),
+        Connection::close).block();
+    explainPlanCapture = new ExplainPlanCapture(() -> connectionFactory, null, 60_000, 1, 8, 5_000);
+  }
+
+  @After
+  public void after() {
+    explainPlanCapture.close();
+    connectionFactory.close();
+  }
+
+  @Test
+  public void testCapture() throws InterruptedException {
+    QueryInfo queryInfo = new QueryInfo("SELECT * FROM users WHERE id = $1");
+    Bindings bindings = new Bindings();
+    bindings.addIndexBinding(Bindings.indexBinding(0, BoundValue.value(1)));
+    queryInfo.getBindingsList().add(bindings);
+    QueryFingerprint fingerprint = QueryFingerprinter.fingerprint(queryInfo.getQuery());
+
+    ExplainPlanCapture.Plan plan = explainPlanCapture.capture(fingerprint, queryInfo);
+    Assert.assertNotNull(plan);
+    awaitCaptured(plan);
+    Assert.assertNull(plan.getError());
+    Assert.assertTrue(plan.getPlan(), plan.getPlan().contains("PRIMARY_KEY"));
+    Assert.assertSame(plan, explainPlanCapture.getPlan(plan.getId()));
+
+    // explained once per window
+    Assert.assertSame(plan, explainPlanCapture.capture(fingerprint, queryInfo));
+    Assert.assertEquals(1, explainPlanCapture.getCapturedPlans());
+  }
+
+  @Test
+  public void testRateLimit() {
+    QueryInfo select = new QueryInfo("SELECT name FROM users");
+    QueryInfo update = new QueryInfo("UPDATE users SET name = 'a'");
+    Assert.assertNotNull(explainPlanCapture.capture(QueryFingerprinter.fingerprint(select.getQuery()), select));
+    Assert.assertNull(explainPlanCapture.capture(QueryFingerprinter.fingerprint(update.getQuery()), update));
+    Assert.assertEquals(1, explainPlanCapture.getRateLimitedPlans());
+
+    QueryInfo create = new QueryInfo("CREATE TABLE other (id INT)");
+    Assert.assertNull(explainPlanCapture.capture(QueryFingerprinter.fingerprint(create.getQuery()), create));
+  }
+
+  @Test
+  public void testPlanIdsOfCollidingHashCodes() {
+    QueryFingerprint aa = QueryFingerprinter.fingerprint("SELECT Aa FROM users");
+    QueryFingerprint bb = QueryFingerprinter.fingerprint("SELECT BB FROM users");
+    Assert.assertEquals(aa.getFingerprint().hashCode(), bb.getFingerprint().hashCode());
+    Assert.assertNotEquals(ExplainPlanCapture.planId(aa), ExplainPlanCapture.planId(bb));
+    Assert.assertEquals(ExplainPlanCapture.PLAN_ID_BYTES * 2, ExplainPlanCapture.planId(aa).length());
+    Assert.assertEquals(ExplainPlanCapture.planId(aa), ExplainPlanCapture.planId(aa));
+  }
+
+  static void awaitCaptured(ExplainPlanCapture.Plan plan) throws InterruptedException {
+    for (int i = 0; i < 500 && plan.getCapturedAtMillis() == 0; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(plan.getCapturedAtMillis() > 0);
+  }
+}
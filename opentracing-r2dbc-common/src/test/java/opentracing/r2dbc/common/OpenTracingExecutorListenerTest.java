@@ -1,8 +1,16 @@
 package opentracing.r2dbc.common;
 
+import io.opentracing.Scope;
+import io.opentracing.Span;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
 import io.opentracing.util.GlobalTracerTestUtil;
+import io.r2dbc.h2.CloseableConnectionFactory;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.proxy.ProxyConnectionFactory;
+import io.r2dbc.proxy.callback.ProxyConfig;
 import io.r2dbc.proxy.core.ConnectionInfo;
 import io.r2dbc.proxy.core.ExecutionType;
 import io.r2dbc.proxy.core.QueryInfo;
@@ -10,12 +18,28 @@ import io.r2dbc.proxy.core.ValueStore;
 import io.r2dbc.proxy.test.MockConnectionInfo;
 import io.r2dbc.proxy.test.MockMethodExecutionInfo;
 import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.ConnectionMetadata;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import io.r2dbc.spi.Statement;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 public class OpenTracingExecutorListenerTest {
 
@@ -60,6 +84,97 @@ public class OpenTracingExecutorListenerTest {
     Assert.assertEquals("Connection created", spans.get(0).tags().get("annotation"));
   }
 
+  @Test
+  public void testAcquireFromConnectionPool() {
+    ConnectionFactory connectionFactory = new ConnectionFactory() {
+      @Override
+      public Publisher<? extends Connection> create() {
+        return Mono.empty();
+      }
+
+      @Override
+      public ConnectionFactoryMetadata getMetadata() {
+        return () -> "mock";
+      }
+    };
+    ConnectionPool connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory).build());
+    ConnectionPoolRecorder connectionPoolRecorder = new ConnectionPoolRecorder();
+    OpenTracingExecutorListener listener =
+        new OpenTracingExecutorListener(mockTracer, tracingConfiguration, null, connectionPoolRecorder);
+    MockMethodExecutionInfo methodExecutionInfo = MockMethodExecutionInfo.builder()
+        .target(connectionPool)
+        .connectionInfo(MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build())
+        .executeDuration(Duration.ofMillis(5))
+        .build();
+
+    listener.beforeCreateOnConnectionFactory(methodExecutionInfo);
+    listener.afterCreateOnConnectionFactory(methodExecutionInfo);
+    listener.afterCloseOnConnection(methodExecutionInfo);
+    connectionPool.dispose();
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(2, spans.size());
+    Assert.assertEquals("r2dbc:acquire", spans.get(0).operationName());
+    Assert.assertEquals(spans.get(1).context().spanId(), spans.get(0).parentId());
+    Assert.assertEquals("created", spans.get(0).tags().get(TagConstants.TAG_POOL_ACQUIRE_ESTIMATE.getKey()));
+    Assert.assertEquals(0, spans.get(0).tags().get(TagConstants.TAG_POOL_PENDING_ACQUIRE.getKey()));
+    Assert.assertEquals(5.0, spans.get(1).tags().get(TagConstants.TAG_POOL_ACQUIRE_TIME_MS.getKey()));
+    Assert.assertEquals(1, connectionPoolRecorder.poolAcquireMetrics(connectionPool).getAcquireHistogram().count());
+  }
+
+  @Test
+  public void testParentSpanFromReactorContext() {
+    ConnectionFactory connectionFactory = ReactorContextTracing.propagating(ProxyConnectionFactory.builder(
+        mockConnectionFactory()).listener(openTracingExecutorListener).build());
+    MockSpan parent = mockTracer.buildSpan("request").start();
+
+    Connection proxyConnection = Mono.from(connectionFactory.create())
+        .subscriberContext(ReactorContextTracing.withParentSpan(parent))
+        .block();
+    // subscribed without the context, the query is parented on the span captured with the connection
+    Flux.from(proxyConnection.createStatement("SELECT 1").execute()).blockLast();
+    Mono.from(proxyConnection.close()).block();
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(2, spans.size());
+    Assert.assertEquals("r2dbc:query", spans.get(0).operationName());
+    Assert.assertEquals(parent.context().spanId(), spans.get(0).parentId());
+    Assert.assertEquals("r2dbc:connection", spans.get(1).operationName());
+    Assert.assertEquals(parent.context().spanId(), spans.get(1).parentId());
+  }
+
+  @Test
+  public void testParentSpanOfReusableConnection() {
+    ConnectionFactory connectionFactory = ReactorContextTracing.propagating(ProxyConnectionFactory.builder(
+        mockConnectionFactory()).listener(openTracingExecutorListener).build());
+    MockSpan first = mockTracer.buildSpan("first").start();
+    Connection proxyConnection = Mono.from(connectionFactory.create())
+        .subscriberContext(ReactorContextTracing.withParentSpan(first))
+        .block();
+    first.finish();
+
+    // a pool over the proxy hands the connection to a later request, whose active span wins
+    MockSpan second = mockTracer.buildSpan("second").start();
+    try (Scope ignored = mockTracer.activateSpan(second)) {
+      Flux.from(proxyConnection.createStatement("SELECT 1").execute()).blockLast();
+    }
+    second.finish();
+    MockSpan third = mockTracer.buildSpan("third").start();
+    ReactorContextTracing.propagate(Flux.from(proxyConnection.createStatement("SELECT 1").execute()))
+        .subscriberContext(ReactorContextTracing.withParentSpan(third))
+        .blockLast();
+    Flux.from(proxyConnection.createStatement("SELECT 1").execute()).blockLast();
+    third.finish();
+    Mono.from(proxyConnection.close()).block();
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(7, spans.size());
+    Assert.assertEquals("r2dbc:query", spans.get(1).operationName());
+    Assert.assertEquals(second.context().spanId(), spans.get(1).parentId());
+    Assert.assertEquals(third.context().spanId(), spans.get(3).parentId());
+    Assert.assertEquals(third.context().spanId(), spans.get(4).parentId());
+  }
+
   @Test
   public void testCreateOnConnectionFactoryWithError() {
     Exception error = new RuntimeException();
@@ -134,6 +249,289 @@ public class OpenTracingExecutorListenerTest {
     Assert.assertEquals("Commit", spans.get(0).tags().get("annotation"));
   }
 
+  @Test
+  public void testTransactionStatistics() {
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build();
+    MockMethodExecutionInfo methodExecutionInfo = MockMethodExecutionInfo.builder().connectionInfo(connectionInfo).build();
+    String update = "UPDATE orders SET state = 'shipped' WHERE id = 7";
+    MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+        .connectionInfo(connectionInfo)
+        .queryInfo(new QueryInfo(update))
+        .type(ExecutionType.STATEMENT)
+        .isSuccess(true)
+        .executeDuration(Duration.ofMillis(20))
+        .build();
+
+    openTracingExecutorListener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+    executeQuery(openTracingExecutorListener, connectionInfo, Duration.ofMillis(5));
+    openTracingExecutorListener.beforeQuery(queryExecutionInfo);
+    openTracingExecutorListener.afterQuery(queryExecutionInfo);
+    for (int i = 0; i < 3; i++) {
+      openTracingExecutorListener.eachQueryResult(queryExecutionInfo);
+    }
+    openTracingExecutorListener.afterCommitTransactionOnConnection(methodExecutionInfo);
+
+    MockSpan transactionSpan = mockTracer.finishedSpans().get(2);
+    Assert.assertEquals("r2dbc:transaction", transactionSpan.operationName());
+    Assert.assertEquals(2, transactionSpan.tags().get("queryCount"));
+    Assert.assertEquals(0, transactionSpan.tags().get("batchCount"));
+    Assert.assertEquals(0, transactionSpan.tags().get("failedQueryCount"));
+    Assert.assertEquals(3L, transactionSpan.tags().get("mappedRowCount"));
+    Assert.assertEquals(25.0, transactionSpan.tags().get("dbTimeMs"));
+    Assert.assertEquals(20.0, transactionSpan.tags().get("maxQueryTimeMs"));
+    Assert.assertEquals(QueryFingerprinter.fingerprint(update).getFingerprint(),
+        transactionSpan.tags().get("slowestStatement"));
+    Assert.assertNotNull(transactionSpan.tags().get("wallTimeMs"));
+    Assert.assertNull(connectionInfo.getValueStore().get(OpenTracingExecutorListener.TRANSACTION_STATISTICS_KEY));
+  }
+
+  @Test
+  public void testRepeatedQueries() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withNormalizeStatements(true)
+        .withRepeatedQueryThreshold(2)
+        .build();
+    QueryMetricsRecorder metricsRecorder = new QueryMetricsRecorder();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration, metricsRecorder, null);
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build();
+
+    MockSpan requestSpan = mockTracer.buildSpan("request").start();
+    try (Scope ignored = mockTracer.activateSpan(requestSpan)) {
+      for (int i = 0; i < 4; i++) {
+        executeQuery(listener, connectionInfo, Duration.ofMillis(1));
+      }
+    }
+    requestSpan.finish();
+
+    String statement = QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 1").getFingerprint();
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertNull(spans.get(1).tags().get("repeatedQueryCount"));
+    Assert.assertEquals(3, spans.get(2).tags().get("repeatedQueryCount"));
+    Assert.assertEquals(4, spans.get(3).tags().get("repeatedQueryCount"));
+    Assert.assertEquals(statement, requestSpan.tags().get("repeatedStatement"));
+    Assert.assertEquals(4, requestSpan.tags().get("repeatedStatementCount"));
+    Assert.assertEquals(1, metricsRecorder.queryMetrics(QueryFingerprinter.fingerprint(statement),
+        ExecutionType.STATEMENT, true).getRepeated());
+
+    MockMethodExecutionInfo methodExecutionInfo = MockMethodExecutionInfo.builder().connectionInfo(connectionInfo).build();
+    listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+    for (int i = 0; i < 3; i++) {
+      executeQuery(listener, connectionInfo, Duration.ofMillis(1));
+    }
+    listener.afterCommitTransactionOnConnection(methodExecutionInfo);
+
+    MockSpan transactionSpan = mockTracer.finishedSpans().get(8);
+    Assert.assertEquals("r2dbc:transaction", transactionSpan.operationName());
+    Assert.assertEquals(3, transactionSpan.tags().get("repeatedStatementCount"));
+    Assert.assertNull(connectionInfo.getValueStore().get(OpenTracingExecutorListener.REPEATED_QUERIES_KEY));
+  }
+
+  @Test
+  public void testUpdateTracingConfiguration() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    configuration.setTraceEnabled(false);
+    executeQuery(listener, Duration.ofMillis(1));
+    Assert.assertEquals(1, mockTracer.finishedSpans().size());
+
+    TracingConfiguration updated = listener.updateTracingConfiguration(builder -> builder
+        .withIgnoreStatements(Collections.singleton("SELECT * FROM users WHERE id = 1")));
+    executeQuery(listener, Duration.ofMillis(1));
+    Assert.assertTrue(updated.isTraceEnabled());
+    Assert.assertEquals(1, mockTracer.finishedSpans().size());
+
+    listener.updateTracingConfiguration(builder -> builder.withIgnoreStatements(null).withTraceEnabled(false));
+    executeQuery(listener, Duration.ofMillis(1));
+    Assert.assertEquals(1, mockTracer.finishedSpans().size());
+    Assert.assertFalse(listener.getTracingConfiguration().isTraceEnabled());
+
+    listener.updateTracingConfiguration(builder -> builder.withTraceEnabled(true).withSampler(QuerySampler.NEVER));
+    executeQuery(listener, Duration.ofMillis(1));
+    Assert.assertEquals(1, mockTracer.finishedSpans().size());
+  }
+
+  @Test
+  public void testOverheadGovernor() {
+    OverheadGovernor overheadGovernor = new OverheadGovernor(1e-9, 0, 0, 10);
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withOverheadGovernor(overheadGovernor)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    for (int i = 0; i < 10; i++) {
+      executeQuery(listener, Duration.ofMillis(1));
+    }
+
+    Assert.assertEquals(OverheadGovernor.Tier.NOOP, overheadGovernor.getTier());
+    // one query traced in the full and one in the minimal tier, none in the later tiers
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(2, spans.size());
+    Assert.assertEquals("SELECT * FROM users WHERE id = ?", spans.get(1).tags().get("db.statement"));
+    Assert.assertTrue(overheadGovernor.getOverhead() > 0);
+  }
+
+  @Test
+  public void testMetricsOnlyStatements() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withMetricsOnlyStatements(Collections.singleton("fingerprint:SELECT * FROM users WHERE id = 2"))
+        .build();
+    QueryMetricsRecorder metricsRecorder = new QueryMetricsRecorder();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration, metricsRecorder);
+    for (int i = 0; i < 3; i++) {
+      executeQuery(listener, Duration.ofMillis(1));
+    }
+
+    Assert.assertTrue(mockTracer.finishedSpans().isEmpty());
+    QueryFingerprint fingerprint = QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 1");
+    Assert.assertEquals(3, metricsRecorder.queryMetrics(fingerprint, ExecutionType.STATEMENT, true)
+        .getHistogram().count());
+
+    listener.updateTracingConfiguration(builder -> builder.withMetricsOnlyStatements(null));
+    executeQuery(listener, Duration.ofMillis(1));
+    Assert.assertEquals(1, mockTracer.finishedSpans().size());
+    // traced when there are no metrics to update
+    executeQuery(new OpenTracingExecutorListener(mockTracer, configuration), Duration.ofMillis(1));
+    Assert.assertEquals(2, mockTracer.finishedSpans().size());
+  }
+
+  @Test
+  public void testAbandonedSpans() {
+    AbandonedSpanReaper reaper = new AbandonedSpanReaper(100, 10, false);
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withAbandonedSpanReaper(reaper)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder()
+        .connectionId("foo")
+        .valueStore(ValueStore.create())
+        .build();
+    MockMethodExecutionInfo methodExecutionInfo = MockMethodExecutionInfo.builder()
+        .connectionInfo(connectionInfo)
+        .build();
+
+    listener.beforeCreateOnConnectionFactory(methodExecutionInfo);
+    listener.afterCreateOnConnectionFactory(methodExecutionInfo);
+    listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+    executeQuery(listener, connectionInfo, Duration.ofMillis(1));
+    Assert.assertEquals(1, reaper.getOpenSpans(AbandonedSpanReaper.Kind.CONNECTION));
+    Assert.assertEquals(1, reaper.getOpenSpans(AbandonedSpanReaper.Kind.TRANSACTION));
+    Assert.assertEquals(0, reaper.getOpenSpans(AbandonedSpanReaper.Kind.QUERY));
+
+    reaper.tick(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(2, spans.size());
+    Assert.assertNull(spans.get(0).tags().get("abandoned"));
+    Assert.assertEquals("r2dbc:transaction", spans.get(1).operationName());
+    Assert.assertEquals(true, spans.get(1).tags().get("abandoned"));
+    // not created from a pool, the connection may be pooled over the proxy and live longer than the maximum age
+    Assert.assertEquals(1, reaper.getOpenSpans(AbandonedSpanReaper.Kind.CONNECTION));
+
+    // late callbacks leave the reaped spans alone
+    listener.afterCommitTransactionOnConnection(methodExecutionInfo);
+    Assert.assertEquals(2, mockTracer.finishedSpans().size());
+    listener.afterCloseOnConnection(methodExecutionInfo);
+    spans = mockTracer.finishedSpans();
+    Assert.assertEquals(3, spans.size());
+    Assert.assertNull(spans.get(2).tags().get("abandoned"));
+    Assert.assertEquals(0, reaper.getOpenSpans(AbandonedSpanReaper.Kind.CONNECTION));
+  }
+
+  @Test
+  public void testStatementHeavyHitters() {
+    StatementHeavyHitters heavyHitters = new StatementHeavyHitters();
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withStatementHeavyHitters(heavyHitters)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    for (int i = 0; i < 3; i++) {
+      executeQuery(listener, Duration.ofMillis(2));
+    }
+
+    Assert.assertTrue(mockTracer.finishedSpans().isEmpty());
+    List<StatementHeavyHitters.HeavyHitter> top =
+        heavyHitters.top(StatementHeavyHitters.Metric.TIME, 20, Duration.ofMinutes(1));
+    Assert.assertEquals(1, top.size());
+    Assert.assertEquals("SELECT * FROM users WHERE id = ?", top.get(0).getStatement());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(6), top.get(0).getValue());
+  }
+
+  @Test
+  public void testExplainPlanCapture() throws InterruptedException {
+    CloseableConnectionFactory h2 = H2ConnectionFactory.inMemory("listener-explain");
+    Mono.usingWhen(h2.create(),
+        connection -> Mono.from(connection.createStatement("CREATE TABLE users (id INT PRIMARY KEY)").execute())
+            .flatMap(result -> Mono.from(result.getRowsUpdated())),
+        Connection::close).block();
+    ExplainPlanCapture explainPlanCapture = new ExplainPlanCapture(h2);
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSlowQueryThresholdMs(1)
+        .withExplainPlanCapture(explainPlanCapture)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    try {
+      executeQuery(listener, Duration.ofMillis(1));
+      executeQuery(listener, Duration.ofMillis(5));
+      ExplainPlanCapture.Plan plan = explainPlanCapture.getPlans().get(0);
+      ExplainPlanCaptureTest.awaitCaptured(plan);
+      executeQuery(listener, Duration.ofMillis(5));
+    } finally {
+      explainPlanCapture.close();
+      h2.close();
+    }
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(3, spans.size());
+    Assert.assertNull(spans.get(0).tags().get("db.plan.id"));
+    Assert.assertNotNull(spans.get(1).tags().get("db.plan.id"));
+    Assert.assertEquals(spans.get(1).tags().get("db.plan.id"), spans.get(2).tags().get("db.plan.id"));
+    Assert.assertTrue(String.valueOf(spans.get(2).tags().get("db.plan")).contains("PRIMARY_KEY"));
+  }
+
+  @Test
+  public void testSqlComment() {
+    CloseableConnectionFactory h2 = H2ConnectionFactory.inMemory("listener-sql-comment");
+    SqlCommenter sqlCommenter = new SqlCommenter(mockTracer, "shop", SqlCommenter.Mode.SAMPLED,
+        fingerprint -> fingerprint.getFingerprint().contains("sampled"), SqlCommenter.DEFAULT_SLOW_WINDOW_MS,
+        SqlCommenter.DEFAULT_MAX_SLOW_STATEMENTS);
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSampler(QuerySampler.NEVER)
+        .withSqlCommenter(sqlCommenter)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    ConnectionFactory connectionFactory = ReactorContextTracing.propagating(ProxyConnectionFactory.builder(h2)
+        .proxyConfig(ProxyConfig.builder().bindParameterConverter(sqlCommenter).build())
+        .listener(listener)
+        .build());
+    MockSpan parent = mockTracer.buildSpan("request").start();
+    try {
+      Connection connection = Mono.from(connectionFactory.create())
+          .subscriberContext(ReactorContextTracing.withParentSpan(parent))
+          .subscriberContext(ReactorContextTracing.withRoute("/users"))
+          .block();
+      Statement statement = connection.createStatement("SELECT 1 AS sampled");
+      Flux.from(statement.execute()).flatMap(result -> result.map((row, metadata) -> row.get(0))).blockLast();
+      Flux.from(connection.createStatement("SELECT 1").execute()).blockLast();
+      Mono.from(connection.close()).block();
+    } finally {
+      h2.close();
+    }
+
+    // only the commented statement is traced, with the comment left out of db.statement
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(2, spans.size());
+    Assert.assertEquals("r2dbc:query", spans.get(0).operationName());
+    Assert.assertEquals("SELECT 1 AS sampled", spans.get(0).tags().get("db.statement"));
+    Assert.assertEquals(parent.context().spanId(), spans.get(0).parentId());
+    Assert.assertEquals("r2dbc:connection", spans.get(1).operationName());
+  }
+
   @Test
   public void testTransactionOnConnectionRollback() {
     ValueStore valueStore = ValueStore.create();
@@ -153,4 +551,338 @@ public class OpenTracingExecutorListenerTest {
     Assert.assertEquals("r2dbc:transaction", spans.get(0).operationName());
     Assert.assertEquals("Rollback", spans.get(0).tags().get("annotation"));
   }
+
+  @Test
+  public void testQueryWithNormalizedStatement() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withNormalizeStatements(true)
+        .withSpanNameFromStatement(true)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder()
+        .connectionId("foo")
+        .valueStore(ValueStore.create())
+        .build();
+    MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+        .connectionInfo(connectionInfo)
+        .queryInfo(new QueryInfo("SELECT * FROM users WHERE id = 42"))
+        .type(ExecutionType.STATEMENT)
+        .isSuccess(true)
+        .build();
+
+    listener.beforeQuery(queryExecutionInfo);
+    listener.afterQuery(queryExecutionInfo);
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1, spans.size());
+    Assert.assertEquals("r2dbc:query SELECT users", spans.get(0).operationName());
+    Assert.assertEquals("SELECT * FROM users WHERE id = ?", spans.get(0).tags().get("db.statement"));
+    Assert.assertEquals("SELECT", spans.get(0).tags().get("db.operation"));
+    Assert.assertEquals("users", spans.get(0).tags().get("db.sql.table"));
+  }
+
+  @Test
+  public void testUnsampledQuery() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSampler(QuerySampler.NEVER)
+        .build();
+    QueryMetricsRecorder metricsRecorder = new QueryMetricsRecorder();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration, metricsRecorder);
+    MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+        .connectionInfo(MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build())
+        .queryInfo(new QueryInfo("SELECT 1"))
+        .type(ExecutionType.STATEMENT)
+        .isSuccess(true)
+        .executeDuration(Duration.ofMillis(3))
+        .build();
+
+    listener.beforeQuery(queryExecutionInfo);
+    listener.afterQuery(queryExecutionInfo);
+
+    Assert.assertTrue(mockTracer.finishedSpans().isEmpty());
+    QueryMetrics queryMetrics = metricsRecorder.queryMetrics(QueryFingerprinter.fingerprint("SELECT 1"),
+        ExecutionType.STATEMENT, true);
+    Assert.assertEquals(1, queryMetrics.getHistogram().count());
+    Assert.assertEquals(Duration.ofMillis(3).toNanos(), queryMetrics.getHistogram().maxNanos());
+  }
+
+  @Test
+  public void testAdaptiveSlowQuery() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSlowQueryMode(SlowQueryMode.ADAPTIVE)
+        .withSlowQueryMinSamples(10)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    for (int i = 0; i < 10; i++) {
+      executeQuery(listener, Duration.ofMillis(5));
+    }
+    executeQuery(listener, Duration.ofMillis(5));
+    executeQuery(listener, Duration.ofMillis(500));
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(12, spans.size());
+    Assert.assertNull(spans.get(0).tags().get(TagConstants.TAG_LATENCY_PERCENTILE.getKey()));
+    Assert.assertNull(spans.get(10).tags().get(TagConstants.TAG_SLOW.getKey()));
+    Assert.assertEquals(100.0, spans.get(10).tags().get(TagConstants.TAG_LATENCY_PERCENTILE.getKey()));
+    Assert.assertEquals(true, spans.get(11).tags().get(TagConstants.TAG_SLOW.getKey()));
+  }
+
+  @Test
+  public void testTailSampling() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSlowQueryThresholdMs(100)
+        .withTailSampling(true)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build();
+    MockMethodExecutionInfo methodExecutionInfo = MockMethodExecutionInfo.builder().connectionInfo(connectionInfo).build();
+
+    listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+    executeQuery(listener, connectionInfo, Duration.ofMillis(5));
+    executeQuery(listener, connectionInfo, Duration.ofMillis(5));
+    listener.afterCommitTransactionOnConnection(methodExecutionInfo);
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1, spans.size());
+    Assert.assertEquals("r2dbc:transaction", spans.get(0).operationName());
+    Assert.assertEquals(2, spans.get(0).tags().get(TagConstants.TAG_DROPPED_QUERY_SPANS.getKey()));
+
+    mockTracer.reset();
+    listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+    executeQuery(listener, connectionInfo, Duration.ofMillis(5));
+    executeQuery(listener, connectionInfo, Duration.ofMillis(500));
+    executeQuery(listener, connectionInfo, Duration.ofMillis(5));
+    listener.afterRollbackTransactionOnConnection(methodExecutionInfo);
+
+    spans = mockTracer.finishedSpans();
+    Assert.assertEquals(4, spans.size());
+    Assert.assertNull(spans.get(3).tags().get(TagConstants.TAG_DROPPED_QUERY_SPANS.getKey()));
+  }
+
+  @Test
+  public void testUnsampledQueryOfReusableConnectionDoesNotAskForActiveSpan() {
+    AtomicInteger activeSpanCalls = new AtomicInteger();
+    MockTracer tracer = new MockTracer() {
+      @Override
+      public Span activeSpan() {
+        activeSpanCalls.incrementAndGet();
+        return super.activeSpan();
+      }
+    };
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSampler(QuerySampler.NEVER)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(tracer, configuration);
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build();
+
+    executeQuery(listener, connectionInfo, Duration.ofMillis(5));
+
+    Assert.assertEquals(0, activeSpanCalls.get());
+    Assert.assertTrue(tracer.finishedSpans().isEmpty());
+  }
+
+  @Test
+  public void testTailSamplingOutsideTransactions() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSlowQueryThresholdMs(100)
+        .withTailSampling(true)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build();
+    MockSpan firstRequest = mockTracer.buildSpan("first").start();
+    connectionInfo.getValueStore().put(OpenTracingExecutorListener.PARENT_SPAN_KEY, firstRequest);
+
+    executeQuery(listener, connectionInfo, Duration.ofMillis(5));
+    executeQuery(listener, connectionInfo, Duration.ofMillis(500));
+    executeQuery(listener, connectionInfo, Duration.ofMillis(5));
+    Assert.assertEquals(3, mockTracer.finishedSpans().size());
+
+    // the slow query of the first request does not keep the queries of a later one on the same connection
+    MockSpan secondRequest = mockTracer.buildSpan("second").start();
+    connectionInfo.getValueStore().put(OpenTracingExecutorListener.PARENT_SPAN_KEY, secondRequest);
+    executeQuery(listener, connectionInfo, Duration.ofMillis(5));
+    listener.afterCloseOnConnection(MockMethodExecutionInfo.builder().connectionInfo(connectionInfo).build());
+    Assert.assertEquals(3, mockTracer.finishedSpans().size());
+  }
+
+  @Test
+  public void testAsyncSpanFinisher() {
+    AsyncSpanFinisher spanFinisher = new AsyncSpanFinisher();
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withSpanFinisher(spanFinisher)
+        .build();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration);
+    Exception error = new RuntimeException();
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build();
+    MockMethodExecutionInfo methodExecutionInfo = MockMethodExecutionInfo.builder().connectionInfo(connectionInfo).build();
+    MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+        .connectionInfo(connectionInfo)
+        .queryInfo(new QueryInfo("SELECT 1"))
+        .type(ExecutionType.STATEMENT)
+        .isSuccess(false)
+        .throwable(error)
+        .build();
+
+    listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+    listener.beforeQuery(queryExecutionInfo);
+    listener.afterQuery(queryExecutionInfo);
+    listener.afterRollbackTransactionOnConnection(methodExecutionInfo);
+    spanFinisher.close();
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(2, spans.size());
+    Assert.assertEquals("r2dbc:query", spans.get(0).operationName());
+    Assert.assertEquals(true, spans.get(0).tags().get("error"));
+    Assert.assertEquals(error, spans.get(0).logEntries().get(0).fields().get("error.object"));
+    Assert.assertEquals("r2dbc:transaction", spans.get(1).operationName());
+    Assert.assertEquals(2, spanFinisher.getFinishedSpans());
+  }
+
+  @Test
+  public void testResultStatistics() {
+    TracingConfiguration configuration = TracingConfiguration.TracingConfigurationBuilder.aTracingConfiguration()
+        .withTraceEnabled(true)
+        .withResultStatistics(true)
+        .build();
+    QueryMetricsRecorder metricsRecorder = new QueryMetricsRecorder();
+    OpenTracingExecutorListener listener = new OpenTracingExecutorListener(mockTracer, configuration, metricsRecorder);
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build();
+    MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+        .connectionInfo(connectionInfo)
+        .queryInfo(new QueryInfo("SELECT * FROM users"))
+        .type(ExecutionType.STATEMENT)
+        .isSuccess(true)
+        .executeDuration(Duration.ofMillis(1))
+        .build();
+
+    listener.beforeQuery(queryExecutionInfo);
+    listener.afterQuery(queryExecutionInfo);
+    Assert.assertTrue(mockTracer.finishedSpans().isEmpty());
+
+    BiFunction<Row, RowMetadata, String> mappingFunction = RowMappingTimer.timed((row, rowMetadata) -> "user");
+    for (int i = 0; i < 3; i++) {
+      mappingFunction.apply(null, null);
+      listener.eachQueryResult(queryExecutionInfo);
+    }
+    listener.afterMapOnResult(MockMethodExecutionInfo.builder().connectionInfo(connectionInfo).build());
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    Assert.assertEquals(1, spans.size());
+    Assert.assertEquals(3L, spans.get(0).tags().get(TagConstants.TAG_ROW_COUNT.getKey()));
+    Assert.assertNotNull(spans.get(0).tags().get(TagConstants.TAG_TIME_TO_FIRST_ROW_MS.getKey()));
+    Assert.assertNotNull(spans.get(0).tags().get(TagConstants.TAG_FETCH_TIME_MS.getKey()));
+    Assert.assertNotNull(spans.get(0).tags().get(TagConstants.TAG_ROW_MAPPING_TIME_MS.getKey()));
+    QueryMetrics queryMetrics = metricsRecorder.queryMetrics(QueryFingerprinter.fingerprint("SELECT * FROM users"),
+        ExecutionType.STATEMENT, true);
+    Assert.assertEquals(1, queryMetrics.getFetchHistogram().count());
+    Assert.assertEquals(3, queryMetrics.getRows());
+  }
+
+  @Test
+  public void testTailSamplingBufferIsBounded() {
+    TailSamplingBuffer buffer = new TailSamplingBuffer(2, 60_000);
+    MockSpan parent = mockTracer.buildSpan("request").start();
+    for (int i = 0; i < 3; i++) {
+      buffer.finish(mockTracer.buildSpan("query").asChildOf(parent).start(), false);
+    }
+    Assert.assertEquals(2, buffer.size());
+    buffer.finish(mockTracer.buildSpan("query").asChildOf(parent).start(), true);
+    Assert.assertEquals(3, mockTracer.finishedSpans().size());
+    Assert.assertEquals(1, buffer.complete());
+  }
+
+  private static void executeQuery(OpenTracingExecutorListener listener, Duration executeDuration) {
+    executeQuery(listener, MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build(),
+        executeDuration);
+  }
+
+  private static void executeQuery(OpenTracingExecutorListener listener, ConnectionInfo connectionInfo,
+                                   Duration executeDuration) {
+    MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+        .connectionInfo(connectionInfo)
+        .queryInfo(new QueryInfo("SELECT * FROM users WHERE id = 1"))
+        .type(ExecutionType.STATEMENT)
+        .isSuccess(true)
+        .executeDuration(executeDuration)
+        .build();
+    listener.beforeQuery(queryExecutionInfo);
+    listener.afterQuery(queryExecutionInfo);
+  }
+
+  @Test
+  public void testQueryTagsFromConnectionTemplate() {
+    ConnectionMetadata metadata = mockConnectionMetadata();
+    Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[]{Connection.class}, (proxy, method, args) -> metadata);
+    ValueStore valueStore = ValueStore.create();
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder()
+        .connectionId("foo")
+        .originalConnection(connection)
+        .valueStore(valueStore)
+        .build();
+    MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+        .connectionInfo(connectionInfo)
+        .queryInfo(new QueryInfo("SELECT 1"))
+        .type(ExecutionType.STATEMENT)
+        .isSuccess(true)
+        .build();
+
+    openTracingExecutorListener.beforeQuery(queryExecutionInfo);
+    openTracingExecutorListener.afterQuery(queryExecutionInfo);
+
+    MockSpan span = mockTracer.finishedSpans().get(0);
+    Assert.assertEquals("H2:1.4.200", span.tags().get("db.type"));
+    Assert.assertEquals("client", span.tags().get("span.kind"));
+    Assert.assertEquals("opentracing-r2dbc", span.tags().get("component"));
+    Assert.assertNotNull(valueStore.get(SpanTagTemplate.TAG_TEMPLATE_KEY));
+  }
+
+  private static ConnectionMetadata mockConnectionMetadata() {
+    return new ConnectionMetadata() {
+      @Override
+      public String getDatabaseProductName() {
+        return "H2";
+      }
+
+      @Override
+      public String getDatabaseVersion() {
+        return "1.4.200";
+      }
+    };
+  }
+
+  private static ConnectionFactory mockConnectionFactory() {
+    ConnectionMetadata metadata = mockConnectionMetadata();
+    Statement statement = (Statement) Proxy.newProxyInstance(OpenTracingExecutorListenerTest.class.getClassLoader(),
+        new Class<?>[]{Statement.class}, (proxy, method, args) -> Flux.empty());
+    Connection connection = (Connection) Proxy.newProxyInstance(OpenTracingExecutorListenerTest.class.getClassLoader(),
+        new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "createStatement":
+              return statement;
+            case "getMetadata":
+              return metadata;
+            default:
+              return Mono.empty();
+          }
+        });
+    return new ConnectionFactory() {
+      @Override
+      public Publisher<? extends Connection> create() {
+        return Mono.just(connection);
+      }
+
+      @Override
+      public ConnectionFactoryMetadata getMetadata() {
+        return () -> "mock";
+      }
+    };
+  }
 }
@@ -0,0 +1,67 @@
+package opentracing.r2dbc.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class OverheadGovernorTest {
+
+  private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test
+  public void testStepDownAndRecover() {
+    OverheadGovernor governor = new OverheadGovernor(0.1, 0, 100, 10);
+    long now = System.nanoTime();
+    for (OverheadGovernor.Tier tier : new OverheadGovernor.Tier[]{OverheadGovernor.Tier.MINIMAL,
+        OverheadGovernor.Tier.SAMPLED, OverheadGovernor.Tier.METRICS_ONLY, OverheadGovernor.Tier.NOOP,
+        OverheadGovernor.Tier.NOOP}) {
+      now += WINDOW_NANOS;
+      governor.recordExecution(1_000);
+      governor.recordCost(200, now);
+      Assert.assertEquals(tier, governor.getTier());
+    }
+    Assert.assertEquals(0.2, governor.getOverhead(), 0.0001);
+
+    // between half of the budget and the budget the tier is kept
+    now += WINDOW_NANOS;
+    governor.recordExecution(1_000);
+    governor.recordCost(80, now);
+    Assert.assertEquals(OverheadGovernor.Tier.NOOP, governor.getTier());
+
+    for (int i = 1; i <= OverheadGovernor.RECOVERY_WINDOWS * 2; i++) {
+      now += WINDOW_NANOS;
+      governor.recordExecution(1_000);
+      governor.recordCost(10, now);
+      Assert.assertEquals(i < OverheadGovernor.RECOVERY_WINDOWS ? OverheadGovernor.Tier.NOOP :
+          i < OverheadGovernor.RECOVERY_WINDOWS * 2 ? OverheadGovernor.Tier.METRICS_ONLY :
+              OverheadGovernor.Tier.SAMPLED, governor.getTier());
+    }
+  }
+
+  @Test
+  public void testSpanRate() {
+    OverheadGovernor governor = new OverheadGovernor(1, 100, 100, 10);
+    long now = System.nanoTime() + WINDOW_NANOS;
+    for (int i = 0; i < 20; i++) {
+      governor.recordSpan();
+    }
+    governor.recordExecution(1_000);
+    governor.recordCost(10, now);
+
+    Assert.assertEquals(OverheadGovernor.Tier.MINIMAL, governor.getTier());
+    Assert.assertTrue(governor.getSpansPerSecond() > 100);
+  }
+
+  @Test
+  public void testSampled() {
+    OverheadGovernor governor = new OverheadGovernor(0.1, 0, 100, 4);
+    int sampled = 0;
+    for (int i = 0; i < 40; i++) {
+      if (governor.isSampled()) {
+        sampled++;
+      }
+    }
+    Assert.assertEquals(10, sampled);
+  }
+}
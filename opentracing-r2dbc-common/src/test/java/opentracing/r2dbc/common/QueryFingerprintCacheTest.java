@@ -0,0 +1,57 @@
+package opentracing.r2dbc.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryFingerprintCacheTest {
+
+  @Test
+  public void testFingerprintStripsLiterals() {
+    QueryFingerprint fingerprint = QueryFingerprinter.fingerprint(
+        "SELECT *  FROM users\n WHERE name = 'O''Brien' AND age > 42 -- comment");
+    Assert.assertEquals("SELECT * FROM users WHERE name = ? AND age > ?", fingerprint.getFingerprint());
+    Assert.assertEquals("SELECT", fingerprint.getOperation());
+    Assert.assertEquals("users", fingerprint.getTable());
+    Assert.assertEquals("SELECT users", fingerprint.getOperationName());
+  }
+
+  @Test
+  public void testFingerprintBackslashInStringLiteral() {
+    Assert.assertEquals("SELECT * FROM t WHERE p = ? AND id = ?",
+        QueryFingerprinter.fingerprint("SELECT * FROM t WHERE p = 'C:\\' AND id = 5").getFingerprint());
+    Assert.assertEquals("SELECT * FROM t WHERE p = ? AND id = ?",
+        QueryFingerprinter.fingerprint("SELECT * FROM t WHERE p = E'it\\'s' AND id = 5").getFingerprint());
+  }
+
+  @Test
+  public void testFingerprintKeepsBindMarkersAndCollapsesInLists() {
+    Assert.assertEquals("SELECT id FROM t1 WHERE id = $1 AND type IN (?)",
+        QueryFingerprinter.fingerprint("SELECT id FROM t1 WHERE id = $1 AND type in (1, 2, 3)").getFingerprint());
+  }
+
+  @Test
+  public void testOperationAndTable() {
+    Assert.assertEquals("INSERT orders", QueryFingerprinter.fingerprint("INSERT INTO orders(id) VALUES (1)").getOperationName());
+    Assert.assertEquals("UPDATE orders", QueryFingerprinter.fingerprint("update orders set a = 1").getOperationName());
+    Assert.assertEquals("DELETE orders", QueryFingerprinter.fingerprint("DELETE FROM orders WHERE id = 1").getOperationName());
+    Assert.assertEquals("SELECT", QueryFingerprinter.fingerprint("SELECT 1").getOperationName());
+    Assert.assertEquals("OTHER", QueryFingerprinter.fingerprint("VACUUM orders").getOperationName());
+  }
+
+  @Test
+  public void testCacheReturnsSameInstance() {
+    QueryFingerprintCache cache = new QueryFingerprintCache(16);
+    QueryFingerprint fingerprint = cache.get("SELECT 1");
+    Assert.assertSame(fingerprint, cache.get("SELECT 1"));
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testCacheIsBounded() {
+    QueryFingerprintCache cache = new QueryFingerprintCache(64);
+    for (int i = 0; i < 10_000; i++) {
+      cache.get("SELECT * FROM t" + i);
+    }
+    Assert.assertTrue(cache.size() <= 64);
+  }
+}
@@ -0,0 +1,78 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.ExecutionType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class QueryMetricsRecorderTest {
+
+  @Test
+  public void testHistogramPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    Assert.assertEquals(100, histogram.count());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.maxNanos());
+    assertWithin(TimeUnit.MILLISECONDS.toNanos(50), histogram.valueAtPercentile(50));
+    assertWithin(TimeUnit.MILLISECONDS.toNanos(99), histogram.valueAtPercentile(99));
+    Assert.assertEquals(50, histogram.percentileOf(TimeUnit.MILLISECONDS.toNanos(50)), 5);
+  }
+
+  @Test
+  public void testRollingHistogramForgetsOldWindows() {
+    LatencyHistogram histogram = new LatencyHistogram(3_000, 3);
+    long now = System.nanoTime();
+    histogram.record(TimeUnit.SECONDS.toNanos(5), now);
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(10), now + TimeUnit.SECONDS.toNanos(2));
+    Assert.assertEquals(TimeUnit.SECONDS.toNanos(5), histogram.maxNanos(now + TimeUnit.SECONDS.toNanos(2)));
+
+    long later = now + TimeUnit.SECONDS.toNanos(4);
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(10), histogram.maxNanos(later));
+    assertWithin(TimeUnit.MILLISECONDS.toNanos(10), histogram.valueAtPercentile(99, later));
+    Assert.assertEquals(0, histogram.maxNanos(now + TimeUnit.SECONDS.toNanos(10)));
+    // count and total time stay cumulative for the timers
+    Assert.assertEquals(2, histogram.count());
+  }
+
+  @Test
+  public void testBucketIndexIsMonotonic() {
+    int previous = -1;
+    for (long micros = 0; micros < 1 << 20; micros += 7) {
+      int index = LatencyHistogram.bucketIndex(micros);
+      Assert.assertTrue(index >= previous);
+      Assert.assertTrue(micros <= LatencyHistogram.bucketUpperBound(index));
+      previous = index;
+    }
+    Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testRecorderGroupsByFingerprintTypeAndOutcome() {
+    QueryMetricsRecorder recorder = new QueryMetricsRecorder(2);
+    List<QueryMetrics> registered = Collections.synchronizedList(new ArrayList<>());
+    recorder.addListener(registered::add);
+
+    QueryFingerprint select = QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 1");
+    recorder.record(select, ExecutionType.STATEMENT, true, 1000);
+    recorder.record(QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 2"), ExecutionType.STATEMENT, true, 1000);
+    recorder.record(select, ExecutionType.STATEMENT, false, 1000);
+    recorder.record(QueryFingerprinter.fingerprint("DELETE FROM users"), ExecutionType.STATEMENT, true, 1000);
+    recorder.record(QueryFingerprinter.fingerprint("DELETE FROM orders"), ExecutionType.STATEMENT, true, 1000);
+
+    Assert.assertEquals(2, recorder.queryMetrics(select, ExecutionType.STATEMENT, true).getHistogram().count());
+    Assert.assertEquals(1, recorder.queryMetrics(QueryMetricsRecorder.OVERFLOW_FINGERPRINT, ExecutionType.STATEMENT, true)
+        .getHistogram().count());
+    recorder.drain();
+    Assert.assertEquals(4, registered.size());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    Assert.assertEquals(expected, actual, expected * 0.07);
+  }
+}
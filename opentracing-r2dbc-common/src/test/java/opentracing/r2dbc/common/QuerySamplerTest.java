@@ -0,0 +1,45 @@
+package opentracing.r2dbc.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuerySamplerTest {
+
+  @Test
+  public void testTokenBucketAllowsBurstThenLimits() {
+    TokenBucket tokenBucket = new TokenBucket(10, 3);
+    long now = System.nanoTime();
+    Assert.assertTrue(tokenBucket.tryAcquire(now));
+    Assert.assertTrue(tokenBucket.tryAcquire(now));
+    Assert.assertTrue(tokenBucket.tryAcquire(now));
+    Assert.assertFalse(tokenBucket.tryAcquire(now));
+    Assert.assertTrue(tokenBucket.tryAcquire(now + 100_000_000L));
+    Assert.assertFalse(tokenBucket.tryAcquire(now + 100_000_000L));
+  }
+
+  @Test
+  public void testProbabilisticSampler() {
+    Assert.assertFalse(new ProbabilisticQuerySampler(0).isSampled(null));
+    Assert.assertTrue(new ProbabilisticQuerySampler(1).isSampled(null));
+  }
+
+  @Test
+  public void testPerStatementRateLimitingSampler() {
+    QuerySampler sampler = new PerStatementRateLimitingQuerySampler(1);
+    QueryFingerprint select = QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 1");
+    QueryFingerprint insert = QueryFingerprinter.fingerprint("INSERT INTO users(id) VALUES (1)");
+
+    Assert.assertTrue(sampler.isSampled(select));
+    Assert.assertFalse(sampler.isSampled(QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 2")));
+    Assert.assertTrue(sampler.isSampled(insert));
+  }
+
+  @Test
+  public void testCreateFromType() {
+    Assert.assertSame(QuerySampler.ALWAYS, QuerySamplers.create(null, 0));
+    Assert.assertSame(QuerySampler.NEVER, QuerySamplers.create("const", 0));
+    Assert.assertTrue(QuerySamplers.create("probabilistic", 0.5) instanceof ProbabilisticQuerySampler);
+    Assert.assertTrue(QuerySamplers.create("ratelimiting", 5) instanceof RateLimitingQuerySampler);
+    Assert.assertTrue(QuerySamplers.create("statement-ratelimiting", 5) instanceof PerStatementRateLimitingQuerySampler);
+  }
+}
@@ -0,0 +1,42 @@
+package opentracing.r2dbc.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RepeatedQueryDetectorTest {
+
+  @Test
+  public void testStatementCounts() {
+    RepeatedQueryDetector.StatementCounts counts = new RepeatedQueryDetector.StatementCounts(null);
+    for (int i = 0; i < RepeatedQueryDetector.MAX_STATEMENTS_PER_SCOPE; i++) {
+      Assert.assertEquals(1, counts.increment("SELECT " + i));
+    }
+
+    Assert.assertEquals(0, counts.increment("SELECT x"));
+    Assert.assertEquals(2, counts.increment("SELECT 0"));
+    Assert.assertEquals(2, counts.increment("SELECT 63"));
+  }
+
+  @Test
+  public void testMaxTraces() {
+    RepeatedQueryDetector detector = new RepeatedQueryDetector(2, 2, 1);
+    RepeatedQueryDetector.StatementCounts first = detector.traceCounts("1", null);
+    detector.traceCounts("2", null);
+    detector.traceCounts("1", null);
+    detector.traceCounts("3", null);
+
+    Assert.assertEquals(2, detector.traceCount());
+    Assert.assertSame(first, detector.traceCounts("1", null));
+    Assert.assertNotSame(first, detector.traceCounts("2", null));
+  }
+
+  @Test
+  public void testMaxTracesOverStripes() {
+    RepeatedQueryDetector detector = new RepeatedQueryDetector(2, 64);
+    for (int i = 0; i < 1000; i++) {
+      detector.traceCounts(Integer.toHexString(i), null);
+    }
+    Assert.assertTrue(detector.traceCount() <= 64);
+    Assert.assertTrue(detector.traceCount() > 0);
+  }
+}
@@ -0,0 +1,180 @@
+package opentracing.r2dbc.common;
+
+import io.opentracing.Scope;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopSpan;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import io.r2dbc.proxy.core.ConnectionInfo;
+import io.r2dbc.proxy.core.StatementInfo;
+import io.r2dbc.proxy.core.ValueStore;
+import io.r2dbc.proxy.test.MockConnectionInfo;
+import io.r2dbc.proxy.test.MockStatementInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlCommenterTest {
+
+  private final MockTracer mockTracer = new MockTracer();
+
+  @Test
+  public void testComment() {
+    SqlCommenter commenter = new SqlCommenter(mockTracer, "shop");
+    MockSpan connectionSpan = mockTracer.buildSpan("r2dbc:connection").start();
+    ValueStore valueStore = ValueStore.create();
+    valueStore.put(OpenTracingExecutorListener.CONNECTION_SPAN_KEY, connectionSpan);
+    valueStore.put(OpenTracingExecutorListener.ROUTE_KEY, "/users/{id}");
+
+    String query = commenter.onCreateStatement("SELECT * FROM users WHERE id = $1", statementInfo(valueStore));
+
+    String traceparent = "00-" + SqlCommenter.hexId(connectionSpan.context().toTraceId(), 32) + "-"
+        + SqlCommenter.hexId(connectionSpan.context().toSpanId(), 16) + "-01";
+    Assert.assertEquals("SELECT * FROM users WHERE id = $1 /*route='%2Fusers%2F%7Bid%7D',service='shop',"
+        + "traceparent='" + traceparent + "'*/", query);
+    Assert.assertEquals(55, traceparent.length());
+    Assert.assertEquals("SELECT * FROM users WHERE id = $1", SqlCommenter.strip(query));
+    // built once per span and route
+    Object comment = valueStore.get(OpenTracingExecutorListener.SQL_COMMENT_KEY);
+    Assert.assertEquals(query, commenter.onCreateStatement("SELECT * FROM users WHERE id = $1",
+        statementInfo(valueStore)));
+    Assert.assertSame(comment, valueStore.get(OpenTracingExecutorListener.SQL_COMMENT_KEY));
+  }
+
+  @Test
+  public void testCommentPlacement() {
+    SqlCommenter commenter = new SqlCommenter(mockTracer, null);
+    ValueStore valueStore = ValueStore.create();
+    valueStore.put(OpenTracingExecutorListener.CONNECTION_SPAN_KEY, mockTracer.buildSpan("r2dbc:connection").start());
+
+    // before the terminating semicolon, which would otherwise leave a second statement
+    String query = commenter.onCreateStatement("SELECT 1;\n", statementInfo(valueStore));
+    Assert.assertTrue(query, query.startsWith("SELECT 1 /*traceparent='00-"));
+    Assert.assertTrue(query, query.endsWith("'*/;\n"));
+    Assert.assertEquals("SELECT 1;\n", SqlCommenter.strip(query));
+    Assert.assertTrue(commenter.onCreateStatement("SELECT ';'", statementInfo(valueStore)).endsWith("'*/"));
+
+    // a trailing line comment would swallow the comment
+    Assert.assertEquals("SELECT 1 -- note", commenter.onCreateStatement("SELECT 1 -- note", statementInfo(valueStore)));
+    Assert.assertEquals(-1, SqlCommenter.commentIndex("SELECT 1\nFROM t -- note;"));
+    // but not one of an earlier line or within a string
+    Assert.assertTrue(commenter.onCreateStatement("SELECT 1 -- note\nFROM t", statementInfo(valueStore))
+        .endsWith("'*/"));
+    Assert.assertTrue(commenter.onCreateStatement("SELECT 1 -- note\n;", statementInfo(valueStore))
+        .endsWith("'*/;"));
+    Assert.assertEquals(12, SqlCommenter.commentIndex("SELECT '--a';"));
+  }
+
+  @Test
+  public void testCommentOfReusedConnection() {
+    SqlCommenter commenter = new SqlCommenter(mockTracer, null);
+    MockSpan connectionSpan = mockTracer.buildSpan("r2dbc:connection").start();
+    MockSpan firstRequest = mockTracer.buildSpan("first").start();
+    ValueStore valueStore = ValueStore.create();
+    valueStore.put(OpenTracingExecutorListener.CONNECTION_SPAN_KEY, connectionSpan);
+    valueStore.put(OpenTracingExecutorListener.PARENT_SPAN_KEY, firstRequest);
+
+    Assert.assertTrue(commenter.onCreateStatement("SELECT 1", statementInfo(valueStore))
+        .contains(SqlCommenter.hexId(firstRequest.context().toSpanId(), 16)));
+
+    // a later request on the same connection comments its own span, not the one the connection remembers
+    MockSpan secondRequest = mockTracer.buildSpan("second").start();
+    try (Scope ignored = mockTracer.activateSpan(secondRequest)) {
+      Assert.assertTrue(commenter.onCreateStatement("SELECT 1", statementInfo(valueStore))
+          .contains(SqlCommenter.hexId(secondRequest.context().toSpanId(), 16)));
+    }
+
+    // a connection used once keeps the parent it was created with
+    valueStore.put(OpenTracingExecutorListener.PER_ACQUIRE_KEY, Boolean.TRUE);
+    try (Scope ignored = mockTracer.activateSpan(secondRequest)) {
+      Assert.assertTrue(commenter.onCreateStatement("SELECT 1", statementInfo(valueStore))
+          .contains(SqlCommenter.hexId(firstRequest.context().toSpanId(), 16)));
+    }
+  }
+
+  @Test
+  public void testTraceFlags() {
+    // no sampling decision propagated
+    MockSpan span = mockTracer.buildSpan("a").start();
+    Assert.assertEquals("01", new SqlCommenter(mockTracer, null).traceFlags(span.context()));
+    Assert.assertEquals("01", new SqlCommenter(null, null).traceFlags(span.context()));
+
+    Assert.assertEquals("00", traceFlags("X-B3-Sampled", "0"));
+    Assert.assertEquals("01", traceFlags("X-B3-Sampled", "1"));
+    Assert.assertEquals("00", traceFlags("b3", "80f198ee56343ba864fe8b2a57d3eff7-e457b5a2e4d86bd1-0"));
+    Assert.assertEquals("01", traceFlags("b3", "d"));
+    Assert.assertEquals("00", traceFlags("uber-trace-id", "5b8aa5a2d2c872e8:5b8aa5a2d2c872e8:0:0"));
+    Assert.assertEquals("01", traceFlags("uber-trace-id", "5b8aa5a2d2c872e8%3A5b8aa5a2d2c872e8%3A0%3A3"));
+    Assert.assertEquals("00", traceFlags("traceparent", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00"));
+
+    MockTracer unsampledTracer = tracer("x-b3-sampled", "0");
+    SqlCommenter commenter = new SqlCommenter(unsampledTracer, null);
+    ValueStore valueStore = ValueStore.create();
+    valueStore.put(OpenTracingExecutorListener.CONNECTION_SPAN_KEY,
+        unsampledTracer.buildSpan("r2dbc:connection").start());
+    Assert.assertTrue(commenter.onCreateStatement("SELECT 1", statementInfo(valueStore)).endsWith("-00'*/"));
+  }
+
+  @Test
+  public void testNoComment() {
+    SqlCommenter commenter = new SqlCommenter(mockTracer, null);
+    ValueStore valueStore = ValueStore.create();
+    Assert.assertEquals("SELECT 1", commenter.onCreateStatement("SELECT 1", statementInfo(valueStore)));
+
+    valueStore.put(OpenTracingExecutorListener.CONNECTION_SPAN_KEY, NoopSpan.INSTANCE);
+    Assert.assertEquals("SELECT 1", commenter.onCreateStatement("SELECT 1", statementInfo(valueStore)));
+    Assert.assertEquals("SELECT 1 /* hint */", SqlCommenter.strip("SELECT 1 /* hint */"));
+  }
+
+  @Test
+  public void testSampledMode() {
+    SqlCommenter commenter = new SqlCommenter(mockTracer, "shop", SqlCommenter.Mode.SAMPLED, QuerySampler.NEVER,
+        SqlCommenter.DEFAULT_SLOW_WINDOW_MS, SqlCommenter.DEFAULT_MAX_SLOW_STATEMENTS);
+    ValueStore valueStore = ValueStore.create();
+    valueStore.put(OpenTracingExecutorListener.CONNECTION_SPAN_KEY, mockTracer.buildSpan("r2dbc:connection").start());
+
+    String query = commenter.onCreateStatement("SELECT * FROM users WHERE id = 1", statementInfo(valueStore));
+    Assert.assertEquals("SELECT * FROM users WHERE id = 1", query);
+    Assert.assertFalse(commenter.isTraced(query));
+
+    commenter.markSlow(QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 2"));
+    query = commenter.onCreateStatement("SELECT * FROM users WHERE id = 1", statementInfo(valueStore));
+    Assert.assertTrue(query.contains("traceparent='00-"));
+    Assert.assertTrue(commenter.isTraced(query));
+    Assert.assertFalse(new SqlCommenter(mockTracer, "shop").isTraced(query));
+  }
+
+  @Test
+  public void testHexId() {
+    Assert.assertEquals("000000000000002a", SqlCommenter.hexId("2A", 16));
+    Assert.assertEquals("0123456789abcdef", SqlCommenter.hexId("0123456789abcdef", 16));
+    Assert.assertEquals("not-hex", SqlCommenter.hexId("not-hex", 16));
+  }
+
+  private static String traceFlags(String header, String value) {
+    MockTracer tracer = tracer(header, value);
+    return new SqlCommenter(tracer, null).traceFlags(tracer.buildSpan("a").start().context());
+  }
+
+  /**
+   * A tracer which propagates the given header only.
+   */
+  private static MockTracer tracer(String header, String value) {
+    return new MockTracer(new MockTracer.Propagator() {
+      @Override
+      public <C> void inject(MockSpan.MockContext ctx, Format<C> format, C carrier) {
+        ((TextMap) carrier).put(header, value);
+      }
+
+      @Override
+      public <C> MockSpan.MockContext extract(Format<C> format, C carrier) {
+        return null;
+      }
+    });
+  }
+
+  private static StatementInfo statementInfo(ValueStore valueStore) {
+    ConnectionInfo connectionInfo = MockConnectionInfo.builder().valueStore(valueStore).build();
+    return MockStatementInfo.builder().connectionInfo(connectionInfo).build();
+  }
+}
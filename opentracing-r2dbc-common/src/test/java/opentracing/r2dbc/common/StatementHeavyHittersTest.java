@@ -0,0 +1,87 @@
+package opentracing.r2dbc.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class StatementHeavyHittersTest {
+
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final QueryFingerprint SELECT = QueryFingerprinter.fingerprint("SELECT * FROM users WHERE id = 1");
+  private static final QueryFingerprint UPDATE = QueryFingerprinter.fingerprint("UPDATE users SET name = 'a'");
+  private static final QueryFingerprint DELETE = QueryFingerprinter.fingerprint("DELETE FROM users WHERE id = 1");
+
+  @Test
+  public void testTopByMetric() {
+    StatementHeavyHitters heavyHitters = new StatementHeavyHitters(16, 1_000, 5);
+    long now = System.nanoTime();
+    for (int i = 0; i < 10; i++) {
+      heavyHitters.record(SELECT, 1_000, now);
+    }
+    heavyHitters.record(UPDATE, 50_000, now);
+    heavyHitters.recordRows(SELECT, 10, now);
+    heavyHitters.recordRows(UPDATE, 100, now);
+
+    List<StatementHeavyHitters.HeavyHitter> byTime =
+        heavyHitters.top(StatementHeavyHitters.Metric.TIME, 20, Duration.ofSeconds(1), now);
+    Assert.assertEquals(2, byTime.size());
+    Assert.assertEquals(UPDATE.getFingerprint(), byTime.get(0).getStatement());
+    Assert.assertEquals(50_000, byTime.get(0).getValue());
+    Assert.assertEquals(0, byTime.get(0).getError());
+
+    List<StatementHeavyHitters.HeavyHitter> byCount =
+        heavyHitters.top(StatementHeavyHitters.Metric.COUNT, 1, Duration.ofSeconds(1), now);
+    Assert.assertEquals(1, byCount.size());
+    Assert.assertEquals(SELECT.getFingerprint(), byCount.get(0).getStatement());
+    Assert.assertEquals(10, byCount.get(0).getValue());
+
+    Assert.assertEquals(UPDATE.getFingerprint(), heavyHitters.top(StatementHeavyHitters.Metric.ROWS, 1,
+        Duration.ofSeconds(1), now).get(0).getStatement());
+  }
+
+  @Test
+  public void testBoundedCapacity() {
+    StatementHeavyHitters heavyHitters = new StatementHeavyHitters(2, 1_000, 5);
+    long now = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      heavyHitters.record(SELECT, 1, now);
+      if (i % 10 == 0) {
+        heavyHitters.record(UPDATE, 1, now);
+        heavyHitters.record(DELETE, 1, now);
+      }
+    }
+
+    List<StatementHeavyHitters.HeavyHitter> top =
+        heavyHitters.top(StatementHeavyHitters.Metric.COUNT, 20, Duration.ofSeconds(1), now);
+    Assert.assertEquals(2, top.size());
+    Assert.assertEquals(SELECT.getFingerprint(), top.get(0).getStatement());
+    Assert.assertTrue(top.get(0).getValue() >= 100);
+    Assert.assertTrue(top.get(0).getValue() - top.get(0).getError() <= 100);
+    Assert.assertTrue(top.get(1).getValue() >= 10);
+  }
+
+  @Test
+  public void testSlidingWindows() {
+    StatementHeavyHitters heavyHitters = new StatementHeavyHitters(16, 1_000, 3);
+    long now = System.nanoTime();
+    heavyHitters.record(UPDATE, 1_000, now);
+    heavyHitters.record(SELECT, 10, now + WINDOW_NANOS);
+
+    List<StatementHeavyHitters.HeavyHitter> lastWindow =
+        heavyHitters.top(StatementHeavyHitters.Metric.TIME, 20, Duration.ofSeconds(1), now + WINDOW_NANOS);
+    Assert.assertEquals(1, lastWindow.size());
+    Assert.assertEquals(SELECT.getFingerprint(), lastWindow.get(0).getStatement());
+    Assert.assertEquals(2, heavyHitters.top(StatementHeavyHitters.Metric.TIME, 20, Duration.ofSeconds(2),
+        now + WINDOW_NANOS).size());
+
+    // windows older than the ring are reused
+    heavyHitters.record(SELECT, 10, now + WINDOW_NANOS * 3);
+    List<StatementHeavyHitters.HeavyHitter> all =
+        heavyHitters.top(StatementHeavyHitters.Metric.TIME, 20, Duration.ofMinutes(1), now + WINDOW_NANOS * 3);
+    Assert.assertEquals(1, all.size());
+    Assert.assertEquals(20, all.get(0).getValue());
+  }
+}
@@ -0,0 +1,64 @@
+package opentracing.r2dbc.common;
+
+import io.r2dbc.proxy.core.QueryInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class StatementMatcherTest {
+
+  @Test
+  public void testExactRule() {
+    StatementMatcher matcher = StatementMatcher.compile(Collections.singleton("SELECT 1"));
+    Assert.assertTrue(matcher.matches("SELECT 1"));
+    Assert.assertFalse(matcher.matches("SELECT 12"));
+  }
+
+  @Test
+  public void testPrefixSuffixAndContainsRules() {
+    StatementMatcher matcher = StatementMatcher.compile(Arrays.asList(
+        "prefix:select 1", "prefix:SHOW ", "suffix:FROM DUAL", "contains:/* health */", "contains:pg_catalog"));
+    Assert.assertTrue(matcher.matches("  SELECT 1"));
+    Assert.assertTrue(matcher.matches("show tables"));
+    Assert.assertTrue(matcher.matches("SELECT now() from dual;"));
+    Assert.assertTrue(matcher.matches("SELECT 2 /* health */"));
+    Assert.assertTrue(matcher.matches("SELECT * FROM PG_CATALOG.pg_tables"));
+    Assert.assertFalse(matcher.matches("SELECT 2 FROM users"));
+    Assert.assertFalse(matcher.matches("INSERT INTO pg_cat VALUES (1)"));
+  }
+
+  @Test
+  public void testEmptyRuleIsRejected() {
+    for (String rule : Arrays.asList("prefix:", "suffix:", "contains:", "glob:", "regex:", "fingerprint:")) {
+      try {
+        StatementMatcher.compile(Arrays.asList("SELECT 1", rule));
+        Assert.fail(rule);
+      } catch (IllegalArgumentException expected) {
+        Assert.assertTrue(expected.getMessage().contains(rule));
+      }
+    }
+  }
+
+  @Test
+  public void testGlobRegexAndFingerprintRules() {
+    StatementMatcher matcher = StatementMatcher.compile(Arrays.asList(
+        "glob:select * from locks where id = ?",
+        "regex:UPDATE heartbeat SET .*",
+        "fingerprint:SELECT * FROM users WHERE id = 1"));
+    Assert.assertTrue(matcher.matches("SELECT * FROM locks WHERE id = 7"));
+    Assert.assertTrue(matcher.matches("UPDATE heartbeat SET ts = now()"));
+    Assert.assertTrue(matcher.matches("SELECT *  FROM users WHERE id = 42"));
+    Assert.assertTrue(matcher.matches("SELECT * FROM users WHERE id = 42", new QueryFingerprintCache()));
+    Assert.assertFalse(matcher.matches("SELECT * FROM users WHERE name = 'x'"));
+  }
+
+  @Test
+  public void testMatchesAllQueries() {
+    StatementMatcher matcher = StatementMatcher.compile(Collections.singleton("prefix:SELECT 1"));
+    Assert.assertTrue(matcher.matchesAll(Arrays.asList(new QueryInfo("SELECT 1"), new QueryInfo("select 1")), null));
+    Assert.assertFalse(matcher.matchesAll(Arrays.asList(new QueryInfo("SELECT 1"), new QueryInfo("SELECT 2")), null));
+    Assert.assertFalse(StatementMatcher.NONE.matches("SELECT 1"));
+  }
+}
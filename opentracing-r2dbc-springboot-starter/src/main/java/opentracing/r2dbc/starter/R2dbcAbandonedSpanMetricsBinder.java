@@ -0,0 +1,31 @@
+package opentracing.r2dbc.starter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import opentracing.r2dbc.common.AbandonedSpanReaper;
+
+import java.util.Locale;
+
+public class R2dbcAbandonedSpanMetricsBinder implements MeterBinder {
+
+  private final AbandonedSpanReaper spanReaper;
+
+  public R2dbcAbandonedSpanMetricsBinder(AbandonedSpanReaper spanReaper) {
+    this.spanReaper = spanReaper;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    for (AbandonedSpanReaper.Kind kind : AbandonedSpanReaper.Kind.values()) {
+      String type = kind.name().toLowerCase(Locale.ROOT);
+      Gauge.builder("r2dbc.spans.open", spanReaper, reaper -> reaper.getOpenSpans(kind))
+          .tag("type", type)
+          .register(registry);
+      FunctionCounter.builder("r2dbc.spans.abandoned", spanReaper, reaper -> reaper.getAbandonedSpans(kind))
+          .tag("type", type)
+          .register(registry);
+    }
+  }
+}
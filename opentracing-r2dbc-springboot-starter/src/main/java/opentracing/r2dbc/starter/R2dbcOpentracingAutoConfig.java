@@ -1,15 +1,39 @@
 package opentracing.r2dbc.starter;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.opentracing.Tracer;
-import io.r2dbc.proxy.listener.ProxyMethodExecutionListener;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactory;
+import opentracing.r2dbc.common.AbandonedSpanReaper;
+import opentracing.r2dbc.common.AsyncSpanFinisher;
+import opentracing.r2dbc.common.BindParameterMasker;
+import opentracing.r2dbc.common.ConnectionPoolRecorder;
+import opentracing.r2dbc.common.ExplainPlanCapture;
 import opentracing.r2dbc.common.OpenTracingExecutorListener;
+import opentracing.r2dbc.common.OverheadGovernor;
+import opentracing.r2dbc.common.QueryMetricsRecorder;
+import opentracing.r2dbc.common.QuerySamplers;
+import opentracing.r2dbc.common.SlowQueryMode;
+import opentracing.r2dbc.common.SpanFinisher;
+import opentracing.r2dbc.common.SqlCommenter;
+import opentracing.r2dbc.common.StatementHeavyHitters;
+import opentracing.r2dbc.common.TailSamplingRule;
 import opentracing.r2dbc.common.TracingConfiguration;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.web.server.WebFilter;
 
 @Configuration
 @ConditionalOnBean(value = Tracer.class)
@@ -27,13 +51,282 @@ public class R2dbcOpentracingAutoConfig {
   }
 
   @Bean
-  public ProxyMethodExecutionListener getR2dbcOpenTracer() {
+  public OpenTracingExecutorListener getR2dbcOpenTracer(ObjectProvider<QueryMetricsRecorder> metricsRecorder,
+                                                        ObjectProvider<ConnectionPoolRecorder> connectionPoolRecorder,
+                                                        ObjectProvider<BindParameterMasker> bindParameterMasker,
+                                                        ObjectProvider<SpanFinisher> spanFinisher,
+                                                        ObjectProvider<OverheadGovernor> overheadGovernor,
+                                                        ObjectProvider<AbandonedSpanReaper> abandonedSpanReaper,
+                                                        ObjectProvider<StatementHeavyHitters> heavyHitters,
+                                                        ObjectProvider<ExplainPlanCapture> explainPlanCapture,
+                                                        ObjectProvider<SqlCommenter> sqlCommenter) {
+    R2dbcOpentracingConfiguration.BindParameters bindParameters = r2dbcOpentracingConfiguration.getBindParameters();
     return new OpenTracingExecutorListener(tracer, TracingConfiguration.TracingConfigurationBuilder
         .aTracingConfiguration()
         .withIgnoreStatements(r2dbcOpentracingConfiguration.getIgnoreStatements())
+        .withMetricsOnlyStatements(r2dbcOpentracingConfiguration.getMetricsOnlyStatements())
         .withTraceEnabled(r2dbcOpentracingConfiguration.isEnabled())
         .withSlowQueryThresholdMs(r2dbcOpentracingConfiguration.isShowSlowSql() ?
             r2dbcOpentracingConfiguration.getSlowQueryThresholdMs() : 0)
-        .build());
+        .withSlowQueryMode(r2dbcOpentracingConfiguration.isShowSlowSql() ?
+            r2dbcOpentracingConfiguration.getSlowQueryMode() : SlowQueryMode.FIXED)
+        .withSlowQueryPercentile(r2dbcOpentracingConfiguration.getSlowQueryPercentile())
+        .withSlowQueryFactor(r2dbcOpentracingConfiguration.getSlowQueryFactor())
+        .withSlowQueryMinSamples(r2dbcOpentracingConfiguration.getSlowQueryMinSamples())
+        .withSlowQueryWindowMs(r2dbcOpentracingConfiguration.getSlowQueryWindowMs())
+        .withNormalizeStatements(r2dbcOpentracingConfiguration.isNormalizeStatements())
+        .withSpanNameFromStatement(r2dbcOpentracingConfiguration.isSpanNameFromStatement())
+        .withStatementCacheSize(r2dbcOpentracingConfiguration.getStatementCacheSize())
+        .withBatchMaxStatements(r2dbcOpentracingConfiguration.getBatchMaxStatements())
+        .withBatchMaxStatementLength(r2dbcOpentracingConfiguration.getBatchMaxStatementLength())
+        .withSampler(QuerySamplers.create(r2dbcOpentracingConfiguration.getSampler().getType(),
+            r2dbcOpentracingConfiguration.getSampler().getParam(),
+            r2dbcOpentracingConfiguration.getSampler().getMaxStatements()))
+        .withCaptureBindParameters(bindParameters.isEnabled())
+        .withBindParameterMaxValueLength(bindParameters.getMaxValueLength())
+        .withBindParameterMaxLength(bindParameters.getMaxLength())
+        .withBindParameterAllow(bindParameters.getAllow())
+        .withBindParameterDeny(bindParameters.getDeny())
+        .withBindParameterMasker(bindParameterMasker.getIfAvailable())
+        .withResultStatistics(r2dbcOpentracingConfiguration.isResultStatistics())
+        .withTailSampling(r2dbcOpentracingConfiguration.getTailSampling().isEnabled())
+        .withTailSamplingMaxSpans(r2dbcOpentracingConfiguration.getTailSampling().getMaxSpans())
+        .withTailSamplingMaxAgeMs(r2dbcOpentracingConfiguration.getTailSampling().getMaxAgeMs())
+        .withTailSamplingRule(TailSamplingRule.statements(r2dbcOpentracingConfiguration.getTailSampling().getKeepStatements()))
+        .withSpanFinisher(spanFinisher.getIfAvailable())
+        .withErrorFingerprinting(r2dbcOpentracingConfiguration.getErrors().isFingerprinting())
+        .withErrorFullDetailPerWindow(r2dbcOpentracingConfiguration.getErrors().getFullDetailPerWindow())
+        .withErrorWindowMs(r2dbcOpentracingConfiguration.getErrors().getWindowMs())
+        .withErrorMaxFingerprints(r2dbcOpentracingConfiguration.getErrors().getMaxFingerprints())
+        .withRepeatedQueryThreshold(r2dbcOpentracingConfiguration.getRepeatedQueries().getThreshold())
+        .withRepeatedQueryMaxTraces(r2dbcOpentracingConfiguration.getRepeatedQueries().getMaxTraces())
+        .withOverheadGovernor(overheadGovernor.getIfAvailable())
+        .withAbandonedSpanReaper(abandonedSpanReaper.getIfAvailable())
+        .withStatementHeavyHitters(heavyHitters.getIfAvailable())
+        .withExplainPlanCapture(explainPlanCapture.getIfAvailable())
+        .withSqlCommenter(sqlCommenter.getIfAvailable())
+        .build(), metricsRecorder.getIfAvailable(), connectionPoolRecorder.getIfAvailable());
+  }
+
+  @Configuration
+  @ConditionalOnProperty(prefix = "opentracing.r2dbc.async-finish", name = "enabled", havingValue = "true")
+  static class R2dbcAsyncFinishConfig {
+
+    @Bean
+    public AsyncSpanFinisher r2dbcSpanFinisher(R2dbcOpentracingConfiguration r2dbcOpentracingConfiguration) {
+      R2dbcOpentracingConfiguration.AsyncFinish asyncFinish = r2dbcOpentracingConfiguration.getAsyncFinish();
+      return new AsyncSpanFinisher(asyncFinish.getBufferSize(), asyncFinish.getOverflowPolicy());
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "opentracing.r2dbc.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class R2dbcAsyncFinishMetricsConfig {
+
+      @Bean
+      public R2dbcSpanFinisherMetricsBinder r2dbcSpanFinisherMetricsBinder(AsyncSpanFinisher r2dbcSpanFinisher) {
+        return new R2dbcSpanFinisherMetricsBinder(r2dbcSpanFinisher);
+      }
+    }
+  }
+
+  @Configuration
+  @ConditionalOnProperty(prefix = "opentracing.r2dbc.overhead", name = "enabled", havingValue = "true")
+  static class R2dbcOverheadConfig {
+
+    @Bean
+    public OverheadGovernor r2dbcOverheadGovernor(R2dbcOpentracingConfiguration r2dbcOpentracingConfiguration) {
+      R2dbcOpentracingConfiguration.Overhead overhead = r2dbcOpentracingConfiguration.getOverhead();
+      return new OverheadGovernor(overhead.getBudget(), overhead.getMaxSpansPerSecond(), overhead.getWindowMs(),
+          overhead.getSampleEvery());
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "opentracing.r2dbc.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class R2dbcOverheadMetricsConfig {
+
+      @Bean
+      public R2dbcOverheadMetricsBinder r2dbcOverheadMetricsBinder(OverheadGovernor r2dbcOverheadGovernor) {
+        return new R2dbcOverheadMetricsBinder(r2dbcOverheadGovernor);
+      }
+    }
+  }
+
+  @Configuration
+  @ConditionalOnProperty(prefix = "opentracing.r2dbc.abandoned-spans", name = "enabled", havingValue = "true")
+  static class R2dbcAbandonedSpansConfig {
+
+    @Bean
+    public AbandonedSpanReaper r2dbcAbandonedSpanReaper(R2dbcOpentracingConfiguration r2dbcOpentracingConfiguration) {
+      R2dbcOpentracingConfiguration.AbandonedSpans abandonedSpans = r2dbcOpentracingConfiguration.getAbandonedSpans();
+      return new AbandonedSpanReaper(abandonedSpans.getMaxAgeMs(), abandonedSpans.getTickMs());
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "opentracing.r2dbc.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class R2dbcAbandonedSpansMetricsConfig {
+
+      @Bean
+      public R2dbcAbandonedSpanMetricsBinder r2dbcAbandonedSpanMetricsBinder(
+          AbandonedSpanReaper r2dbcAbandonedSpanReaper) {
+        return new R2dbcAbandonedSpanMetricsBinder(r2dbcAbandonedSpanReaper);
+      }
+    }
+  }
+
+  @Configuration
+  @ConditionalOnProperty(prefix = "opentracing.r2dbc.heavy-hitters", name = "enabled", havingValue = "true", matchIfMissing = true)
+  static class R2dbcHeavyHittersConfig {
+
+    @Bean
+    public StatementHeavyHitters r2dbcStatementHeavyHitters(R2dbcOpentracingConfiguration r2dbcOpentracingConfiguration) {
+      R2dbcOpentracingConfiguration.HeavyHitters heavyHitters = r2dbcOpentracingConfiguration.getHeavyHitters();
+      return new StatementHeavyHitters(heavyHitters.getCapacity(), heavyHitters.getWindowMs(),
+          heavyHitters.getWindows());
+    }
+
+    @Configuration
+    @ConditionalOnClass(Endpoint.class)
+    static class R2dbcHeavyHittersEndpointConfig {
+
+      @Bean
+      @ConditionalOnAvailableEndpoint
+      public R2dbcStatementsEndpoint r2dbcStatementsEndpoint(StatementHeavyHitters r2dbcStatementHeavyHitters) {
+        return new R2dbcStatementsEndpoint(r2dbcStatementHeavyHitters);
+      }
+    }
+  }
+
+  @Configuration
+  @ConditionalOnProperty(prefix = "opentracing.r2dbc.explain", name = "enabled", havingValue = "true")
+  static class R2dbcExplainConfig {
+
+    @Bean
+    public ExplainPlanCapture r2dbcExplainPlanCapture(R2dbcOpentracingConfiguration r2dbcOpentracingConfiguration,
+                                                      BeanFactory beanFactory) {
+      R2dbcOpentracingConfiguration.Explain explain = r2dbcOpentracingConfiguration.getExplain();
+      String connectionFactoryName = explain.getConnectionFactory();
+      // never the application's own factory, which is usually traced and would trace the EXPLAINs as queries
+      if (connectionFactoryName == null || connectionFactoryName.trim().isEmpty()) {
+        throw new IllegalArgumentException("opentracing.r2dbc.explain.connectionFactory is required to capture plans");
+      }
+      // looked up on the first capture, so that it may depend on the listener
+      return new ExplainPlanCapture(() -> beanFactory.getBean(connectionFactoryName.trim(), ConnectionFactory.class),
+          explain.getDialect(), explain.getWindowMs(), explain.getPermitsPerSecond(), explain.getMaxPlans(),
+          explain.getTimeoutMs());
+    }
+
+    @Configuration
+    @ConditionalOnClass(Endpoint.class)
+    static class R2dbcExplainEndpointConfig {
+
+      @Bean
+      @ConditionalOnAvailableEndpoint
+      public R2dbcPlansEndpoint r2dbcPlansEndpoint(ExplainPlanCapture r2dbcExplainPlanCapture) {
+        return new R2dbcPlansEndpoint(r2dbcExplainPlanCapture);
+      }
+    }
+  }
+
+  @Configuration
+  @ConditionalOnProperty(prefix = "opentracing.r2dbc.sql-comment", name = "enabled", havingValue = "true")
+  static class R2dbcSqlCommentConfig {
+
+    @Bean
+    public SqlCommenter r2dbcSqlCommenter(R2dbcOpentracingConfiguration r2dbcOpentracingConfiguration,
+                                          Tracer tracer, Environment environment) {
+      R2dbcOpentracingConfiguration.SqlComment sqlComment = r2dbcOpentracingConfiguration.getSqlComment();
+      String service = sqlComment.getService() != null ?
+          sqlComment.getService() : environment.getProperty("spring.application.name");
+      return new SqlCommenter(tracer, service, sqlComment.getMode(), QuerySamplers.create(sqlComment.getSampler().getType(),
+          sqlComment.getSampler().getParam(), sqlComment.getSampler().getMaxStatements()),
+          sqlComment.getSlowWindowMs(), sqlComment.getMaxSlowStatements());
+    }
+
+    @Bean
+    public static R2dbcSqlCommentPostProcessor r2dbcSqlCommentPostProcessor(
+        ObjectProvider<SqlCommenter> r2dbcSqlCommenter) {
+      return new R2dbcSqlCommentPostProcessor(r2dbcSqlCommenter);
+    }
+  }
+
+  @Configuration
+  @ConditionalOnClass(MeterRegistry.class)
+  @ConditionalOnProperty(prefix = "opentracing.r2dbc.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+  static class R2dbcMetricsConfig {
+
+    @Bean
+    public QueryMetricsRecorder r2dbcQueryMetricsRecorder(R2dbcOpentracingConfiguration r2dbcOpentracingConfiguration) {
+      return new QueryMetricsRecorder(r2dbcOpentracingConfiguration.getMetrics().getMaxStatements());
+    }
+
+    @Bean
+    public R2dbcQueryMetricsBinder r2dbcQueryMetricsBinder(QueryMetricsRecorder r2dbcQueryMetricsRecorder) {
+      return new R2dbcQueryMetricsBinder(r2dbcQueryMetricsRecorder);
+    }
+  }
+
+  @Configuration
+  @ConditionalOnClass(ConnectionPool.class)
+  static class R2dbcPoolConfig {
+
+    @Bean
+    public ConnectionPoolRecorder r2dbcConnectionPoolRecorder() {
+      return new ConnectionPoolRecorder();
+    }
+
+    // a pool wrapping the traced connection factory depends on the listener, so pools are only looked up once all
+    // singletons exist, pools acquired from earlier are registered on their first acquire
+    @Bean
+    public SmartInitializingSingleton r2dbcConnectionPoolRegistration(
+        ConnectionPoolRecorder r2dbcConnectionPoolRecorder, ObjectProvider<ConnectionPool> connectionPools) {
+      return () -> connectionPools.orderedStream().forEach(r2dbcConnectionPoolRecorder::poolAcquireMetrics);
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "opentracing.r2dbc.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class R2dbcPoolMetricsConfig {
+
+      @Bean
+      public R2dbcPoolMetricsBinder r2dbcPoolMetricsBinder(ConnectionPoolRecorder r2dbcConnectionPoolRecorder) {
+        return new R2dbcPoolMetricsBinder(r2dbcConnectionPoolRecorder);
+      }
+    }
+  }
+
+  @Configuration
+  @ConditionalOnClass(Endpoint.class)
+  static class R2dbcEndpointConfig {
+
+    @Bean
+    @ConditionalOnAvailableEndpoint
+    public R2dbcTracingEndpoint r2dbcTracingEndpoint(OpenTracingExecutorListener r2dbcOpenTracer,
+                                                     R2dbcOpentracingConfiguration r2dbcOpentracingConfiguration) {
+      return new R2dbcTracingEndpoint(r2dbcOpenTracer, r2dbcOpentracingConfiguration.getSampler());
+    }
+  }
+
+  @Configuration
+  @ConditionalOnProperty(prefix = "opentracing.r2dbc.reactor-context", name = "enabled", havingValue = "true", matchIfMissing = true)
+  static class R2dbcReactorContextConfig {
+
+    @Bean
+    public static R2dbcReactorContextPostProcessor r2dbcReactorContextPostProcessor() {
+      return new R2dbcReactorContextPostProcessor();
+    }
+
+    @Configuration
+    @ConditionalOnClass(WebFilter.class)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class R2dbcWebFluxConfig {
+
+      @Bean
+      public R2dbcTracingWebFilter r2dbcTracingWebFilter(Tracer tracer, ObjectProvider<SqlCommenter> sqlCommenter) {
+        return new R2dbcTracingWebFilter(tracer, sqlCommenter.getIfAvailable() != null);
+      }
+    }
   }
 }
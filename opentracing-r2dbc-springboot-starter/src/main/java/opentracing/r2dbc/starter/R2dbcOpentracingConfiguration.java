@@ -1,6 +1,16 @@
 package opentracing.r2dbc.starter;
 
 
+import opentracing.r2dbc.common.AbandonedSpanReaper;
+import opentracing.r2dbc.common.AsyncSpanFinisher;
+import opentracing.r2dbc.common.ExplainDialect;
+import opentracing.r2dbc.common.ExplainPlanCapture;
+import opentracing.r2dbc.common.OverheadGovernor;
+import opentracing.r2dbc.common.QuerySamplers;
+import opentracing.r2dbc.common.SlowQueryMode;
+import opentracing.r2dbc.common.SqlCommenter;
+import opentracing.r2dbc.common.StatementHeavyHitters;
+import opentracing.r2dbc.common.TracingConfiguration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.util.Set;
@@ -11,7 +21,32 @@ public class R2dbcOpentracingConfiguration {
   private boolean enabled;
   private boolean showSlowSql;
   private long slowQueryThresholdMs;
+  private SlowQueryMode slowQueryMode = SlowQueryMode.FIXED;
+  private double slowQueryPercentile = TracingConfiguration.DEFAULT_SLOW_QUERY_PERCENTILE;
+  private double slowQueryFactor = TracingConfiguration.DEFAULT_SLOW_QUERY_FACTOR;
+  private long slowQueryMinSamples = TracingConfiguration.DEFAULT_SLOW_QUERY_MIN_SAMPLES;
+  private long slowQueryWindowMs = TracingConfiguration.DEFAULT_SLOW_QUERY_WINDOW_MS;
   private Set<String> ignoreStatements;
+  private Set<String> metricsOnlyStatements;
+  private boolean normalizeStatements;
+  private boolean spanNameFromStatement;
+  private int statementCacheSize = 1024;
+  private int batchMaxStatements = TracingConfiguration.DEFAULT_BATCH_MAX_STATEMENTS;
+  private int batchMaxStatementLength = TracingConfiguration.DEFAULT_BATCH_MAX_STATEMENT_LENGTH;
+  private boolean resultStatistics;
+  private Sampler sampler = new Sampler();
+  private BindParameters bindParameters = new BindParameters();
+  private Metrics metrics = new Metrics();
+  private TailSampling tailSampling = new TailSampling();
+  private ReactorContext reactorContext = new ReactorContext();
+  private AsyncFinish asyncFinish = new AsyncFinish();
+  private Errors errors = new Errors();
+  private RepeatedQueries repeatedQueries = new RepeatedQueries();
+  private Overhead overhead = new Overhead();
+  private AbandonedSpans abandonedSpans = new AbandonedSpans();
+  private HeavyHitters heavyHitters = new HeavyHitters();
+  private Explain explain = new Explain();
+  private SqlComment sqlComment = new SqlComment();
 
   public boolean isEnabled() {
     return enabled;
@@ -37,6 +72,46 @@ public class R2dbcOpentracingConfiguration {
     this.slowQueryThresholdMs = slowQueryThresholdMs;
   }
 
+  public SlowQueryMode getSlowQueryMode() {
+    return slowQueryMode;
+  }
+
+  public void setSlowQueryMode(SlowQueryMode slowQueryMode) {
+    this.slowQueryMode = slowQueryMode;
+  }
+
+  public double getSlowQueryPercentile() {
+    return slowQueryPercentile;
+  }
+
+  public void setSlowQueryPercentile(double slowQueryPercentile) {
+    this.slowQueryPercentile = slowQueryPercentile;
+  }
+
+  public double getSlowQueryFactor() {
+    return slowQueryFactor;
+  }
+
+  public void setSlowQueryFactor(double slowQueryFactor) {
+    this.slowQueryFactor = slowQueryFactor;
+  }
+
+  public long getSlowQueryMinSamples() {
+    return slowQueryMinSamples;
+  }
+
+  public void setSlowQueryMinSamples(long slowQueryMinSamples) {
+    this.slowQueryMinSamples = slowQueryMinSamples;
+  }
+
+  public long getSlowQueryWindowMs() {
+    return slowQueryWindowMs;
+  }
+
+  public void setSlowQueryWindowMs(long slowQueryWindowMs) {
+    this.slowQueryWindowMs = slowQueryWindowMs;
+  }
+
   public Set<String> getIgnoreStatements() {
     return ignoreStatements;
   }
@@ -44,4 +119,671 @@ public class R2dbcOpentracingConfiguration {
   public void setIgnoreStatements(Set<String> ignoreStatements) {
     this.ignoreStatements = ignoreStatements;
   }
+
+  public Set<String> getMetricsOnlyStatements() {
+    return metricsOnlyStatements;
+  }
+
+  public void setMetricsOnlyStatements(Set<String> metricsOnlyStatements) {
+    this.metricsOnlyStatements = metricsOnlyStatements;
+  }
+
+  public boolean isNormalizeStatements() {
+    return normalizeStatements;
+  }
+
+  public void setNormalizeStatements(boolean normalizeStatements) {
+    this.normalizeStatements = normalizeStatements;
+  }
+
+  public boolean isSpanNameFromStatement() {
+    return spanNameFromStatement;
+  }
+
+  public void setSpanNameFromStatement(boolean spanNameFromStatement) {
+    this.spanNameFromStatement = spanNameFromStatement;
+  }
+
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+
+  public void setStatementCacheSize(int statementCacheSize) {
+    this.statementCacheSize = statementCacheSize;
+  }
+
+  public int getBatchMaxStatements() {
+    return batchMaxStatements;
+  }
+
+  public void setBatchMaxStatements(int batchMaxStatements) {
+    this.batchMaxStatements = batchMaxStatements;
+  }
+
+  public int getBatchMaxStatementLength() {
+    return batchMaxStatementLength;
+  }
+
+  public void setBatchMaxStatementLength(int batchMaxStatementLength) {
+    this.batchMaxStatementLength = batchMaxStatementLength;
+  }
+
+  public boolean isResultStatistics() {
+    return resultStatistics;
+  }
+
+  public void setResultStatistics(boolean resultStatistics) {
+    this.resultStatistics = resultStatistics;
+  }
+
+  public Sampler getSampler() {
+    return sampler;
+  }
+
+  public void setSampler(Sampler sampler) {
+    this.sampler = sampler;
+  }
+
+  public BindParameters getBindParameters() {
+    return bindParameters;
+  }
+
+  public void setBindParameters(BindParameters bindParameters) {
+    this.bindParameters = bindParameters;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public TailSampling getTailSampling() {
+    return tailSampling;
+  }
+
+  public void setTailSampling(TailSampling tailSampling) {
+    this.tailSampling = tailSampling;
+  }
+
+  public ReactorContext getReactorContext() {
+    return reactorContext;
+  }
+
+  public void setReactorContext(ReactorContext reactorContext) {
+    this.reactorContext = reactorContext;
+  }
+
+  public AsyncFinish getAsyncFinish() {
+    return asyncFinish;
+  }
+
+  public void setAsyncFinish(AsyncFinish asyncFinish) {
+    this.asyncFinish = asyncFinish;
+  }
+
+  public Errors getErrors() {
+    return errors;
+  }
+
+  public void setErrors(Errors errors) {
+    this.errors = errors;
+  }
+
+  public RepeatedQueries getRepeatedQueries() {
+    return repeatedQueries;
+  }
+
+  public void setRepeatedQueries(RepeatedQueries repeatedQueries) {
+    this.repeatedQueries = repeatedQueries;
+  }
+
+  public Overhead getOverhead() {
+    return overhead;
+  }
+
+  public void setOverhead(Overhead overhead) {
+    this.overhead = overhead;
+  }
+
+  public AbandonedSpans getAbandonedSpans() {
+    return abandonedSpans;
+  }
+
+  public void setAbandonedSpans(AbandonedSpans abandonedSpans) {
+    this.abandonedSpans = abandonedSpans;
+  }
+
+  public HeavyHitters getHeavyHitters() {
+    return heavyHitters;
+  }
+
+  public void setHeavyHitters(HeavyHitters heavyHitters) {
+    this.heavyHitters = heavyHitters;
+  }
+
+  public Explain getExplain() {
+    return explain;
+  }
+
+  public void setExplain(Explain explain) {
+    this.explain = explain;
+  }
+
+  public SqlComment getSqlComment() {
+    return sqlComment;
+  }
+
+  public void setSqlComment(SqlComment sqlComment) {
+    this.sqlComment = sqlComment;
+  }
+
+  public static class Sampler {
+
+    private String type = QuerySamplers.TYPE_CONST;
+    private double param = 1;
+    private int maxStatements = 1024;
+
+    public String getType() {
+      return type;
+    }
+
+    public void setType(String type) {
+      this.type = type;
+    }
+
+    public double getParam() {
+      return param;
+    }
+
+    public void setParam(double param) {
+      this.param = param;
+    }
+
+    public int getMaxStatements() {
+      return maxStatements;
+    }
+
+    public void setMaxStatements(int maxStatements) {
+      this.maxStatements = maxStatements;
+    }
+  }
+
+  public static class Metrics {
+
+    private boolean enabled = true;
+    private int maxStatements = 512;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxStatements() {
+      return maxStatements;
+    }
+
+    public void setMaxStatements(int maxStatements) {
+      this.maxStatements = maxStatements;
+    }
+  }
+
+  public static class TailSampling {
+
+    private boolean enabled;
+    private int maxSpans = TracingConfiguration.DEFAULT_TAIL_SAMPLING_MAX_SPANS;
+    private long maxAgeMs = TracingConfiguration.DEFAULT_TAIL_SAMPLING_MAX_AGE_MS;
+    private Set<String> keepStatements;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxSpans() {
+      return maxSpans;
+    }
+
+    public void setMaxSpans(int maxSpans) {
+      this.maxSpans = maxSpans;
+    }
+
+    public long getMaxAgeMs() {
+      return maxAgeMs;
+    }
+
+    public void setMaxAgeMs(long maxAgeMs) {
+      this.maxAgeMs = maxAgeMs;
+    }
+
+    public Set<String> getKeepStatements() {
+      return keepStatements;
+    }
+
+    public void setKeepStatements(Set<String> keepStatements) {
+      this.keepStatements = keepStatements;
+    }
+  }
+
+  public static class BindParameters {
+
+    private boolean enabled;
+    private int maxValueLength = TracingConfiguration.DEFAULT_BIND_PARAMETER_MAX_VALUE_LENGTH;
+    private int maxLength = TracingConfiguration.DEFAULT_BIND_PARAMETER_MAX_LENGTH;
+    private Set<String> allow;
+    private Set<String> deny;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxValueLength() {
+      return maxValueLength;
+    }
+
+    public void setMaxValueLength(int maxValueLength) {
+      this.maxValueLength = maxValueLength;
+    }
+
+    public int getMaxLength() {
+      return maxLength;
+    }
+
+    public void setMaxLength(int maxLength) {
+      this.maxLength = maxLength;
+    }
+
+    public Set<String> getAllow() {
+      return allow;
+    }
+
+    public void setAllow(Set<String> allow) {
+      this.allow = allow;
+    }
+
+    public Set<String> getDeny() {
+      return deny;
+    }
+
+    public void setDeny(Set<String> deny) {
+      this.deny = deny;
+    }
+  }
+
+  public static class ReactorContext {
+
+    private boolean enabled = true;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+  }
+
+  public static class AsyncFinish {
+
+    private boolean enabled;
+    private int bufferSize = AsyncSpanFinisher.DEFAULT_BUFFER_SIZE;
+    private AsyncSpanFinisher.OverflowPolicy overflowPolicy = AsyncSpanFinisher.OverflowPolicy.DROP_OLDEST;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getBufferSize() {
+      return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+    }
+
+    public AsyncSpanFinisher.OverflowPolicy getOverflowPolicy() {
+      return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(AsyncSpanFinisher.OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+    }
+  }
+
+  public static class Errors {
+
+    private boolean fingerprinting;
+    private int fullDetailPerWindow = TracingConfiguration.DEFAULT_ERROR_FULL_DETAIL_PER_WINDOW;
+    private long windowMs = TracingConfiguration.DEFAULT_ERROR_WINDOW_MS;
+    private int maxFingerprints = TracingConfiguration.DEFAULT_ERROR_MAX_FINGERPRINTS;
+
+    public boolean isFingerprinting() {
+      return fingerprinting;
+    }
+
+    public void setFingerprinting(boolean fingerprinting) {
+      this.fingerprinting = fingerprinting;
+    }
+
+    public int getFullDetailPerWindow() {
+      return fullDetailPerWindow;
+    }
+
+    public void setFullDetailPerWindow(int fullDetailPerWindow) {
+      this.fullDetailPerWindow = fullDetailPerWindow;
+    }
+
+    public long getWindowMs() {
+      return windowMs;
+    }
+
+    public void setWindowMs(long windowMs) {
+      this.windowMs = windowMs;
+    }
+
+    public int getMaxFingerprints() {
+      return maxFingerprints;
+    }
+
+    public void setMaxFingerprints(int maxFingerprints) {
+      this.maxFingerprints = maxFingerprints;
+    }
+  }
+
+  public static class RepeatedQueries {
+
+    private int threshold;
+    private int maxTraces = TracingConfiguration.DEFAULT_REPEATED_QUERY_MAX_TRACES;
+
+    public int getThreshold() {
+      return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+      this.threshold = threshold;
+    }
+
+    public int getMaxTraces() {
+      return maxTraces;
+    }
+
+    public void setMaxTraces(int maxTraces) {
+      this.maxTraces = maxTraces;
+    }
+  }
+
+  public static class Overhead {
+
+    private boolean enabled;
+    private double budget = OverheadGovernor.DEFAULT_BUDGET;
+    private long maxSpansPerSecond;
+    private long windowMs = OverheadGovernor.DEFAULT_WINDOW_MS;
+    private int sampleEvery = OverheadGovernor.DEFAULT_SAMPLE_EVERY;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public double getBudget() {
+      return budget;
+    }
+
+    public void setBudget(double budget) {
+      this.budget = budget;
+    }
+
+    public long getMaxSpansPerSecond() {
+      return maxSpansPerSecond;
+    }
+
+    public void setMaxSpansPerSecond(long maxSpansPerSecond) {
+      this.maxSpansPerSecond = maxSpansPerSecond;
+    }
+
+    public long getWindowMs() {
+      return windowMs;
+    }
+
+    public void setWindowMs(long windowMs) {
+      this.windowMs = windowMs;
+    }
+
+    public int getSampleEvery() {
+      return sampleEvery;
+    }
+
+    public void setSampleEvery(int sampleEvery) {
+      this.sampleEvery = sampleEvery;
+    }
+  }
+
+  public static class AbandonedSpans {
+
+    private boolean enabled;
+    private long maxAgeMs = AbandonedSpanReaper.DEFAULT_MAX_AGE_MS;
+    private long tickMs = AbandonedSpanReaper.DEFAULT_TICK_MS;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public long getMaxAgeMs() {
+      return maxAgeMs;
+    }
+
+    public void setMaxAgeMs(long maxAgeMs) {
+      this.maxAgeMs = maxAgeMs;
+    }
+
+    public long getTickMs() {
+      return tickMs;
+    }
+
+    public void setTickMs(long tickMs) {
+      this.tickMs = tickMs;
+    }
+  }
+
+  public static class HeavyHitters {
+
+    private boolean enabled = true;
+    private int capacity = StatementHeavyHitters.DEFAULT_CAPACITY;
+    private long windowMs = StatementHeavyHitters.DEFAULT_WINDOW_MS;
+    private int windows = StatementHeavyHitters.DEFAULT_WINDOWS;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+      return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+      this.capacity = capacity;
+    }
+
+    public long getWindowMs() {
+      return windowMs;
+    }
+
+    public void setWindowMs(long windowMs) {
+      this.windowMs = windowMs;
+    }
+
+    public int getWindows() {
+      return windows;
+    }
+
+    public void setWindows(int windows) {
+      this.windows = windows;
+    }
+  }
+
+  public static class Explain {
+
+    private boolean enabled;
+    private String connectionFactory;
+    private ExplainDialect dialect;
+    private long windowMs = ExplainPlanCapture.DEFAULT_WINDOW_MS;
+    private double permitsPerSecond = ExplainPlanCapture.DEFAULT_PERMITS_PER_SECOND;
+    private int maxPlans = ExplainPlanCapture.DEFAULT_MAX_PLANS;
+    private long timeoutMs = ExplainPlanCapture.DEFAULT_TIMEOUT_MS;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    /**
+     * Name of the ConnectionFactory bean to explain statements with, required when enabled. It should not be traced.
+     */
+    public String getConnectionFactory() {
+      return connectionFactory;
+    }
+
+    public void setConnectionFactory(String connectionFactory) {
+      this.connectionFactory = connectionFactory;
+    }
+
+    public ExplainDialect getDialect() {
+      return dialect;
+    }
+
+    public void setDialect(ExplainDialect dialect) {
+      this.dialect = dialect;
+    }
+
+    public long getWindowMs() {
+      return windowMs;
+    }
+
+    public void setWindowMs(long windowMs) {
+      this.windowMs = windowMs;
+    }
+
+    public double getPermitsPerSecond() {
+      return permitsPerSecond;
+    }
+
+    public void setPermitsPerSecond(double permitsPerSecond) {
+      this.permitsPerSecond = permitsPerSecond;
+    }
+
+    public int getMaxPlans() {
+      return maxPlans;
+    }
+
+    public void setMaxPlans(int maxPlans) {
+      this.maxPlans = maxPlans;
+    }
+
+    public long getTimeoutMs() {
+      return timeoutMs;
+    }
+
+    public void setTimeoutMs(long timeoutMs) {
+      this.timeoutMs = timeoutMs;
+    }
+  }
+
+  public static class SqlComment {
+
+    private boolean enabled;
+    private String service;
+    private SqlCommenter.Mode mode = SqlCommenter.Mode.SAMPLED;
+    private Sampler sampler = new Sampler();
+    private long slowWindowMs = SqlCommenter.DEFAULT_SLOW_WINDOW_MS;
+    private int maxSlowStatements = SqlCommenter.DEFAULT_MAX_SLOW_STATEMENTS;
+
+    public SqlComment() {
+      sampler.setType(QuerySamplers.TYPE_PROBABILISTIC);
+      sampler.setParam(0.01);
+    }
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    /**
+     * Service name in the comments, spring.application.name when not set.
+     */
+    public String getService() {
+      return service;
+    }
+
+    public void setService(String service) {
+      this.service = service;
+    }
+
+    public SqlCommenter.Mode getMode() {
+      return mode;
+    }
+
+    public void setMode(SqlCommenter.Mode mode) {
+      this.mode = mode;
+    }
+
+    /**
+     * The statements commented in sampled mode besides the recently slow ones.
+     */
+    public Sampler getSampler() {
+      return sampler;
+    }
+
+    public void setSampler(Sampler sampler) {
+      this.sampler = sampler;
+    }
+
+    public long getSlowWindowMs() {
+      return slowWindowMs;
+    }
+
+    public void setSlowWindowMs(long slowWindowMs) {
+      this.slowWindowMs = slowWindowMs;
+    }
+
+    public int getMaxSlowStatements() {
+      return maxSlowStatements;
+    }
+
+    public void setMaxSlowStatements(int maxSlowStatements) {
+      this.maxSlowStatements = maxSlowStatements;
+    }
+  }
 }
@@ -0,0 +1,28 @@
+package opentracing.r2dbc.starter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import opentracing.r2dbc.common.OverheadGovernor;
+
+public class R2dbcOverheadMetricsBinder implements MeterBinder {
+
+  private final OverheadGovernor overheadGovernor;
+
+  public R2dbcOverheadMetricsBinder(OverheadGovernor overheadGovernor) {
+    this.overheadGovernor = overheadGovernor;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("r2dbc.tracing.tier", overheadGovernor, governor -> governor.getTier().ordinal())
+        .description("0 full, 1 minimal, 2 sampled, 3 metrics-only, 4 noop")
+        .register(registry);
+    Gauge.builder("r2dbc.tracing.overhead", overheadGovernor, OverheadGovernor::getOverhead)
+        .register(registry);
+    Gauge.builder("r2dbc.tracing.overhead.budget", overheadGovernor, OverheadGovernor::getBudget)
+        .register(registry);
+    Gauge.builder("r2dbc.tracing.spans.rate", overheadGovernor, OverheadGovernor::getSpansPerSecond)
+        .register(registry);
+  }
+}
@@ -0,0 +1,50 @@
+package opentracing.r2dbc.starter;
+
+import opentracing.r2dbc.common.ExplainPlanCapture;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows the captured plans of slow statements, e.g. {@code GET /actuator/r2dbcplans/{id}} with the
+ * {@code db.plan.id} tag of a query span.
+ */
+@Endpoint(id = "r2dbcplans")
+public class R2dbcPlansEndpoint {
+
+  private final ExplainPlanCapture explainPlanCapture;
+
+  public R2dbcPlansEndpoint(ExplainPlanCapture explainPlanCapture) {
+    this.explainPlanCapture = explainPlanCapture;
+  }
+
+  @ReadOperation
+  public List<Map<String, Object>> plans() {
+    List<Map<String, Object>> plans = new ArrayList<>();
+    for (ExplainPlanCapture.Plan plan : explainPlanCapture.getPlans()) {
+      plans.add(toMap(plan));
+    }
+    return plans;
+  }
+
+  @ReadOperation
+  public Map<String, Object> plan(@Selector String id) {
+    ExplainPlanCapture.Plan plan = explainPlanCapture.getPlan(id);
+    return plan == null ? null : toMap(plan);
+  }
+
+  private static Map<String, Object> toMap(ExplainPlanCapture.Plan plan) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("id", plan.getId());
+    map.put("statement", plan.getStatement());
+    map.put("plan", plan.getPlan());
+    map.put("error", plan.getError());
+    map.put("capturedAtMillis", plan.getCapturedAtMillis());
+    return map;
+  }
+}
@@ -0,0 +1,62 @@
+package opentracing.r2dbc.starter;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import opentracing.r2dbc.common.ConnectionPoolRecorder;
+import opentracing.r2dbc.common.ConnectionPoolRecorder.PoolAcquireMetrics;
+import opentracing.r2dbc.common.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+public class R2dbcPoolMetricsBinder implements MeterBinder {
+
+  static final String METRIC_POOL_ACQUIRE = "r2dbc.pool.acquire";
+  static final String METRIC_POOL_ACQUIRE_PERCENTILE = "r2dbc.pool.acquire.percentile";
+
+  private final ConnectionPoolRecorder connectionPoolRecorder;
+
+  public R2dbcPoolMetricsBinder(ConnectionPoolRecorder connectionPoolRecorder) {
+    this.connectionPoolRecorder = connectionPoolRecorder;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    connectionPoolRecorder.addListener(pool -> register(registry, pool));
+  }
+
+  private void register(MeterRegistry registry, PoolAcquireMetrics pool) {
+    Tags tags = Tags.of("pool", pool.getName());
+    if (pool.getConnectionPool() instanceof ConnectionPool) {
+      ConnectionPool connectionPool = (ConnectionPool) pool.getConnectionPool();
+      gauge(registry, "r2dbc.pool.allocated", connectionPool, PoolMetrics::allocatedSize, tags);
+      gauge(registry, "r2dbc.pool.idle", connectionPool, PoolMetrics::idleSize, tags);
+      gauge(registry, "r2dbc.pool.acquired", connectionPool, PoolMetrics::acquiredSize, tags);
+      gauge(registry, "r2dbc.pool.pending", connectionPool, PoolMetrics::pendingAcquireSize, tags);
+      gauge(registry, "r2dbc.pool.max.allocated", connectionPool, PoolMetrics::getMaxAllocatedSize, tags);
+    }
+    FunctionTimer.builder(METRIC_POOL_ACQUIRE, pool.getAcquireHistogram(), LatencyHistogram::count,
+        LatencyHistogram::totalTimeNanos, TimeUnit.NANOSECONDS)
+        .tags(tags)
+        .register(registry);
+    TimeGauge.builder(METRIC_POOL_ACQUIRE_PERCENTILE, pool.getAcquireHistogram(), TimeUnit.NANOSECONDS,
+        h -> h.valueAtPercentile(99))
+        .tags(tags)
+        .tag("phi", "0.99")
+        .register(registry);
+  }
+
+  private static void gauge(MeterRegistry registry, String name, ConnectionPool connectionPool,
+                            ToIntFunction<PoolMetrics> value, Tags tags) {
+    Gauge.builder(name, connectionPool,
+        pool -> pool.getMetrics().map(value::applyAsInt).orElse(0).doubleValue())
+        .tags(tags)
+        .register(registry);
+  }
+}
@@ -0,0 +1,73 @@
+package opentracing.r2dbc.starter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import opentracing.r2dbc.common.LatencyHistogram;
+import opentracing.r2dbc.common.QueryFingerprint;
+import opentracing.r2dbc.common.QueryMetrics;
+import opentracing.r2dbc.common.QueryMetricsRecorder;
+
+import java.util.concurrent.TimeUnit;
+
+public class R2dbcQueryMetricsBinder implements MeterBinder {
+
+  static final String METRIC_QUERY = "r2dbc.query";
+  static final String METRIC_QUERY_MAX = "r2dbc.query.max";
+  static final String METRIC_QUERY_PERCENTILE = "r2dbc.query.percentile";
+  static final String METRIC_QUERY_FETCH = "r2dbc.query.fetch";
+  static final String METRIC_QUERY_ROWS = "r2dbc.query.rows";
+  static final String METRIC_QUERY_REPEATED = "r2dbc.query.repeated";
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final QueryMetricsRecorder metricsRecorder;
+
+  public R2dbcQueryMetricsBinder(QueryMetricsRecorder metricsRecorder) {
+    this.metricsRecorder = metricsRecorder;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    metricsRecorder.addListener(queryMetrics -> register(registry, queryMetrics));
+  }
+
+  private void register(MeterRegistry registry, QueryMetrics queryMetrics) {
+    QueryFingerprint fingerprint = queryMetrics.getFingerprint();
+    LatencyHistogram histogram = queryMetrics.getHistogram();
+    Tags tags = Tags.of(
+        "statement", fingerprint.getFingerprint(),
+        "operation", fingerprint.getOperationName(),
+        "type", queryMetrics.getType().name(),
+        "outcome", queryMetrics.isSuccess() ? "success" : "failure");
+
+    FunctionTimer.builder(METRIC_QUERY, histogram, LatencyHistogram::count, LatencyHistogram::totalTimeNanos,
+        TimeUnit.NANOSECONDS)
+        .tags(tags)
+        .register(registry);
+    TimeGauge.builder(METRIC_QUERY_MAX, histogram, TimeUnit.NANOSECONDS, LatencyHistogram::maxNanos)
+        .tags(tags)
+        .register(registry);
+    for (double percentile : PERCENTILES) {
+      TimeGauge.builder(METRIC_QUERY_PERCENTILE, histogram, TimeUnit.NANOSECONDS,
+          h -> h.valueAtPercentile(percentile * 100))
+          .tags(tags)
+          .tag("phi", String.valueOf(percentile))
+          .register(registry);
+    }
+    if (queryMetrics.isSuccess()) {
+      FunctionTimer.builder(METRIC_QUERY_FETCH, queryMetrics.getFetchHistogram(), LatencyHistogram::count,
+          LatencyHistogram::totalTimeNanos, TimeUnit.NANOSECONDS)
+          .tags(tags)
+          .register(registry);
+      FunctionCounter.builder(METRIC_QUERY_ROWS, queryMetrics, QueryMetrics::getRows)
+          .tags(tags)
+          .register(registry);
+      FunctionCounter.builder(METRIC_QUERY_REPEATED, queryMetrics, QueryMetrics::getRepeated)
+          .tags(tags)
+          .register(registry);
+    }
+  }
+}
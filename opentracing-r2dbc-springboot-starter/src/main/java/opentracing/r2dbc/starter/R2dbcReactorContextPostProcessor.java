@@ -0,0 +1,21 @@
+package opentracing.r2dbc.starter;
+
+import io.r2dbc.proxy.callback.ProxyConfigHolder;
+import io.r2dbc.spi.ConnectionFactory;
+import opentracing.r2dbc.common.ReactorContextTracing;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Wraps the connection factories created by {@code ProxyConnectionFactory} so that connections take their
+ * parent span from the Reactor subscriber context.
+ */
+public class R2dbcReactorContextPostProcessor implements BeanPostProcessor {
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    if (bean instanceof ConnectionFactory && bean instanceof ProxyConfigHolder) {
+      return ReactorContextTracing.propagating((ConnectionFactory) bean);
+    }
+    return bean;
+  }
+}
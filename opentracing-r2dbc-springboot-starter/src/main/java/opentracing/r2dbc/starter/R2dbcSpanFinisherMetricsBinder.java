@@ -0,0 +1,29 @@
+package opentracing.r2dbc.starter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import opentracing.r2dbc.common.AsyncSpanFinisher;
+
+public class R2dbcSpanFinisherMetricsBinder implements MeterBinder {
+
+  private final AsyncSpanFinisher spanFinisher;
+
+  public R2dbcSpanFinisherMetricsBinder(AsyncSpanFinisher spanFinisher) {
+    this.spanFinisher = spanFinisher;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("r2dbc.spans.finished", spanFinisher, AsyncSpanFinisher::getFinishedSpans)
+        .register(registry);
+    FunctionCounter.builder("r2dbc.spans.dropped", spanFinisher, AsyncSpanFinisher::getDroppedSpans)
+        .tag("policy", spanFinisher.getOverflowPolicy().name().toLowerCase())
+        .register(registry);
+    FunctionCounter.builder("r2dbc.spans.failed", spanFinisher, AsyncSpanFinisher::getFailedSpans)
+        .register(registry);
+    Gauge.builder("r2dbc.spans.pending", spanFinisher, AsyncSpanFinisher::getPendingSpans)
+        .register(registry);
+  }
+}
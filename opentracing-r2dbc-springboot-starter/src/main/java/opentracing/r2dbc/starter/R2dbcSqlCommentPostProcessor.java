@@ -0,0 +1,28 @@
+package opentracing.r2dbc.starter;
+
+import io.r2dbc.proxy.callback.ProxyConfigHolder;
+import io.r2dbc.spi.ConnectionFactory;
+import opentracing.r2dbc.common.SqlCommenter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Installs the {@link SqlCommenter} as the bind parameter converter of the connection factories created by
+ * {@code ProxyConnectionFactory}, before they are wrapped for the Reactor context.
+ */
+public class R2dbcSqlCommentPostProcessor implements BeanPostProcessor {
+
+  private final ObjectProvider<SqlCommenter> sqlCommenter;
+
+  public R2dbcSqlCommentPostProcessor(ObjectProvider<SqlCommenter> sqlCommenter) {
+    this.sqlCommenter = sqlCommenter;
+  }
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName) {
+    if (bean instanceof ConnectionFactory && bean instanceof ProxyConfigHolder) {
+      ((ProxyConfigHolder) bean).getProxyConfig().setBindParameterConverter(sqlCommenter.getObject());
+    }
+    return bean;
+  }
+}
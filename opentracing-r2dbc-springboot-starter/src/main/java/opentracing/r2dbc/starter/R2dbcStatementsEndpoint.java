@@ -0,0 +1,58 @@
+package opentracing.r2dbc.starter;
+
+import opentracing.r2dbc.common.StatementHeavyHitters;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Shows the statements using the most database time, executions or rows over the last minutes, e.g.
+ * {@code GET /actuator/r2dbcstatements?by=count&limit=20&minutes=5}. Defaults to the top 20 by total
+ * execute time over all kept windows.
+ */
+@Endpoint(id = "r2dbcstatements")
+public class R2dbcStatementsEndpoint {
+
+  static final int DEFAULT_LIMIT = 20;
+
+  private final StatementHeavyHitters heavyHitters;
+
+  public R2dbcStatementsEndpoint(StatementHeavyHitters heavyHitters) {
+    this.heavyHitters = heavyHitters;
+  }
+
+  @ReadOperation
+  public Map<String, Object> top(@Nullable String by, @Nullable Integer limit, @Nullable Long minutes) {
+    StatementHeavyHitters.Metric metric = by == null ? StatementHeavyHitters.Metric.TIME :
+        StatementHeavyHitters.Metric.valueOf(by.toUpperCase(Locale.ROOT));
+    Duration period = minutes != null ? Duration.ofMinutes(minutes) :
+        Duration.ofMillis(heavyHitters.getWindowMs() * heavyHitters.getWindows());
+    List<Map<String, Object>> statements = new ArrayList<>();
+    for (StatementHeavyHitters.HeavyHitter heavyHitter :
+        heavyHitters.top(metric, limit != null ? limit : DEFAULT_LIMIT, period)) {
+      Map<String, Object> statement = new LinkedHashMap<>();
+      statement.put("statement", heavyHitter.getStatement());
+      if (metric == StatementHeavyHitters.Metric.TIME) {
+        statement.put("totalTimeMs", heavyHitter.getValue() / 1_000_000.0);
+        statement.put("maxErrorMs", heavyHitter.getError() / 1_000_000.0);
+      } else {
+        statement.put(metric.name().toLowerCase(Locale.ROOT), heavyHitter.getValue());
+        statement.put("maxError", heavyHitter.getError());
+      }
+      statements.add(statement);
+    }
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("by", metric.name().toLowerCase(Locale.ROOT));
+    result.put("periodMs", period.toMillis());
+    result.put("windowMs", heavyHitters.getWindowMs());
+    result.put("statements", statements);
+    return result;
+  }
+}
@@ -0,0 +1,96 @@
+package opentracing.r2dbc.starter;
+
+import opentracing.r2dbc.common.OpenTracingExecutorListener;
+import opentracing.r2dbc.common.QuerySamplers;
+import opentracing.r2dbc.common.SlowQueryMode;
+import opentracing.r2dbc.common.TracingConfiguration;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shows and changes the runtime settings of the r2dbc tracing listener without a restart, e.g.
+ * {@code POST /actuator/r2dbctracing {"enabled": false}}. Parameters which are left out keep their
+ * current value; changes are lost on restart.
+ */
+@Endpoint(id = "r2dbctracing")
+public class R2dbcTracingEndpoint {
+
+  private final OpenTracingExecutorListener listener;
+  private final int samplerMaxStatements;
+  private String samplerType;
+  private double samplerParam;
+
+  public R2dbcTracingEndpoint(OpenTracingExecutorListener listener, R2dbcOpentracingConfiguration.Sampler sampler) {
+    this.listener = listener;
+    this.samplerMaxStatements = sampler.getMaxStatements();
+    this.samplerType = sampler.getType();
+    this.samplerParam = sampler.getParam();
+  }
+
+  @ReadOperation
+  public synchronized Map<String, Object> settings() {
+    TracingConfiguration configuration = listener.getTracingConfiguration();
+    Map<String, Object> settings = new LinkedHashMap<>();
+    settings.put("enabled", configuration.isTraceEnabled());
+    settings.put("samplerType", samplerType);
+    settings.put("samplerParam", samplerParam);
+    settings.put("slowQueryMode", configuration.getSlowQueryMode());
+    settings.put("slowQueryThresholdMs", configuration.getSlowQueryThresholdMs());
+    settings.put("slowQueryPercentile", configuration.getSlowQueryPercentile());
+    settings.put("slowQueryFactor", configuration.getSlowQueryFactor());
+    settings.put("ignoreStatements", configuration.getIgnoreStatements());
+    settings.put("metricsOnlyStatements", configuration.getMetricsOnlyStatements());
+    return settings;
+  }
+
+  @WriteOperation
+  public synchronized Map<String, Object> update(@Nullable Boolean enabled,
+                                                 @Nullable String samplerType,
+                                                 @Nullable Double samplerParam,
+                                                 @Nullable SlowQueryMode slowQueryMode,
+                                                 @Nullable Long slowQueryThresholdMs,
+                                                 @Nullable Double slowQueryPercentile,
+                                                 @Nullable Double slowQueryFactor,
+                                                 @Nullable Set<String> ignoreStatements,
+                                                 @Nullable Set<String> metricsOnlyStatements) {
+    String newSamplerType = samplerType != null ? samplerType : this.samplerType;
+    double newSamplerParam = samplerParam != null ? samplerParam : this.samplerParam;
+    boolean samplerChanged = samplerType != null || samplerParam != null;
+    listener.updateTracingConfiguration(builder -> {
+      if (enabled != null) {
+        builder.withTraceEnabled(enabled);
+      }
+      if (samplerChanged) {
+        builder.withSampler(QuerySamplers.create(newSamplerType, newSamplerParam, samplerMaxStatements));
+      }
+      if (slowQueryMode != null) {
+        builder.withSlowQueryMode(slowQueryMode);
+      }
+      if (slowQueryThresholdMs != null) {
+        builder.withSlowQueryThresholdMs(slowQueryThresholdMs);
+      }
+      if (slowQueryPercentile != null) {
+        builder.withSlowQueryPercentile(slowQueryPercentile);
+      }
+      if (slowQueryFactor != null) {
+        builder.withSlowQueryFactor(slowQueryFactor);
+      }
+      if (ignoreStatements != null) {
+        builder.withIgnoreStatements(ignoreStatements);
+      }
+      if (metricsOnlyStatements != null) {
+        builder.withMetricsOnlyStatements(metricsOnlyStatements);
+      }
+      return builder;
+    });
+    this.samplerType = newSamplerType;
+    this.samplerParam = newSamplerParam;
+    return settings();
+  }
+}
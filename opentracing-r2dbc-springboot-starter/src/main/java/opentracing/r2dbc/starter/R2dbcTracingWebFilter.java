@@ -0,0 +1,46 @@
+package opentracing.r2dbc.starter;
+
+import io.opentracing.Tracer;
+import opentracing.r2dbc.common.ReactorContextTracing;
+import org.springframework.core.Ordered;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Puts the span active when a request is subscribed, i.e. the server span of the tracing web filter,
+ * into the Reactor context of the request so r2dbc spans are parented on it. With SQL comments also puts
+ * the route, the path pattern of the handler once it is known.
+ */
+public class R2dbcTracingWebFilter implements WebFilter, Ordered {
+
+  private final Tracer tracer;
+  private final boolean routes;
+
+  public R2dbcTracingWebFilter(Tracer tracer) {
+    this(tracer, false);
+  }
+
+  public R2dbcTracingWebFilter(Tracer tracer, boolean routes) {
+    this.tracer = tracer;
+    this.routes = routes;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    Mono<Void> filtered = ReactorContextTracing.withActiveSpan(chain.filter(exchange), tracer);
+    return routes ? filtered.subscriberContext(ReactorContextTracing.withRoute(() -> route(exchange))) : filtered;
+  }
+
+  private static String route(ServerWebExchange exchange) {
+    Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    return pattern == null ? null : pattern.toString();
+  }
+
+  @Override
+  public int getOrder() {
+    return Ordered.LOWEST_PRECEDENCE;
+  }
+}